@@ -0,0 +1,56 @@
+package com.webgrep.benchmarks;
+
+import com.webgrep.core.CompiledQuery;
+import com.webgrep.core.ContentExtractor;
+import com.webgrep.core.MatchStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Tika extraction of the sample PDF and DOCX, as a string and streamed into the matcher. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryExtractionBenchmark {
+    private static final int MAX_CHARS = 10_000_000;
+
+    @Param({"sample.pdf", "sample.docx"})
+    public String fixture;
+
+    private final ContentExtractor extractor = new ContentExtractor();
+    private final CompiledQuery query = new CompiledQuery(List.of("crawler", "resume"), "default");
+    private byte[] body;
+    private String url;
+
+    @Setup
+    public void setup() {
+        body = Fixtures.bytes(fixture);
+        url = "https://www.example.com/files/" + fixture;
+    }
+
+    @Benchmark
+    public String extractTextFromBinary() {
+        return extractor.extractTextFromBinary(body, url, null);
+    }
+
+    @Benchmark
+    public int[] streamMatches() {
+        MatchStream matches = new MatchStream(query);
+        extractor.writeTextFromBinary(body, url, null, MAX_CHARS, matches);
+        return matches.finish();
+    }
+}
@@ -0,0 +1,47 @@
+package com.webgrep.benchmarks;
+
+import com.webgrep.core.ContentExtractor;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** Loads the files under {@code src/jmh/resources/fixtures} and builds texts of a given size from them. */
+final class Fixtures {
+    static final String BASE_URL = "https://www.example.com/news/2024/05/story.html";
+
+    private Fixtures() {}
+
+    static byte[] bytes(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalArgumentException("No such fixture: " + name);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String text(String name) {
+        return new String(bytes(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * About {@code chars} characters of page-like text: the words of the HTML fixtures in a fixed
+     * pseudo-random order, so every run and every release scans the same input.
+     */
+    static String prose(int chars) {
+        ContentExtractor extractor = new ContentExtractor();
+        String words = extractor.extractTextFromHtml(Jsoup.parse(text("article.html"), BASE_URL)) + " "
+                + extractor.extractTextFromHtml(Jsoup.parse(text("listing.html"), BASE_URL));
+        String[] vocabulary = words.split("\\s+");
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(chars + 32);
+        while (sb.length() < chars) {
+            sb.append(vocabulary[random.nextInt(vocabulary.length)]).append(random.nextInt(12) == 0 ? "\n" : " ");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.webgrep.benchmarks;
+
+import com.webgrep.core.ContentExtractor;
+import com.webgrep.core.HtmlScanner;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text and link extraction on the HTML fixtures: an article page and a link-heavy listing. The
+ * jsoup benchmarks start from a parsed document ({@link #parse} is measured on its own); the
+ * {@code fast} ones cover the {@code --html-parser fast} path from the raw markup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlExtractionBenchmark {
+    @Param({"article.html", "listing.html"})
+    public String fixture;
+
+    private final ContentExtractor extractor = new ContentExtractor();
+    private byte[] body;
+    private String html;
+    private Document doc;
+
+    @Setup
+    public void setup() {
+        body = Fixtures.bytes(fixture);
+        html = new String(body, StandardCharsets.UTF_8);
+        doc = Jsoup.parse(html, Fixtures.BASE_URL);
+    }
+
+    @Benchmark
+    public Document parse() {
+        return Jsoup.parse(html, Fixtures.BASE_URL);
+    }
+
+    @Benchmark
+    public String extractTextFromHtml() {
+        return extractor.extractTextFromHtml(doc);
+    }
+
+    @Benchmark
+    public List<String> extractLinks() {
+        return extractor.extractLinks(doc, body, Fixtures.BASE_URL);
+    }
+
+    @Benchmark
+    public String fastText() {
+        StringWriter text = new StringWriter();
+        HtmlScanner.scan(html, text);
+        return text.toString();
+    }
+
+    @Benchmark
+    public List<String> fastLinks() {
+        HtmlScanner.Page page = HtmlScanner.scan(html, Writer.nullWriter());
+        return extractor.extractLinks(page, html, Fixtures.BASE_URL, Fixtures.BASE_URL);
+    }
+}
@@ -0,0 +1,57 @@
+package com.webgrep.benchmarks;
+
+import com.webgrep.core.CompiledQuery;
+import com.webgrep.core.MatchEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword counting per match mode on a small page, a large page and a multi-MB document. The
+ * fuzzy word cache is on by default, as in a crawl; {@code -p fuzzyCacheSize=0} measures the
+ * matcher itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchEngineBenchmark {
+    private static final List<String> KEYWORDS = List.of("crawler", "ključna riječ", "resume");
+
+    @Param({"default", "exact", "fuzzy"})
+    public String mode;
+
+    @Param({"4096", "262144", "4194304"})
+    public int size;
+
+    @Param({"100000"})
+    public int fuzzyCacheSize;
+
+    private final MatchEngine engine = new MatchEngine();
+    private String text;
+    private CompiledQuery query;
+
+    @Setup
+    public void setup() {
+        text = Fixtures.prose(size);
+        query = new CompiledQuery(KEYWORDS, mode, fuzzyCacheSize);
+    }
+
+    @Benchmark
+    public int[] countMatches() {
+        return engine.countMatches(text, query);
+    }
+}
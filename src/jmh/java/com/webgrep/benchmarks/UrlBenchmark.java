@@ -0,0 +1,97 @@
+package com.webgrep.benchmarks;
+
+import com.webgrep.utils.UrlFilter;
+import com.webgrep.utils.UrlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL handling per link over {@code links.tsv}: page URL and raw href pairs with the usual mix
+ * of relative, absolute, protocol-relative, asset and non-http links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlBenchmark {
+    /** Lines in links.tsv; {@link OperationsPerInvocation} needs a constant. */
+    private static final int LINKS = 2000;
+
+    private final String[] bases = new String[LINKS];
+    private final UrlUtils.ParsedUrl[] parsedBases = new UrlUtils.ParsedUrl[LINKS];
+    private final String[] hrefs = new String[LINKS];
+    private final String[] normalized = new String[LINKS];
+    private UrlFilter filter;
+
+    @Setup
+    public void setup() {
+        String[] lines = Fixtures.text("links.tsv").split("\n");
+        if (lines.length != LINKS) throw new IllegalStateException("links.tsv has " + lines.length + " lines, expected " + LINKS);
+        for (int i = 0; i < LINKS; i++) {
+            int tab = lines[i].indexOf('\t');
+            bases[i] = lines[i].substring(0, tab);
+            parsedBases[i] = UrlUtils.parse(bases[i]);
+            hrefs[i] = lines[i].substring(tab + 1);
+            normalized[i] = UrlUtils.normalizeUrl(hrefs[i], bases[i]);
+        }
+        filter = UrlFilter.defaults();
+    }
+
+    /** Resolves against a base given as a string, parsing it every time. */
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void normalizeUrl(Blackhole bh) {
+        for (int i = 0; i < LINKS; i++) {
+            bh.consume(UrlUtils.normalizeUrl(hrefs[i], bases[i]));
+        }
+    }
+
+    /** Resolves against a base parsed once per page, as link extraction does. */
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void resolveParsedBase(Blackhole bh) {
+        for (int i = 0; i < LINKS; i++) {
+            bh.consume(UrlUtils.resolve(hrefs[i], parsedBases[i]));
+        }
+    }
+
+    /** Canonical input, which is returned as is. */
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void normalizeCanonical(Blackhole bh) {
+        for (int i = 0; i < LINKS; i++) {
+            bh.consume(UrlUtils.normalizeUrl(normalized[i], (String) null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void hostOf(Blackhole bh) {
+        for (int i = 0; i < LINKS; i++) {
+            bh.consume(UrlUtils.hostOf(normalized[i]));
+        }
+    }
+
+    /** The built-in filter rules, which replaced {@code UrlUtils.isIgnoredLink}. */
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void isIgnored(Blackhole bh) {
+        for (int i = 0; i < LINKS; i++) {
+            bh.consume(filter.isIgnored(normalized[i]));
+        }
+    }
+}
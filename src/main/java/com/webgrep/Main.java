@@ -5,7 +5,9 @@ import com.webgrep.core.ContentExtractor;
 import com.webgrep.core.Crawler;
 import com.webgrep.core.MatchEngine;
 import com.webgrep.reporting.CrawlResult;
+import com.webgrep.reporting.NdjsonWriter;
 import com.webgrep.reporting.ReportWriter;
+import com.webgrep.utils.UrlFilter;
 
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -30,17 +32,23 @@ public class Main {
 
             options.validate();
 
-            ContentExtractor extractor = new ContentExtractor();
+            ContentExtractor extractor = new ContentExtractor(UrlFilter.load(options.getFilterRules()));
             MatchEngine matchEngine = new MatchEngine();
             Crawler crawler = new Crawler(options, extractor, matchEngine);
 
+            if ("ndjson".equals(options.getOutput())) {
+                NdjsonWriter ndjson = new NdjsonWriter(System.out, options);
+                ndjson.summary(crawler.crawl(ndjson));
+                return;
+            }
+
             CrawlResult result = crawler.crawl();
 
             ReportWriter reportWriter = new ReportWriter();
             if ("json".equals(options.getOutput())) {
                 reportWriter.printJsonOutput(result, options);
             } else {
-                reportWriter.printTextOutput(result);
+                reportWriter.printTextOutput(result, options);
             }
 
         } catch (IllegalArgumentException e) {
@@ -1,24 +1,67 @@
 package com.webgrep.config;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class CliOptions {
     private String url;
-    private String keyword;
+    private List<String> keywords = new ArrayList<>();
     private int depth = 1;
     private String mode = "default";
     private int maxPages = 5000;
     private long maxBytes = 10 * 1024 * 1024; // 10MB
     private int timeoutMs = 20000;
+    private int concurrency = 8;
+    private long hostDelayMs = 100;
+    private int hostConnections = 2;
+    private String rateControl = "adaptive";
+    /** 0: the adaptive limit never goes above --host-connections. */
+    private int hostMaxConnections = 0;
+    private int maxRetries = 2;
+    private String fetcher = "httpclient";
+    private List<String> contentTypes = new ArrayList<>();
+    private int fuzzyCacheSize = 100_000;
+    private int contentCacheSize = 4096;
+    private int nearDupDistance = 0;
+    private String nearDupAction = "drop";
+    private String dedupe = "exact";
+    private double bloomFpp = 0.01;
+    private long frontierMemoryMb = 256;
+    private String spillDir = System.getProperty("java.io.tmpdir");
+    private String stateDir;
+    private boolean resume = false;
+    private long checkpointIntervalMs = 5000;
+    private String cacheDir;
+    private long cacheMaxMb = 1024;
+    private String htmlParser = "jsoup";
+    private String filterRules;
+    private boolean metrics = false;
+    private int metricsPort = 0;
+    private String extractMode = "thread";
+    private int extractWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private long extractTimeoutMs = 30_000;
+    private int extractMaxChars = 10_000_000;
+    private boolean ignoreRobots = false;
+    private boolean useSitemaps = false;
     private boolean allowExternal = false;
     private boolean insecure = false;
     private String output = "text";
+    private long progressIntervalMs = 5000;
     private boolean help = false;
 
     public static CliOptions parse(String[] args) {
         CliOptions options = new CliOptions();
         Map<String, String> params = new HashMap<>();
+        Set<String> keywords = new LinkedHashSet<>();
 
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
@@ -37,6 +80,7 @@ public class CliOptions {
             if (key != null) {
                 if (hasValue && i + 1 < args.length && !args[i + 1].startsWith("-")) {
                     params.put(key, args[i + 1]);
+                    if (key.equals("keyword")) keywords.add(args[i + 1]);
                     i++;
                 } else {
                     params.put(key, "true");
@@ -50,28 +94,81 @@ public class CliOptions {
         }
 
         options.url = params.get("url");
-        options.keyword = params.get("keyword");
+        if (params.containsKey("keywords-file")) {
+            keywords.addAll(readKeywordsFile(params.get("keywords-file")));
+        }
+        options.keywords = new ArrayList<>(keywords);
 
         try {
             if (params.containsKey("depth")) options.depth = Integer.parseInt(params.get("depth"));
             if (params.containsKey("max-pages")) options.maxPages = Integer.parseInt(params.get("max-pages"));
             if (params.containsKey("max-bytes")) options.maxBytes = Long.parseLong(params.get("max-bytes"));
             if (params.containsKey("timeout-ms")) options.timeoutMs = Integer.parseInt(params.get("timeout-ms"));
+            if (params.containsKey("concurrency")) options.concurrency = Integer.parseInt(params.get("concurrency"));
+            if (params.containsKey("host-delay-ms")) options.hostDelayMs = Long.parseLong(params.get("host-delay-ms"));
+            if (params.containsKey("host-connections")) options.hostConnections = Integer.parseInt(params.get("host-connections"));
+            if (params.containsKey("host-max-connections")) options.hostMaxConnections = Integer.parseInt(params.get("host-max-connections"));
+            if (params.containsKey("max-retries")) options.maxRetries = Integer.parseInt(params.get("max-retries"));
+            if (params.containsKey("fuzzy-cache-size")) options.fuzzyCacheSize = Integer.parseInt(params.get("fuzzy-cache-size"));
+            if (params.containsKey("frontier-memory-mb")) options.frontierMemoryMb = Long.parseLong(params.get("frontier-memory-mb"));
+            if (params.containsKey("checkpoint-interval-ms")) options.checkpointIntervalMs = Long.parseLong(params.get("checkpoint-interval-ms"));
+            if (params.containsKey("cache-max-mb")) options.cacheMaxMb = Long.parseLong(params.get("cache-max-mb"));
+            if (params.containsKey("content-cache-size")) options.contentCacheSize = Integer.parseInt(params.get("content-cache-size"));
+            if (params.containsKey("near-dup-distance")) options.nearDupDistance = Integer.parseInt(params.get("near-dup-distance"));
+            if (params.containsKey("extract-workers")) options.extractWorkers = Integer.parseInt(params.get("extract-workers"));
+            if (params.containsKey("extract-timeout-ms")) options.extractTimeoutMs = Long.parseLong(params.get("extract-timeout-ms"));
+            if (params.containsKey("extract-max-chars")) options.extractMaxChars = Integer.parseInt(params.get("extract-max-chars"));
+            if (params.containsKey("progress-interval-ms")) options.progressIntervalMs = Long.parseLong(params.get("progress-interval-ms"));
+            if (params.containsKey("metrics-port")) options.metricsPort = Integer.parseInt(params.get("metrics-port"));
+            if (params.containsKey("bloom-fpp")) options.bloomFpp = Double.parseDouble(params.get("bloom-fpp"));
         } catch (NumberFormatException e) {
             throw new IllegalArgumentException("Invalid numeric value in arguments: " + e.getMessage());
         }
 
         options.mode = params.getOrDefault("mode", "default").toLowerCase();
         options.allowExternal = params.containsKey("allow-external");
+        options.ignoreRobots = params.containsKey("ignore-robots");
+        options.useSitemaps = params.containsKey("use-sitemaps");
         options.insecure = params.containsKey("insecure");
         options.output = params.getOrDefault("output", "text").toLowerCase();
+        options.fetcher = params.getOrDefault("fetcher", "httpclient").toLowerCase();
+        options.rateControl = params.getOrDefault("rate-control", "adaptive").toLowerCase();
+        options.dedupe = params.getOrDefault("dedupe", "exact").toLowerCase();
+        if (params.containsKey("spill-dir")) options.spillDir = params.get("spill-dir");
+        options.stateDir = params.get("state-dir");
+        options.resume = params.containsKey("resume");
+        options.cacheDir = params.get("cache-dir");
+        options.nearDupAction = params.getOrDefault("near-dup-action", "drop").toLowerCase();
+        options.extractMode = params.getOrDefault("extract-mode", "thread").toLowerCase();
+        options.htmlParser = params.getOrDefault("html-parser", "jsoup").toLowerCase();
+        options.filterRules = params.get("filter-rules");
+        options.metrics = params.containsKey("metrics");
+        if (params.containsKey("content-types")) {
+            for (String type : params.get("content-types").split(",")) {
+                if (!type.isBlank()) options.contentTypes.add(type.trim().toLowerCase(Locale.ROOT));
+            }
+        }
 
         return options;
     }
 
+    private static List<String> readKeywordsFile(String path) {
+        List<String> keywords = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+                String keyword = line.strip();
+                if (!keyword.isEmpty()) keywords.add(keyword);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read keywords file: " + path);
+        }
+        return keywords;
+    }
+
     private static boolean isValuedFlag(String key) {
         if (key == null) return false;
-        return !key.equals("allow-external") && !key.equals("insecure") && !key.equals("help");
+        return !key.equals("allow-external") && !key.equals("insecure") && !key.equals("resume")
+                && !key.equals("metrics") && !key.equals("ignore-robots") && !key.equals("use-sitemaps") && !key.equals("help");
     }
 
     private static String mapShortFlag(char c) {
@@ -83,6 +180,7 @@ public class CliOptions {
             case 'p' -> "max-pages";
             case 'b' -> "max-bytes";
             case 't' -> "timeout-ms";
+            case 'c' -> "concurrency";
             case 'e' -> "allow-external";
             case 'i' -> "insecure";
             case 'o' -> "output";
@@ -94,16 +192,52 @@ public class CliOptions {
     public void validate() {
         if (help) return;
         if (url == null || url.isEmpty()) throw new IllegalArgumentException("URL is required (-u, --url)");
-        if (keyword == null || keyword.isEmpty()) throw new IllegalArgumentException("Keyword is required (-k, --keyword)");
+        if (keywords.isEmpty()) throw new IllegalArgumentException("Keyword is required (-k, --keyword or --keywords-file)");
         if (depth < 0) throw new IllegalArgumentException("Depth must be non-negative");
         if (maxPages <= 0) throw new IllegalArgumentException("Max pages must be greater than zero");
         if (maxBytes <= 0) throw new IllegalArgumentException("Max bytes must be greater than zero");
         if (timeoutMs < 0) throw new IllegalArgumentException("Timeout must be non-negative");
+        if (concurrency <= 0) throw new IllegalArgumentException("Concurrency must be greater than zero");
+        if (hostDelayMs < 0) throw new IllegalArgumentException("Host delay must be non-negative");
+        if (hostConnections <= 0) throw new IllegalArgumentException("Host connections must be greater than zero");
+        if (hostMaxConnections < 0) throw new IllegalArgumentException("Host max connections must be non-negative");
+        if (!rateControl.equals("adaptive") && !rateControl.equals("fixed")) {
+            throw new IllegalArgumentException("Invalid rate control: " + rateControl + ". Use adaptive or fixed.");
+        }
+        if (maxRetries < 0) throw new IllegalArgumentException("Max retries must be non-negative");
+        if (frontierMemoryMb <= 0) throw new IllegalArgumentException("Frontier memory must be greater than zero");
+        if (checkpointIntervalMs < 0) throw new IllegalArgumentException("Checkpoint interval must be non-negative");
+        if (resume && stateDir == null) throw new IllegalArgumentException("--resume requires --state-dir");
+        if (cacheMaxMb <= 0) throw new IllegalArgumentException("Cache size must be greater than zero");
+        if (contentCacheSize < 0) throw new IllegalArgumentException("Content cache size must be non-negative");
+        if (nearDupDistance < 0 || nearDupDistance > 16) throw new IllegalArgumentException("Near-duplicate distance must be between 0 and 16");
+        if (!nearDupAction.equals("drop") && !nearDupAction.equals("defer")) {
+            throw new IllegalArgumentException("Invalid near-duplicate action: " + nearDupAction + ". Use drop or defer.");
+        }
+        if (!htmlParser.equals("jsoup") && !htmlParser.equals("fast")) {
+            throw new IllegalArgumentException("Invalid HTML parser: " + htmlParser + ". Use jsoup or fast.");
+        }
+        if (!extractMode.equals("thread") && !extractMode.equals("process")) {
+            throw new IllegalArgumentException("Invalid extract mode: " + extractMode + ". Use thread or process.");
+        }
+        if (extractWorkers <= 0) throw new IllegalArgumentException("Extract workers must be greater than zero");
+        if (extractTimeoutMs < 0) throw new IllegalArgumentException("Extract timeout must be non-negative");
+        if (extractMaxChars <= 0) throw new IllegalArgumentException("Extract max chars must be greater than zero");
+        if (metricsPort < 0 || metricsPort > 65535) throw new IllegalArgumentException("Metrics port must be between 0 and 65535");
+        if (fuzzyCacheSize < 0) throw new IllegalArgumentException("Fuzzy cache size must be non-negative");
         if (!mode.equals("default") && !mode.equals("exact") && !mode.equals("fuzzy")) {
             throw new IllegalArgumentException("Invalid mode: " + mode + ". Use default, exact, or fuzzy.");
         }
-        if (!output.equals("text") && !output.equals("json")) {
-            throw new IllegalArgumentException("Invalid output format: " + output + ". Use text or json.");
+        if (!output.equals("text") && !output.equals("json") && !output.equals("ndjson")) {
+            throw new IllegalArgumentException("Invalid output format: " + output + ". Use text, json, or ndjson.");
+        }
+        if (progressIntervalMs < 0) throw new IllegalArgumentException("Progress interval must be non-negative");
+        if (!dedupe.equals("exact") && !dedupe.equals("fingerprint") && !dedupe.equals("bloom")) {
+            throw new IllegalArgumentException("Invalid dedupe mode: " + dedupe + ". Use exact, fingerprint, or bloom.");
+        }
+        if (!(bloomFpp > 0 && bloomFpp < 1)) throw new IllegalArgumentException("Bloom false-positive rate must be between 0 and 1");
+        if (!fetcher.equals("httpclient") && !fetcher.equals("jsoup")) {
+            throw new IllegalArgumentException("Invalid fetcher: " + fetcher + ". Use httpclient or jsoup.");
         }
     }
 
@@ -112,28 +246,94 @@ public class CliOptions {
         System.out.println("\nUsage: java -jar WebGrep.jar -u <URL> -k <keyword> [options]");
         System.out.println("\nOptions:");
         System.out.println("  -u, --url <URL>          The starting URL (required)");
-        System.out.println("  -k, --keyword <word>     The keyword to search for (required)");
+        System.out.println("  -k, --keyword <word>     The keyword to search for (required, repeatable)");
+        System.out.println("  --keywords-file <path>   Read additional keywords from a file, one per line");
         System.out.println("  -d, --depth <n>          Maximum crawl depth (default: 1)");
         System.out.println("  -m, --mode <mode>        Match mode: default, exact, or fuzzy");
+        System.out.println("  --fuzzy-cache-size <n>   Distinct words whose fuzzy verdict is cached (default: 100000, 0 = off)");
+        System.out.println("  --content-cache-size <n> Distinct bodies whose parse/match result is reused (default: 4096, 0 = off)");
+        System.out.println("  --near-dup-distance <n>  Treat pages within n SimHash bits of an earlier page as duplicates (default: 0 = off)");
+        System.out.println("  --near-dup-action <a>    What to do with their links: drop (default) or defer until the crawl is otherwise done");
         System.out.println("  -p, --max-pages <n>      Maximum number of pages to crawl (default: 5000)");
+        System.out.println("  --dedupe <mode>          Visited-URL set: exact (default), fingerprint, or bloom");
+        System.out.println("  --bloom-fpp <rate>       False-positive rate for --dedupe bloom (default: 0.01)");
+        System.out.println("  --frontier-memory-mb <n> Heap for queued URLs before spilling to disk (default: 256)");
+        System.out.println("  --spill-dir <path>       Directory for spilled frontier segments (default: system temp)");
+        System.out.println("  --state-dir <path>       Checkpoint the crawl to this directory");
+        System.out.println("  --resume                 Continue the crawl checkpointed in --state-dir");
+        System.out.println("  --checkpoint-interval-ms <n> How often the checkpoint is flushed (default: 5000)");
         System.out.println("  -b, --max-bytes <n>      Maximum file size in bytes (default: 10MB)");
         System.out.println("  -t, --timeout-ms <n>     Request timeout in milliseconds (default: 20000)");
+        System.out.println("  -c, --concurrency <n>    Number of parallel fetches (default: 8)");
+        System.out.println("  --host-delay-ms <n>      Delay between requests to one host, the starting point for adaptive control (default: 100)");
+        System.out.println("  --host-connections <n>   Parallel requests to one host, the starting point for adaptive control (default: 2)");
+        System.out.println("  --rate-control <m>       Per-host pacing: adaptive (default, AIMD on latency and 429/503/timeouts) or fixed");
+        System.out.println("  --host-max-connections <n> Let adaptive pacing go up to n parallel requests per host (default: --host-connections)");
+        System.out.println("  --max-retries <n>        Retries of a URL after 429, 503 or a timeout, honoring Retry-After (default: 2)");
+        System.out.println("  --fetcher <name>         HTTP backend: httpclient (default) or jsoup");
+        System.out.println("  --cache-dir <path>       Keep responses on disk and revalidate them on later runs");
+        System.out.println("  --cache-max-mb <n>       Size limit of the response cache (default: 1024)");
+        System.out.println("  --html-parser <p>        HTML handling: jsoup (default, full DOM) or fast (single-pass scanner)");
+        System.out.println("  --filter-rules <path>    Allow/deny rules for links, replacing the built-in list");
+        System.out.println("  --extract-mode <m>       Run PDF/Office extraction on threads (default) or in child JVMs (process)");
+        System.out.println("  --extract-workers <n>    Parallel extractions (default: half the CPU cores)");
+        System.out.println("  --extract-timeout-ms <n> Give up on a document after this long, counted as a parse error (default: 30000, 0 = none)");
+        System.out.println("  --extract-max-chars <n>  Stop extracting a document after this many characters (default: 10000000)");
+        System.out.println("  --content-types <list>   Only download these types, e.g. text/html,application/pdf,text/*");
+        System.out.println("  --metrics                Time each phase of page processing and add a metrics section to the report");
+        System.out.println("  --metrics-port <n>       Also serve the metrics in Prometheus format on 127.0.0.1:<n>/metrics during the crawl");
+        System.out.println("  --ignore-robots          Do not read robots.txt; by default its rules and Crawl-delay are obeyed");
+        System.out.println("  --use-sitemaps           Queue the URLs listed in the start host's sitemaps at depth 1");
         System.out.println("  -e, --allow-external     Allow crawling external domains");
         System.out.println("  -i, --insecure           Trust all SSL certificates (dangerous)");
-        System.out.println("  -o, --output <format>    Output format: text (default) or json");
+        System.out.println("  -o, --output <format>    Output format: text (default), json, or ndjson (one line per result as it is found)");
+        System.out.println("  --progress-interval-ms <n> How often ndjson output reports progress (default: 5000, 0 = off)");
         System.out.println("  -h, --help               Show this help message");
     }
 
     // Getters
     public String getUrl() { return url; }
-    public String getKeyword() { return keyword; }
+    public String getKeyword() { return keywords.isEmpty() ? null : keywords.get(0); }
+    public List<String> getKeywords() { return keywords; }
     public int getDepth() { return depth; }
     public String getMode() { return mode; }
     public int getMaxPages() { return maxPages; }
     public long getMaxBytes() { return maxBytes; }
     public int getTimeoutMs() { return timeoutMs; }
+    public int getConcurrency() { return concurrency; }
+    public long getHostDelayMs() { return hostDelayMs; }
+    public int getHostConnections() { return hostConnections; }
+    public String getRateControl() { return rateControl; }
+    public int getHostMaxConnections() { return Math.max(hostMaxConnections, hostConnections); }
+    public int getMaxRetries() { return maxRetries; }
+    public String getFetcher() { return fetcher; }
+    public List<String> getContentTypes() { return contentTypes; }
+    public int getFuzzyCacheSize() { return fuzzyCacheSize; }
+    public int getContentCacheSize() { return contentCacheSize; }
+    public int getNearDupDistance() { return nearDupDistance; }
+    public String getNearDupAction() { return nearDupAction; }
+    public String getDedupe() { return dedupe; }
+    public double getBloomFpp() { return bloomFpp; }
+    public long getFrontierMemoryMb() { return frontierMemoryMb; }
+    public String getSpillDir() { return spillDir; }
+    public String getStateDir() { return stateDir; }
+    public boolean isResume() { return resume; }
+    public long getCheckpointIntervalMs() { return checkpointIntervalMs; }
+    public String getCacheDir() { return cacheDir; }
+    public long getCacheMaxMb() { return cacheMaxMb; }
+    public String getHtmlParser() { return htmlParser; }
+    public String getFilterRules() { return filterRules; }
+    public boolean isMetrics() { return metrics; }
+    public int getMetricsPort() { return metricsPort; }
+    public String getExtractMode() { return extractMode; }
+    public int getExtractWorkers() { return extractWorkers; }
+    public long getExtractTimeoutMs() { return extractTimeoutMs; }
+    public int getExtractMaxChars() { return extractMaxChars; }
+    public boolean isIgnoreRobots() { return ignoreRobots; }
+    public boolean isUseSitemaps() { return useSitemaps; }
     public boolean isAllowExternal() { return allowExternal; }
     public boolean isInsecure() { return insecure; }
     public String getOutput() { return output; }
+    public long getProgressIntervalMs() { return progressIntervalMs; }
     public boolean isHelp() { return help; }
 }
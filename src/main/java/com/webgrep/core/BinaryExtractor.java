@@ -0,0 +1,25 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+
+/**
+ * Counts keyword matches in a non-HTML body (PDF, Office, ...) under a wall-clock deadline and a
+ * character cap, so that one malformed document costs at most one deadline instead of stalling the
+ * crawl. Text is matched while the parser produces it and never held as a whole. Implementations
+ * are shared by all CPU workers and must be thread-safe.
+ */
+public interface BinaryExtractor extends AutoCloseable {
+
+    /** @throws ExtractionException if the document timed out or the extractor failed on it */
+    int[] match(byte[] body, String url, String contentType, CompiledQuery query) throws ExtractionException, InterruptedException;
+
+    @Override
+    default void close() {}
+
+    static BinaryExtractor create(CliOptions options, ContentExtractor extractor) {
+        if ("process".equals(options.getExtractMode())) {
+            return new ForkedBinaryExtractor(options.getExtractWorkers(), options.getExtractTimeoutMs(), options.getExtractMaxChars());
+        }
+        return new ThreadedBinaryExtractor(extractor, options.getExtractWorkers(), options.getExtractTimeoutMs(), options.getExtractMaxChars());
+    }
+}
@@ -0,0 +1,65 @@
+package com.webgrep.core;
+
+import com.webgrep.utils.Hashing;
+
+/**
+ * Bloom filter sized for the crawl's page budget and a target false-positive rate. A false
+ * positive makes the crawler skip a URL it has not actually seen; it never causes a refetch.
+ * At 1% this costs under 10 bits per URL.
+ */
+public class BloomVisitedSet implements VisitedSet {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+    private int size;
+
+    public BloomVisitedSet(int expected, double falsePositiveRate) {
+        long n = Math.max(1, expected);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) & ~63L);
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, m >>> 6)];
+        this.bitCount = (long) bits.length << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    @Override
+    public boolean add(String url) {
+        long hash = Hashing.hash64(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean added = false;
+        for (int i = 1; i <= hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        if (added) size++;
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long hash = Hashing.hash64(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 16L + 8L * bits.length;
+    }
+}
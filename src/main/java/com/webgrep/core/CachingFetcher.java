@@ -0,0 +1,100 @@
+package com.webgrep.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fetcher decorator that keeps successful responses in a {@link ResponseCache} and revalidates
+ * them on the next request with {@code If-None-Match} / {@code If-Modified-Since}. A
+ * {@code 304 Not Modified} answer is served from disk, so an unchanged site costs one header
+ * exchange per page instead of a full download.
+ * <p>
+ * Owns both the wrapped fetcher and the cache: closing this closes them.
+ */
+public class CachingFetcher implements Fetcher {
+    private final Fetcher delegate;
+    private final ResponseCache cache;
+    private final FetchLimits limits;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    public CachingFetcher(Fetcher delegate, ResponseCache cache, FetchLimits limits) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.limits = limits;
+    }
+
+    @Override
+    public FetchResponse fetch(String url) throws IOException, InterruptedException {
+        ResponseCache.Entry entry = cache.get(url);
+        // An entry the current limits would reject is not worth revalidating.
+        if (entry == null || !limits.acceptsType(entry.contentType) || limits.exceedsSize(Long.toString(entry.size()))) {
+            return store(url, delegate.fetch(url));
+        }
+
+        Map<String, String> validators = new HashMap<>();
+        if (entry.etag != null) validators.put("If-None-Match", entry.etag);
+        if (entry.lastModified != null) validators.put("If-Modified-Since", entry.lastModified);
+        revalidations.increment();
+        FetchResponse response = delegate.fetch(url, validators);
+
+        if (response.statusCode() == 304) {
+            byte[] body = cache.body(entry);
+            if (body != null) {
+                hits.increment();
+                bytesSaved.add(body.length);
+                cache.revalidated(url, response.header("ETag"), response.header("Last-Modified"));
+                Map<String, List<String>> headers = entry.contentType == null
+                        ? Map.of() : Map.of("Content-Type", List.of(entry.contentType));
+                return new FetchResponse(entry.finalUrl, 200, headers, body);
+            }
+            // Body file lost (evicted by another thread or removed by hand): fetch in full.
+            cache.remove(url);
+            response = delegate.fetch(url);
+        }
+        return store(url, response);
+    }
+
+    private FetchResponse store(String url, FetchResponse response) {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300 && response.body() != null) {
+            try {
+                cache.put(url, response.url(), response.contentType(), response.header("ETag"),
+                        response.header("Last-Modified"), response.body());
+            } catch (IOException ignored) {
+                // A cache that cannot be written only costs a refetch next time.
+            }
+        } else if (status == 404 || status == 410) {
+            cache.remove(url);
+        }
+        return response;
+    }
+
+    /** Responses served from disk after a 304. */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /** Conditional requests sent. */
+    public long revalidations() {
+        return revalidations.sum();
+    }
+
+    /** Body bytes that did not have to be downloaded thanks to a 304. */
+    public long bytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+import com.webgrep.utils.AhoCorasick;
+import com.webgrep.utils.TextFolding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keywords and match mode compiled once per crawl into the automata {@link MatchEngine} runs
+ * over every page. Immutable and shared by all worker threads.
+ */
+public final class CompiledQuery {
+    private final List<String> keywords;
+    private final String mode;
+
+    /** Keywords as typed (exact mode) or case-folded (other modes). */
+    final AhoCorasick literal;
+    /** Keywords reduced by {@link TextFolding#superSimplify}, matched against folded text. */
+    final AhoCorasick simplified;
+    final String[] simplifiedKeywords;
+    /** Per-keyword bounded edit-distance matchers used by fuzzy mode. */
+    final FuzzyMatcher[] fuzzyMatchers;
+    /** Word verdicts shared across pages; {@code null} outside fuzzy mode or when disabled. */
+    final FuzzyWordCache wordCache;
+    /** Words outside this length range cannot be within any keyword's threshold. */
+    final int minFuzzyLength;
+    final int maxFuzzyLength;
+
+    public CompiledQuery(List<String> keywords, String mode) {
+        this(keywords, mode, DEFAULT_FUZZY_CACHE_SIZE);
+    }
+
+    public static final int DEFAULT_FUZZY_CACHE_SIZE = 100_000;
+
+    public CompiledQuery(List<String> keywords, String mode, int fuzzyCacheSize) {
+        this.keywords = List.copyOf(keywords);
+        this.mode = mode;
+
+        boolean exact = mode.equals("exact");
+        List<String> literalKeywords = new ArrayList<>(keywords.size());
+        List<String> simple = new ArrayList<>(keywords.size());
+        for (String keyword : this.keywords) {
+            if (exact) {
+                literalKeywords.add(keyword);
+            } else {
+                StringBuilder folded = new StringBuilder(keyword.length());
+                for (int i = 0; i < keyword.length(); i++) {
+                    folded.append(MatchEngine.foldCase(keyword.charAt(i)));
+                }
+                literalKeywords.add(folded.toString());
+            }
+            simple.add(TextFolding.superSimplify(keyword));
+        }
+        this.literal = new AhoCorasick(literalKeywords);
+        this.simplified = new AhoCorasick(simple);
+        this.simplifiedKeywords = simple.toArray(new String[0]);
+        this.fuzzyMatchers = new FuzzyMatcher[simplifiedKeywords.length];
+        for (int k = 0; k < simplifiedKeywords.length; k++) {
+            fuzzyMatchers[k] = new FuzzyMatcher(simplifiedKeywords[k]);
+        }
+
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (int k = 0; k < simplifiedKeywords.length; k++) {
+            if (simplifiedKeywords[k].isEmpty()) continue;
+            minLength = Math.min(minLength, simplifiedKeywords[k].length() - fuzzyMatchers[k].threshold());
+            maxLength = Math.max(maxLength, simplifiedKeywords[k].length() + fuzzyMatchers[k].threshold());
+        }
+        // Separators end empty words too; a short keyword's threshold must not let those match.
+        this.minFuzzyLength = Math.max(1, minLength);
+        this.maxFuzzyLength = maxLength;
+        this.wordCache = mode.equals("fuzzy") && fuzzyCacheSize > 0 ? new FuzzyWordCache(fuzzyCacheSize) : null;
+    }
+
+    public static CompiledQuery from(CliOptions options) {
+        return new CompiledQuery(options.getKeywords(), options.getMode(), options.getFuzzyCacheSize());
+    }
+
+    public List<String> keywords() { return keywords; }
+    public String mode() { return mode; }
+
+    public long fuzzyCacheHits() { return wordCache == null ? 0 : wordCache.hits(); }
+    public long fuzzyCacheMisses() { return wordCache == null ? 0 : wordCache.misses(); }
+}
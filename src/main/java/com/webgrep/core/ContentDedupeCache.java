@@ -0,0 +1,147 @@
+package com.webgrep.core;
+
+import com.webgrep.utils.Hashing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers what parsing and matching produced for a response body, keyed by a 128-bit
+ * MurmurHash3 of the bytes and the content type. When the same bytes turn up under another URL
+ * (tracking-parameter variants, print views, mirrored PDFs) the crawler reuses the match counts
+ * instead of running Jsoup or Tika again. Extracted links are reused too when they cannot depend
+ * on the URL that served the page (see {@link ContentExtractor.LinkScope}).
+ * <p>
+ * Bounded LRU, split into segments so CPU workers rarely contend. Thread-safe.
+ */
+public class ContentDedupeCache {
+    private static final int SEGMENTS = 16;
+
+    /** Identity of a body: its hash mixed with the content type. */
+    public static final class Key {
+        final long h1;
+        final long h2;
+
+        private Key(long h1, long h2) {
+            this.h1 = h1;
+            this.h2 = h2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).h1 == h1 && ((Key) o).h2 == h2;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(h1);
+        }
+    }
+
+    /** The result of processing one body. {@code links} is {@code null} if they were not extracted. */
+    public static final class Entry {
+        final boolean parsed;
+        final String blockedReason;
+        final int[] counts;
+        final OptionalLong simhash;
+        final List<String> links;
+        final ContentExtractor.LinkScope scope;
+        final String responseUrl;
+        final String requestUrl;
+
+        public Entry(boolean parsed, String blockedReason, int[] counts, OptionalLong simhash, List<String> links,
+                     ContentExtractor.LinkScope scope, String responseUrl, String requestUrl) {
+            this.parsed = parsed;
+            this.blockedReason = blockedReason;
+            this.counts = counts;
+            this.simhash = simhash;
+            this.links = links == null ? null : Collections.unmodifiableList(links);
+            this.scope = scope;
+            this.responseUrl = responseUrl;
+            this.requestUrl = requestUrl;
+        }
+
+        /** Whether {@link #links} are exactly what extraction would return for the page at these URLs. */
+        boolean linksValidFor(String responseUrl, String requestUrl) {
+            if (links == null) return false;
+            switch (scope) {
+                case ABSOLUTE:
+                    return true;
+                case DIRECTORY:
+                    return directory(responseUrl).equals(directory(this.responseUrl))
+                            && directory(requestUrl).equals(directory(this.requestUrl));
+                default:
+                    return responseUrl.equals(this.responseUrl) && requestUrl.equals(this.requestUrl);
+            }
+        }
+    }
+
+    private final Map<Key, Entry>[] segments;
+    private final int perSegment;
+    private final LongAdder hits = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public ContentDedupeCache(int capacity) {
+        this.perSegment = Math.max(1, capacity / SEGMENTS);
+        this.segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > perSegment;
+                }
+            };
+        }
+    }
+
+    public static Key key(byte[] body, String contentType) {
+        long[] hash = Hashing.murmur3_128(body, 0);
+        long type = contentType == null ? 0 : Hashing.hash64(contentType);
+        return new Key(hash[0] ^ type, hash[1] + type);
+    }
+
+    public Entry get(Key key) {
+        Map<Key, Entry> segment = segment(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null) hits.increment();
+        return entry;
+    }
+
+    public void put(Key key, Entry entry) {
+        Map<Key, Entry> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /** Bodies whose parsing and matching were skipped. */
+    public long hits() {
+        return hits.sum();
+    }
+
+    private Map<Key, Entry> segment(Key key) {
+        return segments[(int) (key.h2 >>> 60)];
+    }
+
+    /** Scheme, authority and path up to the last {@code '/'}: what a path-relative href resolves against. */
+    static String directory(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query != -1) end = query;
+        int fragment = url.indexOf('#');
+        if (fragment != -1 && fragment < end) end = fragment;
+        int authority = url.indexOf("://");
+        int pathStart = url.indexOf('/', authority == -1 ? 0 : authority + 3);
+        if (pathStart == -1 || pathStart >= end) {
+            return url.substring(0, end) + "/";
+        }
+        return url.substring(0, url.lastIndexOf('/', end - 1) + 1);
+    }
+}
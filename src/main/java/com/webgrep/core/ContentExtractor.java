@@ -1,46 +1,110 @@
 package com.webgrep.core;
 
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.CDataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.apache.tika.Tika;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.HttpHeaders;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.webgrep.utils.UrlFilter;
 import com.webgrep.utils.UrlUtils;
 
 public class ContentExtractor {
+    /** How much of the page URL the links extracted from a document depend on. */
+    public enum LinkScope {
+        /** Every href is absolute: the links are the same whatever URL served the page. */
+        ABSOLUTE,
+        /** Relative hrefs resolve against the directory only (no query-, fragment- or empty hrefs, no {@code <base>}). */
+        DIRECTORY,
+        /** Links may depend on the full URL. */
+        PAGE
+    }
+
     private final Tika tika;
+    private final UrlFilter urlFilter;
     private static final int MAX_LINKS_PER_PAGE = 5000;
+    private static final Pattern HREF = Pattern.compile("href\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ABSOLUTE_URL = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*://.*");
 
     public ContentExtractor() {
+        this(UrlFilter.defaults());
+    }
+
+    public ContentExtractor(UrlFilter urlFilter) {
+        this.urlFilter = urlFilter;
         this.tika = new Tika();
+        // Configured once up front: extraction runs concurrently on the CPU pool.
+        this.tika.setMaxStringLength(-1);
+    }
+
+    public UrlFilter urlFilter() {
+        return urlFilter;
     }
 
     public String extractTextFromHtml(Document doc) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(doc.title()).append(" ");
-        Element bodyTag = doc.body();
-        if (bodyTag != null) {
-            sb.append(bodyTag.text());
-        } else {
-            sb.append(doc.text());
+        StringWriter text = new StringWriter();
+        writeTextFromHtml(doc, text);
+        return text.toString();
+    }
+
+    /**
+     * Writes the same text {@link #extractTextFromHtml} returns, one text node at a time, so the
+     * page text never has to be built as a whole.
+     */
+    public void writeTextFromHtml(Document doc, Writer out) {
+        try {
+            out.write(doc.title());
+            out.write(' ');
+            Element bodyTag = doc.body();
+            NodeTraversor.traverse(new HtmlTextWriter(out), bodyTag != null ? bodyTag : doc);
+            out.write(' ');
+            out.write(doc.select("meta[name=description]").attr("content"));
+            out.write(' ');
+            out.write(doc.select("meta[name=keywords]").attr("content"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        sb.append(" ").append(doc.select("meta[name=description]").attr("content"));
-        sb.append(" ").append(doc.select("meta[name=keywords]").attr("content"));
-        return sb.toString();
     }
 
     public String extractTextFromBinary(byte[] body, String url, String contentType) {
+        return extractTextFromBinary(body, url, contentType, -1);
+    }
+
+    /**
+     * Extracts at most {@code maxChars} characters ({@code -1} for no limit). Parser failures fall back
+     * to the raw bytes as text; {@link Error}s such as running out of memory propagate to the caller.
+     */
+    public String extractTextFromBinary(byte[] body, String url, String contentType, int maxChars) {
         try (InputStream bis = new ByteArrayInputStream(body)) {
             Metadata metadata = new Metadata();
             metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, url);
@@ -48,49 +112,254 @@ public class ContentExtractor {
                 metadata.set(HttpHeaders.CONTENT_TYPE, contentType);
             }
 
-            tika.setMaxStringLength(-1);
-            String content = tika.parseToString(bis, metadata);
+            String content = tika.parseToString(bis, metadata, maxChars);
 
             if (content == null || content.trim().isEmpty()) {
                 try (InputStream bis2 = new ByteArrayInputStream(body)) {
-                    content = tika.parseToString(bis2);
+                    content = tika.parseToString(bis2, new Metadata(), maxChars);
                 }
             }
             return content;
-        } catch (Throwable t) {
-            return new String(body, StandardCharsets.UTF_8);
+        } catch (Exception | LinkageError | StackOverflowError e) {
+            // Linkage errors come from parsers whose optional dependencies are not bundled.
+            String raw = new String(body, StandardCharsets.UTF_8);
+            return maxChars >= 0 && raw.length() > maxChars ? raw.substring(0, maxChars) : raw;
         }
     }
 
+    /**
+     * Streams the text of a binary document into {@code out} while the parser produces it, with the
+     * same limit and fallbacks as {@link #extractTextFromBinary(byte[], String, String, int)}. The
+     * stream is reset before each fallback, so it ends up holding exactly one version of the text.
+     */
+    public void writeTextFromBinary(byte[] body, String url, String contentType, int maxChars, MatchStream out) {
+        try {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, url);
+            if (contentType != null) {
+                metadata.set(HttpHeaders.CONTENT_TYPE, contentType);
+            }
+
+            if (!parse(body, metadata, maxChars, out)) {
+                out.reset();
+                parse(body, new Metadata(), maxChars, out);
+            }
+        } catch (Exception | LinkageError | StackOverflowError e) {
+            out.reset();
+            try (Reader raw = new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                long remaining = maxChars < 0 ? Long.MAX_VALUE : maxChars;
+                int n;
+                while (remaining > 0 && (n = raw.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            } catch (IOException impossible) {
+                throw new UncheckedIOException(impossible);
+            }
+        }
+    }
+
+    /** Same parse as {@code Tika.parseToString}, writing to {@code out}; returns whether any visible text came out. */
+    private boolean parse(byte[] body, Metadata metadata, int maxChars, Writer out) throws IOException, TikaException {
+        Parser parser = tika.getParser();
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser);
+        VisibleTextWriter tracked = new VisibleTextWriter(out);
+        try (InputStream stream = new ByteArrayInputStream(body)) {
+            parser.parse(stream, new BodyContentHandler(new WriteOutContentHandler(tracked, maxChars)), metadata, context);
+        } catch (SAXException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw new TikaException("Unexpected SAX processing failure", e);
+            }
+        }
+        return tracked.visible;
+    }
+
     public List<String> extractLinks(Document doc, byte[] rawBody, String baseUrl) {
-        List<String> links = new ArrayList<>();
-        Elements elements = doc.select("a[href]");
-        for (Element element : elements) {
-            if (links.size() >= MAX_LINKS_PER_PAGE) break;
+        return scanLinks(doc, rawBody, baseUrl, false).links;
+    }
+
+    /**
+     * Same links as {@link #extractLinks(Document, byte[], String)} from an {@link HtmlScanner} pass:
+     * anchors are resolved against {@code <base href>} or {@code documentUrl} the way jsoup does.
+     */
+    public List<String> extractLinks(HtmlScanner.Page page, String html, String documentUrl, String baseUrl) {
+        return scanLinks(page, html, documentUrl, baseUrl, false).links;
+    }
+
+    /**
+     * The links of {@link #extractLinks(Document, byte[], String)} together with their {@link LinkScope},
+     * so that links extracted for one URL can be reused for an identical body served under another.
+     * The hrefs are classified in the same pass that resolves them.
+     */
+    public PageLinks extractLinksWithScope(Document doc, byte[] rawBody, String baseUrl) {
+        return scanLinks(doc, rawBody, baseUrl, true);
+    }
+
+    public PageLinks extractLinksWithScope(HtmlScanner.Page page, String html, String documentUrl, String baseUrl) {
+        return scanLinks(page, html, documentUrl, baseUrl, true);
+    }
+
+    /** Links of a page and, when asked for, how much of the page URL they depend on (else {@code null}). */
+    public static final class PageLinks {
+        public final List<String> links;
+        public final LinkScope scope;
+
+        PageLinks(List<String> links, LinkScope scope) {
+            this.links = links;
+            this.scope = scope;
+        }
+    }
+
+    private PageLinks scanLinks(Document doc, byte[] rawBody, String baseUrl, boolean withScope) {
+        Set<String> links = new LinkedHashSet<>();
+        UrlUtils.ParsedUrl base = UrlUtils.parse(baseUrl);
+        LinkScope scope = !withScope ? null : doc.selectFirst("base[href]") != null ? LinkScope.PAGE : LinkScope.ABSOLUTE;
+        for (Element element : doc.select("a[href]")) {
+            boolean full = links.size() >= MAX_LINKS_PER_PAGE;
+            if (full && !tracking(scope)) break;
+            if (tracking(scope)) scope = widen(scope, element.attr("href"));
+            if (full) continue;
             String link = element.absUrl("href");
-            if (link.isEmpty()) {
-                link = element.attr("href");
+            addLink(links, link.isEmpty() ? element.attr("href") : link, base);
+        }
+        scope = addRawLinks(links, new String(rawBody, StandardCharsets.UTF_8), base, scope);
+        return new PageLinks(new ArrayList<>(links), scope);
+    }
+
+    private PageLinks scanLinks(HtmlScanner.Page page, String html, String documentUrl, String baseUrl, boolean withScope) {
+        String base = documentUrl;
+        if (page.baseHref() != null) {
+            String resolved = StringUtil.resolve(documentUrl, page.baseHref());
+            if (!resolved.isEmpty()) base = resolved;
+        }
+        Set<String> links = new LinkedHashSet<>();
+        UrlUtils.ParsedUrl parsedBase = UrlUtils.parse(baseUrl);
+        LinkScope scope = !withScope ? null : page.baseHref() != null ? LinkScope.PAGE : LinkScope.ABSOLUTE;
+        for (String href : page.anchorHrefs()) {
+            boolean full = links.size() >= MAX_LINKS_PER_PAGE;
+            if (full && !tracking(scope)) break;
+            if (tracking(scope)) scope = widen(scope, href);
+            if (full) continue;
+            String link = StringUtil.resolve(base, href);
+            addLink(links, link.isEmpty() ? href : link, parsedBase);
+        }
+        scope = addRawLinks(links, html, parsedBase, scope);
+        return new PageLinks(new ArrayList<>(links), scope);
+    }
+
+    /**
+     * Adds hrefs found by a plain regex over the markup, which also catches links outside anchors,
+     * and widens {@code scope} by them unless it is {@code null}. Returns the scope.
+     */
+    private LinkScope addRawLinks(Set<String> links, String html, UrlUtils.ParsedUrl baseUrl, LinkScope scope) {
+        Matcher linkMatcher = HREF.matcher(html);
+        while ((links.size() < MAX_LINKS_PER_PAGE || tracking(scope)) && linkMatcher.find()) {
+            if (tracking(scope)) scope = widen(scope, linkMatcher.group(1));
+            if (links.size() < MAX_LINKS_PER_PAGE) addLink(links, linkMatcher.group(1), baseUrl);
+        }
+        return scope;
+    }
+
+    /** {@code baseUrl} is parsed once per page rather than once per link. */
+    private void addLink(Set<String> links, String link, UrlUtils.ParsedUrl baseUrl) {
+        String normalizedLink = UrlUtils.resolve(link, baseUrl);
+        if (!normalizedLink.isEmpty() && !urlFilter.isIgnored(normalizedLink)) {
+            links.add(normalizedLink);
+        }
+    }
+
+    /** Whether hrefs can still widen {@code scope}: it is being computed and has not reached {@link LinkScope#PAGE}. */
+    private static boolean tracking(LinkScope scope) {
+        return scope != null && scope != LinkScope.PAGE;
+    }
+
+    private static LinkScope widen(LinkScope scope, String href) {
+        String trimmed = href.strip();
+        if (trimmed.isEmpty() || trimmed.charAt(0) == '?' || trimmed.charAt(0) == '#') {
+            return LinkScope.PAGE;
+        }
+        if (ABSOLUTE_URL.matcher(trimmed).matches()) {
+            return scope;
+        }
+        return LinkScope.DIRECTORY;
+    }
+
+    /** Forwards to another writer, noting whether anything but whitespace went through. */
+    private static final class VisibleTextWriter extends Writer {
+        private final Writer out;
+        boolean visible;
+
+        VisibleTextWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            if (!visible) {
+                for (int i = off; i < off + len; i++) {
+                    if (buf[i] > ' ') {
+                        visible = true;
+                        break;
+                    }
+                }
             }
-            String normalizedLink = UrlUtils.normalizeUrl(link, baseUrl);
-            if (!normalizedLink.isEmpty() && !UrlUtils.isIgnoredLink(normalizedLink)) {
-                links.add(normalizedLink);
+            out.write(buf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Feeds a DOM walk to an {@link ElementTextWriter}, mirroring jsoup's {@code Element.text()}. */
+    private static final class HtmlTextWriter implements NodeVisitor {
+        private final ElementTextWriter out;
+
+        HtmlTextWriter(Writer out) {
+            this.out = new ElementTextWriter(out);
+        }
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                TextNode textNode = (TextNode) node;
+                out.text(textNode.getWholeText(), preserveWhitespace(textNode.parent()) || textNode instanceof CDataNode);
+            } else if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element.isBlock() || element.normalName().equals("br")) {
+                    out.space();
+                }
             }
         }
 
-        if (links.size() < MAX_LINKS_PER_PAGE) {
-            String bodyStr = new String(rawBody, StandardCharsets.UTF_8);
-            Pattern linkPattern = Pattern.compile("href\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
-            Matcher linkMatcher = linkPattern.matcher(bodyStr);
-            while (linkMatcher.find() && links.size() < MAX_LINKS_PER_PAGE) {
-                String href = linkMatcher.group(1);
-                String normalizedLink = UrlUtils.normalizeUrl(href, baseUrl);
-                if (!normalizedLink.isEmpty() && !UrlUtils.isIgnoredLink(normalizedLink)) {
-                    if (!links.contains(normalizedLink)) {
-                        links.add(normalizedLink);
-                    }
+        @Override
+        public void tail(Node node, int depth) {
+            if (node instanceof Element) {
+                Node next = node.nextSibling();
+                if (((Element) node).isBlock()
+                        && (next instanceof TextNode || next instanceof Element && !((Element) next).tag().formatAsBlock())) {
+                    out.space();
+                }
+            }
+        }
+
+        private static boolean preserveWhitespace(Node node) {
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                for (int i = 0; i < 6 && element != null; i++) {
+                    if (element.tag().preserveWhitespace()) return true;
+                    element = element.parent();
                 }
             }
+            return false;
         }
-        return links;
     }
 }
@@ -0,0 +1,238 @@
+package com.webgrep.core;
+
+import com.webgrep.reporting.CrawlResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Append-only checkpoint of a crawl. Every URL admitted to the frontier is logged as an
+ * {@code ENQUEUE} record and every committed page as a {@code COMMIT} record carrying its
+ * counters, matches and block reason. A throttled page sent back to the frontier under a new
+ * sequence number is logged as a {@code REQUEUE} record, a link parked by
+ * {@code --near-dup-action defer} or until its robots.txt arrives as an {@code ENQUEUE} record
+ * with sequence number -1, and a link robots.txt disallows, which never reaches the frontier, as
+ * a {@code DISALLOW} record. Records are buffered and flushed at intervals, so the cost of a checkpoint is proportional to the work
+ * done since the last one rather than to the size of the crawl.
+ * <p>
+ * Replaying the log rebuilds the visited set, the result, the still-pending frontier and the
+ * parked links. A record cut short by a crash is discarded and the file is truncated back to the
+ * last complete record before new ones are appended. Writes are synchronized only so that a
+ * shutdown hook can flush a consistent prefix while the crawl thread is still running.
+ */
+public class CrawlJournal implements Closeable {
+    public static final String FILE_NAME = "crawl.journal";
+
+    private static final int MAGIC = 0x57474A31; // "WGJ1"
+    private static final byte HEADER = 0;
+    private static final byte ENQUEUE = 1;
+    private static final byte COMMIT = 2;
+    private static final byte REQUEUE = 3;
+    private static final byte DISALLOW = 4;
+
+    /** Receives the journal contents in write order during {@link #open}. */
+    public interface Replay {
+        void enqueued(FrontierEntry entry);
+
+        void committed(long seq, boolean fetched, boolean parsed, CrawlResult.ErrorType error,
+                       String blockedReason, int[] counts, OptionalLong simhash);
+
+        /** The page enqueued as {@code oldSeq} was given up on for now and is pending again as {@code entry}. */
+        void requeued(long oldSeq, FrontierEntry entry);
+
+        /** The link to {@code url} was discovered but robots.txt disallows it. */
+        default void disallowed(String url) {}
+    }
+
+    private final FileChannel channel;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordData = new DataOutputStream(record);
+    private final DataOutputStream data;
+
+    private CrawlJournal(FileChannel channel) {
+        this.channel = channel;
+        this.data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+    }
+
+    /**
+     * Opens the journal in {@code dir}. With {@code resume}, the existing log is replayed into
+     * {@code replay} and new records are appended after it; otherwise any previous log is discarded.
+     * {@code url}, {@code keywords} and {@code mode} identify the crawl: resuming a journal written
+     * for a different one is refused.
+     */
+    public static CrawlJournal open(Path dir, boolean resume, String url, List<String> keywords, String mode,
+                                    Replay replay) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FILE_NAME);
+        boolean existing = resume && Files.exists(file) && Files.size(file) >= 4;
+        long validLength = existing ? replay(file, url, keywords, mode, replay) : 0;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        CrawlJournal journal = new CrawlJournal(channel);
+        if (!existing) {
+            journal.data.writeInt(MAGIC);
+            journal.recordData.writeUTF(url);
+            journal.recordData.writeInt(keywords.size());
+            for (String keyword : keywords) journal.recordData.writeUTF(keyword);
+            journal.recordData.writeUTF(mode);
+            journal.writeRecord(HEADER);
+        }
+        journal.flush();
+        return journal;
+    }
+
+    public synchronized void enqueued(FrontierEntry entry) throws IOException {
+        recordData.writeLong(entry.seq);
+        recordData.writeInt(entry.depth);
+        writeString(recordData, entry.host);
+        writeString(recordData, entry.url);
+        writeRecord(ENQUEUE);
+    }
+
+    public synchronized void requeued(long oldSeq, FrontierEntry entry) throws IOException {
+        recordData.writeLong(oldSeq);
+        recordData.writeLong(entry.seq);
+        recordData.writeInt(entry.depth);
+        writeString(recordData, entry.host);
+        writeString(recordData, entry.url);
+        writeRecord(REQUEUE);
+    }
+
+    public synchronized void disallowed(String url) throws IOException {
+        writeString(recordData, url);
+        writeRecord(DISALLOW);
+    }
+
+    public synchronized void committed(long seq, boolean fetched, boolean parsed, CrawlResult.ErrorType error,
+                                       String blockedReason, int[] counts, OptionalLong simhash) throws IOException {
+        recordData.writeLong(seq);
+        recordData.writeByte((fetched ? 1 : 0) | (parsed ? 2 : 0) | (simhash.isPresent() ? 4 : 0));
+        recordData.writeByte(error == null ? -1 : error.ordinal());
+        writeString(recordData, blockedReason);
+        recordData.writeInt(counts.length);
+        for (int count : counts) recordData.writeInt(count);
+        if (simhash.isPresent()) recordData.writeLong(simhash.getAsLong());
+        writeRecord(COMMIT);
+    }
+
+    /** Pushes buffered records to the file. */
+    public synchronized void flush() throws IOException {
+        data.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            data.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** Frames the pending record as type, length, payload. */
+    private void writeRecord(byte type) throws IOException {
+        data.writeByte(type);
+        data.writeInt(record.size());
+        record.writeTo(data);
+        record.reset();
+    }
+
+    private static long replay(Path file, String url, List<String> keywords, String mode, Replay replay) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not a WebGrep crawl journal: " + file);
+            }
+            long validLength = 4;
+            CrawlResult.ErrorType[] errors = CrawlResult.ErrorType.values();
+            while (true) {
+                byte type;
+                byte[] payload;
+                try {
+                    type = data.readByte();
+                    int length = data.readInt();
+                    if (length < 0) return validLength;
+                    payload = new byte[length];
+                    data.readFully(payload);
+                } catch (EOFException e) {
+                    return validLength; // clean end, or a record torn by a crash
+                }
+                validLength += 1 + 4 + payload.length;
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                if (type == HEADER) {
+                    String journalUrl = record.readUTF();
+                    int n = record.readInt();
+                    String[] journalKeywords = new String[n];
+                    for (int i = 0; i < n; i++) journalKeywords[i] = record.readUTF();
+                    String journalMode = record.readUTF();
+                    if (!journalUrl.equals(url) || !List.of(journalKeywords).equals(keywords) || !journalMode.equals(mode)) {
+                        throw new IllegalArgumentException("State directory belongs to a different crawl (" + journalUrl
+                                + ", keywords " + List.of(journalKeywords) + ", mode " + journalMode + ")");
+                    }
+                } else if (type == ENQUEUE) {
+                    long seq = record.readLong();
+                    int depth = record.readInt();
+                    String host = readString(record);
+                    String entryUrl = readString(record);
+                    replay.enqueued(new FrontierEntry(seq, entryUrl, host, depth));
+                } else if (type == COMMIT) {
+                    long seq = record.readLong();
+                    int flags = record.readByte();
+                    int error = record.readByte();
+                    String blockedReason = readString(record);
+                    int[] counts = new int[record.readInt()];
+                    for (int i = 0; i < counts.length; i++) counts[i] = record.readInt();
+                    OptionalLong simhash = (flags & 4) != 0 ? OptionalLong.of(record.readLong()) : OptionalLong.empty();
+                    replay.committed(seq, (flags & 1) != 0, (flags & 2) != 0,
+                            error < 0 ? null : errors[error], blockedReason, counts, simhash);
+                } else if (type == REQUEUE) {
+                    long oldSeq = record.readLong();
+                    long seq = record.readLong();
+                    int depth = record.readInt();
+                    String host = readString(record);
+                    String entryUrl = readString(record);
+                    replay.requeued(oldSeq, new FrontierEntry(seq, entryUrl, host, depth));
+                } else if (type == DISALLOW) {
+                    replay.disallowed(readString(record));
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
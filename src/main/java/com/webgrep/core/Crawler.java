@@ -1,164 +1,990 @@
 package com.webgrep.core;
 
 import com.webgrep.config.CliOptions;
+import com.webgrep.reporting.CrawlListener;
+import com.webgrep.reporting.CrawlMetrics;
 import com.webgrep.reporting.CrawlResult;
+import com.webgrep.reporting.MetricsServer;
+import com.webgrep.utils.SimHash;
 import com.webgrep.utils.UrlUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
-import javax.net.ssl.*;
-import java.net.URL;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Pipelined crawler. Network fetches run on an I/O pool sized by {@code --concurrency},
+ * parsing and matching run on a bounded CPU pool sized to the cores. Politeness is
+ * enforced per host by the {@link HostScheduler} frontier. A finished page's links go to the
+ * frontier as soon as it completes, so a slow, paused or Crawl-delayed host never holds up
+ * discovery on the others. Its result is still committed in discovery order, which keeps the
+ * checkpoint a simple prefix plus pending pages; only the result waits for its turn, without the
+ * links. Discovery itself follows completion order, so which page reaches a URL first, and with
+ * it the URL's depth, the order of results and the {@code --max-pages} cut-off, can differ
+ * between runs. A throttled page that is retried counts as discovered again when it goes back
+ * to the frontier.
+ * <p>
+ * Unless robots.txt is ignored, a page reaches the frontier only once the rules of its origin are
+ * known: a disallowed link is counted as skipped without using up the page budget, and a
+ * Crawl-delay is in force from the host's first request.
+ */
 public class Crawler {
+    private static final int MIN_WINDOW = 256;
+    private static final int WINDOW_PER_WORKER = 32;
+    private static final String CHALLENGE_TITLE = "Just a moment...";
+    private static final String CHALLENGE_TEXT = "Enable JavaScript and cookies to continue";
+    private static final int SLOWEST_PAGES = 10;
+    private static final int REPORTED_HOSTS = 10;
+    /** Backoff before the first retry when the host gave no Retry-After; doubles per attempt. */
+    private static final long RETRY_BACKOFF_MS = 250;
+    /** A Retry-After longer than this is not waited for; the URL is recorded as blocked instead. */
+    private static final long MAX_RETRY_AFTER_MS = 120_000;
+    /** Put on the completion queue when a robots.txt download finishes; carries no page. */
+    private static final PageOutcome ROBOTS_READY = new PageOutcome(null);
+
     private final CliOptions options;
     private final ContentExtractor extractor;
     private final MatchEngine matchEngine;
+    private final Fetcher fetcher;
+    private final boolean ownsFetcher;
+    private final CompiledQuery query;
+    private final ContentDedupeCache contentCache;
+    private final BinaryExtractor binaryExtractor;
+    private final boolean fastHtml;
     private final String startHost;
+    /** Null with {@code --ignore-robots} and no {@code --use-sitemaps}. */
+    private final RobotsCache robots;
+    /** Null unless {@code --metrics} or {@code --metrics-port}; every timing below is skipped without it. */
+    private final CrawlMetrics metrics;
 
     public Crawler(CliOptions options, ContentExtractor extractor, MatchEngine matchEngine) {
+        this(options, extractor, matchEngine, createFetcher(options), true);
+    }
+
+    /** Crawls with a caller-supplied fetcher; the caller remains responsible for closing it. */
+    public Crawler(CliOptions options, ContentExtractor extractor, MatchEngine matchEngine, Fetcher fetcher) {
+        this(options, extractor, matchEngine, fetcher, false);
+    }
+
+    private Crawler(CliOptions options, ContentExtractor extractor, MatchEngine matchEngine, Fetcher fetcher, boolean ownsFetcher) {
         this.options = options;
         this.extractor = extractor;
         this.matchEngine = matchEngine;
-        this.startHost = extractHost(UrlUtils.normalizeUrl(options.getUrl(), null));
-
-        if (options.isInsecure()) {
-            setupSsl();
-        }
+        this.fetcher = fetcher;
+        this.ownsFetcher = ownsFetcher;
+        this.query = CompiledQuery.from(options);
+        this.contentCache = options.getContentCacheSize() > 0 ? new ContentDedupeCache(options.getContentCacheSize()) : null;
+        this.binaryExtractor = BinaryExtractor.create(options, extractor);
+        this.fastHtml = "fast".equals(options.getHtmlParser());
+        this.startHost = UrlUtils.hostOf(UrlUtils.normalizeUrl(options.getUrl(), null));
+        this.robots = !options.isIgnoreRobots() || options.isUseSitemaps() ? new RobotsCache(fetcher) : null;
+        this.metrics = options.isMetrics() || options.getMetricsPort() > 0 ? new CrawlMetrics(SLOWEST_PAGES) : null;
     }
 
-    private String extractHost(String url) {
-        try {
-            return new URL(url).getHost().toLowerCase();
-        } catch (Exception e) {
-            return "";
+    private static Fetcher createFetcher(CliOptions options) {
+        Fetcher fetcher = "jsoup".equals(options.getFetcher()) ? new JsoupFetcher(options) : new HttpClientFetcher(options);
+        if (options.getCacheDir() != null) {
+            ResponseCache cache = new ResponseCache(Paths.get(options.getCacheDir()), options.getCacheMaxMb() * 1024 * 1024);
+            fetcher = new CachingFetcher(fetcher, cache, FetchLimits.from(options));
         }
+        return fetcher;
     }
 
     public CrawlResult crawl() {
-        CrawlResult crawlResult = new CrawlResult();
-        Set<String> visited = new HashSet<>();
-        Queue<UrlDepth> queue = new LinkedList<>();
+        return crawl(null);
+    }
 
-        String normalizedStart = UrlUtils.normalizeUrl(options.getUrl(), null);
-        queue.add(new UrlDepth(normalizedStart, 0));
-        visited.add(normalizedStart);
+    /**
+     * Crawls, reporting matched and blocked pages and progress to {@code listener} as the crawl
+     * goes. With a listener the returned result has counts and totals but no per-URL maps, so
+     * memory does not grow with the number of matches. Pages restored from a checkpoint are
+     * counted but not reported again.
+     */
+    public CrawlResult crawl(CrawlListener listener) {
+        CrawlResult crawlResult = new CrawlResult(listener == null);
+        VisitedSet visited = VisitedSet.create(options);
+        HostScheduler frontier = new HostScheduler(options.getHostDelayMs(), options.getHostConnections(),
+                options.getFrontierMemoryMb() * 1024 * 1024, new SpillQueue(Paths.get(options.getSpillDir())));
+        if ("adaptive".equals(options.getRateControl())) {
+            frontier.adaptive(options.getHostMaxConnections());
+        }
+        SimHashIndex nearDuplicates = options.getNearDupDistance() > 0 ? new SimHashIndex(options.getNearDupDistance()) : null;
+        List<FrontierEntry> deferred = new ArrayList<>();
+        Restore restore = new Restore(visited, crawlResult, nearDuplicates);
+        CrawlJournal journal = openJournal(restore);
+        MetricsServer metricsServer = startMetricsServer();
+        crawlResult.setListener(listener);
+        Thread flushOnExit = journal == null ? null : new Thread(() -> {
+            try {
+                journal.flush();
+            } catch (IOException ignored) {}
+        });
 
-        while (!queue.isEmpty() && crawlResult.visitedCount < options.getMaxPages()) {
-            UrlDepth current = queue.poll();
+        int concurrency = options.getConcurrency();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int window = Math.max(MIN_WINDOW, concurrency * WINDOW_PER_WORKER);
 
-            try {
-                Thread.sleep(100);
-
-                org.jsoup.Connection.Response response = Jsoup.connect(current.url)
-                        .timeout(options.getTimeoutMs())
-                        .followRedirects(true)
-                        .ignoreContentType(true)
-                        .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7")
-                        .header("Accept-Language", "en-US,en;q=0.9,bs;q=0.8,sr;q=0.7,hr;q=0.6")
-                        .header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/121.0.0.0 Safari/537.36")
-                        .execute();
-
-                crawlResult.visitedCount++;
-
-                String contentLengthHeader = response.header("Content-Length");
-                if (contentLengthHeader != null) {
-                    try {
-                        long length = Long.parseLong(contentLengthHeader);
-                        if (length > options.getMaxBytes()) {
-                            crawlResult.incrementError(CrawlResult.ErrorType.SKIPPED_SIZE);
-                            continue;
-                        }
-                    } catch (NumberFormatException ignored) {}
+        ExecutorService fetchPool = Executors.newFixedThreadPool(concurrency, namedThreads("webgrep-fetch"));
+        // Bounded hand-off: when the CPU stage falls behind, fetch threads run the work themselves.
+        ThreadPoolExecutor cpuPool = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cores * 2), namedThreads("webgrep-cpu"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        BlockingQueue<PageOutcome> completed = new LinkedBlockingQueue<>();
+        RobotsGate gate = robots != null && !options.isIgnoreRobots() ? new RobotsGate(fetchPool, completed) : null;
+        // Finished pages waiting for their turn to be committed, without their links; at most one per discovered page.
+        Map<Long, PageOutcome> reorder = new HashMap<>();
+        // Pages waiting to be fetched again; bounded by the window, beyond which a throttled page is recorded as is.
+        PriorityQueue<Retry> retries = new PriorityQueue<>(Comparator.comparingLong((Retry retry) -> retry.dueAt));
+        Map<String, Integer> attempts = new HashMap<>();
+        int inFlight = 0;
+        long lastFlush = now();
+        long lastProgress = now();
+        if (flushOnExit != null) {
+            Runtime.getRuntime().addShutdownHook(flushOnExit);
+        }
+
+        long nextSeq;
+        long nextCommit;
+        try {
+            if (restore.nextSeq > 0) {
+                // Resumed: pending pages keep their sequence numbers, so commit order is unchanged.
+                nextSeq = admit(new ArrayList<>(restore.pending.values()), restore.nextSeq, visited, frontier, journal,
+                        gate, crawlResult);
+                nextCommit = restore.pending.isEmpty() ? nextSeq : restore.pending.keySet().iterator().next();
+                crawlResult.resumedPages = restore.committed;
+                deferred.addAll(restore.deferred);
+                restore.pending.clear();
+            } else {
+                String normalizedStart = UrlUtils.normalizeUrl(options.getUrl(), null);
+                FrontierEntry start = new FrontierEntry(0, normalizedStart, startHost, 0);
+                visited.add(normalizedStart);
+                journalEnqueued(journal, start);
+                nextSeq = admit(List.of(start), 1, visited, frontier, journal, gate, crawlResult);
+                nextCommit = 0;
+                if (options.isUseSitemaps() && options.getDepth() > 0) {
+                    nextSeq = seedFromSitemaps(normalizedStart, nextSeq, visited, frontier, journal, gate, crawlResult);
                 }
+            }
 
-                byte[] body = response.bodyAsBytes();
-                if (body.length > options.getMaxBytes()) {
-                    crawlResult.incrementError(CrawlResult.ErrorType.SKIPPED_SIZE);
+            while (true) {
+                long now = now();
+                while (!retries.isEmpty() && retries.peek().dueAt <= now) {
+                    FrontierEntry page = retries.poll().page;
+                    frontier.add(page.host, page.seq, page.url, page.depth, now);
+                }
+                FrontierEntry current;
+                while (inFlight < window && (current = frontier.poll(now)) != null) {
+                    FrontierEntry page = current;
+                    inFlight++;
+                    fetchPool.execute(() -> fetch(page, cpuPool, completed));
+                }
+                if (inFlight == 0 && frontier.isEmpty() && retries.isEmpty() && (gate == null || gate.isEmpty())) {
+                    if (deferred.isEmpty()) {
+                        break;
+                    }
+                    // Everything else is done: links of near-duplicate pages get the remaining budget.
+                    nextSeq = admit(deferred, nextSeq, visited, frontier, journal, gate, crawlResult);
+                    deferred.clear();
                     continue;
                 }
 
-                String contentType = response.contentType();
-                String content;
-                List<String> links = new ArrayList<>();
-
-                if (contentType != null && (contentType.contains("text/html") || contentType.contains("application/xhtml+xml"))) {
-                    Document doc = response.parse();
-                    crawlResult.parsedCount++;
+                PageOutcome outcome;
+                long readyAt = Math.min(frontier.nextReadyAt(now), retries.isEmpty() ? Long.MAX_VALUE : retries.peek().dueAt);
+                if (readyAt == Long.MAX_VALUE || inFlight >= window) {
+                    outcome = completed.take();
+                } else {
+                    outcome = completed.poll(Math.max(1, readyAt - now), TimeUnit.MILLISECONDS);
+                    if (outcome == null) continue;
+                }
+                if (outcome == ROBOTS_READY) {
+                    nextSeq = admit(gate.ready(), nextSeq, visited, frontier, journal, gate, crawlResult);
+                    continue;
+                }
+                inFlight--;
+                if (outcome.error == CrawlResult.ErrorType.SKIPPED_ROBOTS) {
+                    // No request was made, so there is nothing for the rate control to learn.
+                    frontier.release(outcome.page.host, now());
+                } else {
+                    frontier.release(outcome.page.host, now(), outcome.latencyMs, outcome.throttled);
+                }
+                if (outcome.retryAfterMs > 0) {
+                    frontier.pause(outcome.page.host, now() + Math.min(outcome.retryAfterMs, MAX_RETRY_AFTER_MS));
+                }
+                if (outcome.throttled) {
+                    FrontierEntry retry = retryLater(outcome, nextSeq, retries, attempts, window);
+                    if (retry != null) {
+                        nextSeq++;
+                        crawlResult.retries++;
+                        outcome.requeued = true;
+                        journalRequeued(journal, outcome.page.seq, retry);
+                    }
+                }
+                if (!outcome.requeued) {
+                    attempts.remove(outcome.page.url);
+                    nextSeq = admit(follow(outcome, nearDuplicates, deferred, journal), nextSeq, visited, frontier,
+                            journal, gate, crawlResult);
+                    outcome.links = Collections.emptyList();
+                }
+                reorder.put(outcome.page.seq, outcome);
 
-                    if (doc.title().contains("Just a moment...") || doc.text().contains("Enable JavaScript and cookies to continue")) {
-                        crawlResult.addBlocked(current.url, "Cloudflare/Bot protection challenge");
+                while ((outcome = reorder.remove(nextCommit)) != null) {
+                    nextCommit++;
+                    if (outcome.requeued) {
+                        // Only the slot is committed; the page itself commits under its new number.
+                        continue;
                     }
+                    apply(outcome, crawlResult);
+                    // Logged after the page's links, so a torn log never loses links of a committed page.
+                    journalCommitted(journal, outcome);
+                }
+                if (journal != null && now() - lastFlush >= options.getCheckpointIntervalMs()) {
+                    journal.flush();
+                    lastFlush = now();
+                }
+                if (listener != null && options.getProgressIntervalMs() > 0 && now() - lastProgress >= options.getProgressIntervalMs()) {
+                    crawlResult.discoveredCount = visited.size();
+                    listener.progress(crawlResult, frontier.size() + inFlight);
+                    lastProgress = now();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write checkpoint to " + options.getStateDir(), e);
+        } finally {
+            fetchPool.shutdownNow();
+            cpuPool.shutdownNow();
+            crawlResult.frontierSpilled = frontier.spilledCount();
+            frontier.close();
+            binaryExtractor.close();
+            if (ownsFetcher) {
+                fetcher.close();
+            }
+            if (journal != null) {
+                closeJournal(journal, flushOnExit);
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+        }
 
-                    content = extractor.extractTextFromHtml(doc);
-                    if (current.depth < options.getDepth()) {
-                        links = extractor.extractLinks(doc, body, current.url);
+        crawlResult.discoveredCount = visited.size();
+        crawlResult.dedupeMemoryBytes = visited.memoryBytes();
+        if (fetcher instanceof CachingFetcher) {
+            CachingFetcher cache = (CachingFetcher) fetcher;
+            crawlResult.httpCacheHits = cache.hits();
+            crawlResult.httpCacheRevalidations = cache.revalidations();
+            crawlResult.httpCacheBytesSaved = cache.bytesSaved();
+        }
+        crawlResult.contentDedupeHits = contentCache == null ? 0 : contentCache.hits();
+        crawlResult.fuzzyCacheHits = query.fuzzyCacheHits();
+        crawlResult.fuzzyCacheMisses = query.fuzzyCacheMisses();
+        crawlResult.filterHits.putAll(extractor.urlFilter().hits());
+        crawlResult.hostRates.addAll(frontier.rates(REPORTED_HOSTS));
+        crawlResult.metrics = metrics;
+
+        return crawlResult;
+    }
+
+    /**
+     * Queues the start host's sitemap URLs at depth 1, as if the start page linked them, so deep
+     * pages are reached without fetching the hub pages between. Sitemaps come from the
+     * {@code Sitemap:} lines of robots.txt, or {@code /sitemap.xml} when there are none. URLs go
+     * through the same filters and robots rules as links; reading stops once the page budget is used up.
+     */
+    private long seedFromSitemaps(String start, long nextSeq, VisitedSet visited, HostScheduler frontier,
+                                  CrawlJournal journal, RobotsGate gate, CrawlResult crawlResult) {
+        String origin = RobotsCache.origin(start);
+        long[] seq = {nextSeq};
+        try {
+            List<String> roots = robots.rules(start).sitemaps();
+            if (roots.isEmpty()) roots = List.of(origin + "/sitemap.xml");
+            new SitemapReader(fetcher).read(roots, loc -> {
+                if (budgetUsed(visited, crawlResult) >= options.getMaxPages()) return false;
+                String url = UrlUtils.normalizeUrl(loc, start);
+                if (url.isEmpty() || extractor.urlFilter().isIgnored(url)) return true;
+                String host = UrlUtils.hostOf(url);
+                if (!options.isAllowExternal() && !host.equalsIgnoreCase(startHost)) return true;
+                long before = seq[0];
+                seq[0] = admit(List.of(new FrontierEntry(-1, url, host, 1)), seq[0], visited, frontier, journal, gate, crawlResult);
+                if (seq[0] > before) {
+                    crawlResult.sitemapUrls++;
+                }
+                return true;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return seq[0];
+    }
+
+    /**
+     * Queues a throttled page for another fetch, after its Retry-After or an exponential backoff,
+     * unless it is out of attempts, the wait is too long or the retry queue is full. The retry
+     * gets the sequence number {@code seq}, so the page's old slot can be committed at once and
+     * pages behind it are not held up while it waits. Returns the retry, or {@code null}.
+     */
+    private FrontierEntry retryLater(PageOutcome outcome, long seq, PriorityQueue<Retry> retries,
+                                     Map<String, Integer> attempts, int capacity) {
+        int attempt = attempts.getOrDefault(outcome.page.url, 0);
+        if (attempt >= options.getMaxRetries() || outcome.retryAfterMs > MAX_RETRY_AFTER_MS || retries.size() >= capacity) {
+            return null;
+        }
+        attempts.put(outcome.page.url, attempt + 1);
+        long wait = outcome.retryAfterMs >= 0 ? outcome.retryAfterMs : RETRY_BACKOFF_MS << attempt;
+        FrontierEntry retry = new FrontierEntry(seq, outcome.page.url, outcome.page.host, outcome.page.depth);
+        retries.add(new Retry(now() + wait, retry));
+        return retry;
+    }
+
+    /**
+     * Adds the links not seen before to the frontier, within the page budget, and returns the next
+     * sequence number. Pages that already have a number (the start page, resumed pages) are only
+     * queued. With a {@code gate}, a page whose robots.txt is still being downloaded is parked there
+     * and comes back through here later; a disallowed link is recorded as skipped and does not use
+     * up the budget.
+     */
+    private long admit(List<FrontierEntry> links, long nextSeq, VisitedSet visited, HostScheduler frontier,
+                       CrawlJournal journal, RobotsGate gate, CrawlResult crawlResult) {
+        for (FrontierEntry link : links) {
+            boolean numbered = link.seq >= 0;
+            if (!numbered && (budgetUsed(visited, crawlResult) >= options.getMaxPages() || visited.contains(link.url))) {
+                continue;
+            }
+            RobotsTxt rules = null;
+            if (gate != null && (rules = gate.rules(link)) == null) {
+                if (!numbered) {
+                    // Journaled like a deferred link, so a crash before the rules arrive does not lose it.
+                    journalEnqueued(journal, link);
+                }
+                continue;
+            }
+            FrontierEntry page = link;
+            if (!numbered) {
+                if (rules != null && !rules.isAllowed(RobotsCache.pathAndQuery(link.url))) {
+                    if (visited.add(link.url)) {
+                        crawlResult.incrementError(CrawlResult.ErrorType.SKIPPED_ROBOTS);
+                        journalDisallowed(journal, link.url);
                     }
-                } else {
-                    content = extractor.extractTextFromBinary(body, current.url, contentType);
-                    crawlResult.parsedCount++;
+                    continue;
+                }
+                if (!visited.add(link.url)) {
+                    continue;
+                }
+                page = new FrontierEntry(nextSeq++, link.url, link.host, link.depth);
+                journalEnqueued(journal, page);
+            }
+            if (rules != null && rules.crawlDelayMs() > 0) {
+                frontier.minimumDelay(page.host, rules.crawlDelayMs());
+            }
+            frontier.add(page.host, page.seq, page.url, page.depth, now());
+        }
+        return nextSeq;
+    }
+
+    /** Discovered pages that count against {@code --max-pages}: all but those robots.txt kept us from fetching. */
+    private static int budgetUsed(VisitedSet visited, CrawlResult crawlResult) {
+        return visited.size() - crawlResult.errorCounts.get(CrawlResult.ErrorType.SKIPPED_ROBOTS);
+    }
+
+    private CrawlJournal openJournal(Restore restore) {
+        if (options.getStateDir() == null) {
+            return null;
+        }
+        try {
+            return CrawlJournal.open(Paths.get(options.getStateDir()), options.isResume(), options.getUrl(),
+                    options.getKeywords(), options.getMode(), restore);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open checkpoint in " + options.getStateDir(), e);
+        }
+    }
+
+    private MetricsServer startMetricsServer() {
+        if (options.getMetricsPort() <= 0) {
+            return null;
+        }
+        try {
+            return MetricsServer.start(options.getMetricsPort(), metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start metrics endpoint on port " + options.getMetricsPort(), e);
+        }
+    }
+
+    private static void closeJournal(CrawlJournal journal, Thread flushOnExit) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(flushOnExit);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down; the hook flushes.
+        }
+        try {
+            journal.close();
+        } catch (IOException ignored) {}
+    }
+
+    private static void journalEnqueued(CrawlJournal journal, FrontierEntry entry) {
+        if (journal == null) return;
+        try {
+            journal.enqueued(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void journalDisallowed(CrawlJournal journal, String url) {
+        if (journal == null) return;
+        try {
+            journal.disallowed(url);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void journalRequeued(CrawlJournal journal, long oldSeq, FrontierEntry entry) {
+        if (journal == null) return;
+        try {
+            journal.requeued(oldSeq, entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void journalCommitted(CrawlJournal journal, PageOutcome outcome) {
+        if (journal == null) return;
+        try {
+            journal.committed(outcome.page.seq, outcome.fetched, outcome.parsed, outcome.error,
+                    outcome.blockedReason, outcome.counts, outcome.simhash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    /**
+     * Returns the links a finished page contributes to the frontier. Links of a near-duplicate
+     * page are dropped, or parked in {@code deferred} and journaled with
+     * {@code --near-dup-action defer}. Runs only on the crawl thread, in completion order.
+     */
+    private List<FrontierEntry> follow(PageOutcome outcome, SimHashIndex nearDuplicates,
+                                       List<FrontierEntry> deferred, CrawlJournal journal) {
+        boolean nearDuplicate = nearDuplicate(outcome.simhash, nearDuplicates);
+        outcome.nearDuplicate = nearDuplicate;
+
+        if (outcome.page.depth >= options.getDepth() || nearDuplicate && !options.getNearDupAction().equals("defer")) {
+            return Collections.emptyList();
+        }
+        List<FrontierEntry> admitted = new ArrayList<>(outcome.links.size());
+        for (String link : outcome.links) {
+            String linkHost = UrlUtils.hostOf(link);
+            if (!options.isAllowExternal() && !linkHost.equalsIgnoreCase(startHost)) {
+                continue;
+            }
+            admitted.add(new FrontierEntry(-1, link, linkHost, outcome.page.depth + 1));
+        }
+        if (nearDuplicate) {
+            for (FrontierEntry link : admitted) {
+                journalEnqueued(journal, link);
+            }
+            deferred.addAll(admitted);
+            return Collections.emptyList();
+        }
+        return admitted;
+    }
+
+    /** Records the page in the result. */
+    private static void apply(PageOutcome outcome, CrawlResult crawlResult) {
+        if (outcome.fetched) crawlResult.visitedCount++;
+        if (outcome.parsed) crawlResult.parsedCount++;
+        if (outcome.blockedReason != null) {
+            crawlResult.addBlocked(outcome.page.url, outcome.blockedReason);
+        }
+        if (outcome.error != null) {
+            crawlResult.incrementError(outcome.error);
+        }
+        if (outcome.total() > 0) {
+            crawlResult.addMatch(outcome.page.url, outcome.counts);
+        }
+        if (outcome.nearDuplicate) {
+            crawlResult.nearDuplicatePages++;
+        }
+    }
+
+    /** Whether a page is a near-duplicate of an earlier one; if not, later pages are compared with it. */
+    private static boolean nearDuplicate(OptionalLong simhash, SimHashIndex nearDuplicates) {
+        if (nearDuplicates == null || simhash.isEmpty()) {
+            return false;
+        }
+        long fingerprint = simhash.getAsLong();
+        if (nearDuplicates.containsNear(fingerprint)) {
+            return true;
+        }
+        nearDuplicates.add(fingerprint);
+        return false;
+    }
+
+    private void fetch(FrontierEntry current, Executor cpuPool, BlockingQueue<PageOutcome> completed) {
+        PageOutcome outcome = new PageOutcome(current);
+        boolean handedOff = false;
+        try {
+            if (metrics != null) {
+                outcome.timings = CrawlMetrics.newPage();
+                outcome.startNanos = System.nanoTime();
+            }
+            if (robots != null && !options.isIgnoreRobots()) {
+                // Links are checked when admitted; this catches the start page and resumed pages.
+                RobotsTxt rules = robots.rules(current.url);
+                if (!rules.isAllowed(RobotsCache.pathAndQuery(current.url))) {
+                    outcome.error = CrawlResult.ErrorType.SKIPPED_ROBOTS;
+                    return;
                 }
+            }
+            long started = now();
+            FetchResponse response = fetcher.fetch(current.url);
+            outcome.latencyMs = now() - started;
+            if (metrics != null) {
+                timeFetch(response, outcome);
+            }
+
+            int status = response.statusCode();
+            if (status == 429 || status == 503) {
+                outcome.throttled = true;
+                outcome.retryAfterMs = response.retryAfterMillis();
+            }
+            if (status == 403 || status == 429) {
+                outcome.blockedReason = "HTTP " + status + " (Access Denied/Rate Limited)";
+                return;
+            } else if (!response.isSuccess()) {
+                outcome.error = CrawlResult.ErrorType.NETWORK_ERROR;
+                return;
+            }
+
+            outcome.fetched = true;
+
+            if (response.skipReason() == FetchResponse.SkipReason.TOO_LARGE) {
+                outcome.error = CrawlResult.ErrorType.SKIPPED_SIZE;
+                return;
+            } else if (response.skipReason() == FetchResponse.SkipReason.UNWANTED_TYPE) {
+                outcome.error = CrawlResult.ErrorType.SKIPPED_TYPE;
+                return;
+            }
 
-                int count = matchEngine.countMatches(content, options.getKeyword(), options.getMode());
-                if (count > 0) {
-                    crawlResult.addMatch(current.url, count);
+            cpuPool.execute(() -> {
+                try {
+                    process(current, response, outcome);
+                } finally {
+                    complete(outcome, completed);
                 }
+            });
+            handedOff = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome.error = CrawlResult.ErrorType.NETWORK_ERROR;
+        } catch (HttpTimeoutException | SocketTimeoutException e) {
+            outcome.error = CrawlResult.ErrorType.NETWORK_ERROR;
+            outcome.throttled = true;
+        } catch (Exception e) {
+            outcome.error = CrawlResult.ErrorType.NETWORK_ERROR;
+        } finally {
+            if (!handedOff) {
+                complete(outcome, completed);
+            }
+        }
+    }
 
-                if (current.depth < options.getDepth()) {
-                    for (String link : links) {
-                        if (!options.isAllowExternal()) {
-                            String linkHost = extractHost(link);
-                            if (!linkHost.equalsIgnoreCase(startHost)) {
-                                continue;
-                            }
-                        }
+    /** Splits the fetch into time to headers and the rest, where the fetcher reports the former. */
+    private void timeFetch(FetchResponse response, PageOutcome outcome) {
+        long total = System.nanoTime() - outcome.startNanos;
+        long headers = response.headersNanos();
+        if (headers >= 0 && headers <= total) {
+            outcome.timings[CrawlMetrics.Phase.CONNECT.ordinal()] = headers;
+            total -= headers;
+        }
+        outcome.timings[CrawlMetrics.Phase.DOWNLOAD.ordinal()] = total;
+        if (response.body() != null) {
+            metrics.addBytes(response.contentType(), response.body().length);
+        }
+    }
+
+    private void complete(PageOutcome outcome, BlockingQueue<PageOutcome> completed) {
+        if (outcome.timings != null) {
+            outcome.timings[CrawlMetrics.Phase.PAGE.ordinal()] = System.nanoTime() - outcome.startNanos;
+            metrics.record(outcome.page.url, outcome.timings);
+        }
+        completed.add(outcome);
+    }
+
+    private void process(FrontierEntry current, FetchResponse response, PageOutcome outcome) {
+        long[] timings = outcome.timings;
+        try {
+            byte[] body = response.body();
+            String contentType = response.contentType();
+            boolean html = contentType != null && (contentType.contains("text/html") || contentType.contains("application/xhtml+xml"));
+            boolean wantLinks = html && current.depth < options.getDepth();
 
-                        if (!visited.contains(link) && visited.size() < options.getMaxPages()) {
-                            visited.add(link);
-                            queue.add(new UrlDepth(link, current.depth + 1));
+            ContentDedupeCache.Key key = contentCache == null ? null : ContentDedupeCache.key(body, contentType);
+            ContentDedupeCache.Entry cached = key == null ? null : contentCache.get(key);
+            if (cached != null) {
+                // Same bytes seen under another URL: matches carry over, only links may need a parse.
+                outcome.parsed = cached.parsed;
+                outcome.blockedReason = cached.blockedReason;
+                outcome.counts = cached.counts;
+                outcome.simhash = cached.simhash;
+                if (wantLinks) {
+                    long start = startTiming(timings);
+                    if (cached.linksValidFor(response.url(), current.url)) {
+                        outcome.links = cached.links;
+                    } else if (fastHtml) {
+                        String markup = HtmlScanner.decode(body, response.charset());
+                        HtmlScanner.Page page = HtmlScanner.scan(markup, Writer.nullWriter());
+                        outcome.links = extractor.extractLinks(page, markup, response.url(), current.url);
+                    } else {
+                        Document doc = Jsoup.parse(new ByteArrayInputStream(body), response.charset(), response.url());
+                        outcome.links = extractor.extractLinks(doc, body, current.url);
+                    }
+                    lap(timings, CrawlMetrics.Phase.LINKS, start, null);
+                }
+                return;
+            }
+
+            ContentExtractor.LinkScope scope = null;
+            if (html) {
+                outcome.parsed = true;
+                MatchStream matches = matchEngine.stream(query);
+                TimedWriter matching = timings == null ? null : new TimedWriter(matches, timings);
+                Writer sink = matching != null ? matching : matches;
+                SimHash.Accumulator fingerprint = options.getNearDupDistance() > 0 ? new SimHash.Accumulator(sink) : null;
+                Writer text = fingerprint != null ? fingerprint : sink;
+                long start = startTiming(timings);
+
+                if (fastHtml) {
+                    String markup = HtmlScanner.decode(body, response.charset());
+                    HtmlScanner.Page page = HtmlScanner.scan(markup, text);
+                    if (page.title().contains(CHALLENGE_TITLE) || markup.contains(CHALLENGE_TEXT)) {
+                        outcome.blockedReason = "Cloudflare/Bot protection challenge";
+                    }
+                    start = lap(timings, CrawlMetrics.Phase.PARSE, start, matching);
+                    if (wantLinks) {
+                        if (key != null) {
+                            ContentExtractor.PageLinks links = extractor.extractLinksWithScope(page, markup, response.url(), current.url);
+                            outcome.links = links.links;
+                            scope = links.scope;
+                        } else {
+                            outcome.links = extractor.extractLinks(page, markup, response.url(), current.url);
                         }
+                        lap(timings, CrawlMetrics.Phase.LINKS, start, null);
+                    }
+                } else {
+                    Document doc = Jsoup.parse(new ByteArrayInputStream(body), response.charset(), response.url());
+                    if (doc.title().contains(CHALLENGE_TITLE) || doc.text().contains(CHALLENGE_TEXT)) {
+                        outcome.blockedReason = "Cloudflare/Bot protection challenge";
+                    }
+                    start = lap(timings, CrawlMetrics.Phase.PARSE, start, null);
+                    extractor.writeTextFromHtml(doc, text);
+                    start = lap(timings, CrawlMetrics.Phase.TEXT, start, matching);
+                    if (wantLinks) {
+                        if (key != null) {
+                            ContentExtractor.PageLinks links = extractor.extractLinksWithScope(doc, body, current.url);
+                            outcome.links = links.links;
+                            scope = links.scope;
+                        } else {
+                            outcome.links = extractor.extractLinks(doc, body, current.url);
+                        }
+                        lap(timings, CrawlMetrics.Phase.LINKS, start, null);
                     }
                 }
 
-            } catch (org.jsoup.HttpStatusException e) {
-                if (e.getStatusCode() == 403 || e.getStatusCode() == 429) {
-                    crawlResult.addBlocked(current.url, "HTTP " + e.getStatusCode() + " (Access Denied/Rate Limited)");
+                if (fingerprint != null) {
+                    outcome.simhash = fingerprint.fingerprint();
+                }
+                if (matching != null) {
+                    matching.flush();
+                    start = System.nanoTime();
+                    outcome.counts = matches.finish();
+                    lap(timings, CrawlMetrics.Phase.MATCH, start, null);
                 } else {
-                    crawlResult.incrementError(CrawlResult.ErrorType.NETWORK_ERROR);
+                    outcome.counts = matches.finish();
                 }
-            } catch (Exception e) {
-                crawlResult.incrementError(CrawlResult.ErrorType.NETWORK_ERROR);
+            } else {
+                long start = startTiming(timings);
+                outcome.counts = binaryExtractor.match(body, current.url, contentType, query);
+                lap(timings, CrawlMetrics.Phase.TIKA, start, null);
+                outcome.parsed = true;
             }
+
+            if (key != null) {
+                contentCache.put(key, new ContentDedupeCache.Entry(outcome.parsed, outcome.blockedReason, outcome.counts,
+                        outcome.simhash, scope == null ? null : outcome.links, scope, response.url(), current.url));
+            }
+        } catch (ExtractionException e) {
+            // Timed out, crashed its worker, or hit a parser bug: the document is unreadable, not unreachable.
+            outcome.error = CrawlResult.ErrorType.PARSE_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome.error = CrawlResult.ErrorType.PARSE_ERROR;
+        } catch (Exception e) {
+            outcome.error = CrawlResult.ErrorType.NETWORK_ERROR;
         }
+    }
 
-        return crawlResult;
+    private static long startTiming(long[] timings) {
+        return timings == null ? 0 : System.nanoTime();
     }
 
-    private void setupSsl() {
-        try {
-            TrustManager[] trustAllCerts = new TrustManager[]{
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() { return null; }
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) {}
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) {}
-                }
-            };
-            SSLContext sc = SSLContext.getInstance("SSL");
-            sc.init(null, trustAllCerts, new SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-            HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-        } catch (Exception ignored) {}
-    }
-
-    private static class UrlDepth {
-        final String url;
-        final int depth;
-
-        UrlDepth(String url, int depth) {
-            this.url = url;
-            this.depth = depth;
+    /**
+     * Adds the time since {@code start} to {@code phase}, less the matching done meanwhile, and
+     * returns the current time to start the next phase from. Does nothing without metrics.
+     */
+    private static long lap(long[] timings, CrawlMetrics.Phase phase, long start, TimedWriter matching) {
+        if (timings == null) return 0;
+        long now = System.nanoTime();
+        timings[phase.ordinal()] += now - start - (matching == null ? 0 : matching.take());
+        return now;
+    }
+
+    /**
+     * Buffers page text on its way to the {@link MatchStream} and times each hand-over, so matching
+     * can be told apart from the parse or DOM walk that produces the text. Buffered because the
+     * producers write in small pieces, often a word or a text node at a time.
+     */
+    private static final class TimedWriter extends Writer {
+        private final Writer out;
+        private final long[] timings;
+        private final char[] buffer = new char[8192];
+        private int length;
+        private long untaken;
+
+        TimedWriter(Writer out, long[] timings) {
+            this.out = out;
+            this.timings = timings;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            if (len >= buffer.length) {
+                flush();
+                long start = System.nanoTime();
+                out.write(buf, off, len);
+                timed(start);
+                return;
+            }
+            if (length + len > buffer.length) flush();
+            System.arraycopy(buf, off, buffer, length, len);
+            length += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (len >= buffer.length) {
+                flush();
+                long start = System.nanoTime();
+                out.write(str, off, len);
+                timed(start);
+                return;
+            }
+            if (length + len > buffer.length) flush();
+            str.getChars(off, off + len, buffer, length);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                long start = System.nanoTime();
+                out.write(buffer, 0, length);
+                length = 0;
+                timed(start);
+            }
+        }
+
+        private void timed(long start) {
+            long elapsed = System.nanoTime() - start;
+            timings[CrawlMetrics.Phase.MATCH.ordinal()] += elapsed;
+            untaken += elapsed;
+        }
+
+        /** Matching time since the last call, to be taken out of the phase that produced the text. */
+        long take() {
+            long taken = untaken;
+            untaken = 0;
+            return taken;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Rebuilds the visited set, the result and the pending frontier from a checkpoint journal. */
+    private static class Restore implements CrawlJournal.Replay {
+        final VisitedSet visited;
+        final CrawlResult crawlResult;
+        final SimHashIndex nearDuplicates;
+        final Map<Long, FrontierEntry> pending = new LinkedHashMap<>();
+        /**
+         * Parked links of near-duplicate pages, and links that were waiting for robots.txt; those
+         * admitted before the interruption are visited and skipped again.
+         */
+        final List<FrontierEntry> deferred = new ArrayList<>();
+        long nextSeq;
+        int committed;
+
+        Restore(VisitedSet visited, CrawlResult crawlResult, SimHashIndex nearDuplicates) {
+            this.visited = visited;
+            this.crawlResult = crawlResult;
+            this.nearDuplicates = nearDuplicates;
+        }
+
+        @Override
+        public void enqueued(FrontierEntry entry) {
+            if (entry.seq < 0) {
+                deferred.add(entry);
+                return;
+            }
+            visited.add(entry.url);
+            pending.put(entry.seq, entry);
+            nextSeq = Math.max(nextSeq, entry.seq + 1);
+        }
+
+        @Override
+        public void committed(long seq, boolean fetched, boolean parsed, CrawlResult.ErrorType error,
+                              String blockedReason, int[] counts, OptionalLong simhash) {
+            FrontierEntry page = pending.remove(seq);
+            if (page == null) return;
+            PageOutcome outcome = new PageOutcome(page);
+            outcome.fetched = fetched;
+            outcome.parsed = parsed;
+            outcome.error = error;
+            outcome.blockedReason = blockedReason;
+            outcome.counts = counts;
+            outcome.simhash = simhash;
+            outcome.nearDuplicate = nearDuplicate(simhash, nearDuplicates);
+            apply(outcome, crawlResult);
+            committed++;
+        }
+
+        @Override
+        public void requeued(long oldSeq, FrontierEntry entry) {
+            if (pending.remove(oldSeq) == null) return;
+            pending.put(entry.seq, entry);
+            nextSeq = Math.max(nextSeq, entry.seq + 1);
+        }
+
+        @Override
+        public void disallowed(String url) {
+            if (visited.add(url)) {
+                crawlResult.incrementError(CrawlResult.ErrorType.SKIPPED_ROBOTS);
+            }
+        }
+    }
+
+    /**
+     * Pages waiting for the robots.txt of their origin, which is downloaded on the fetch pool. When
+     * it arrives, {@link #ROBOTS_READY} wakes the crawl thread, which admits them. Owned by the crawl thread.
+     */
+    private final class RobotsGate {
+        private final Executor downloads;
+        private final BlockingQueue<PageOutcome> completed;
+        private final Map<String, List<FrontierEntry>> waiting = new HashMap<>();
+
+        RobotsGate(Executor downloads, BlockingQueue<PageOutcome> completed) {
+            this.downloads = downloads;
+            this.completed = completed;
+        }
+
+        /** The rules for the page's origin, or {@code null} after parking the page until they arrive. */
+        RobotsTxt rules(FrontierEntry page) {
+            String origin = RobotsCache.origin(page.url);
+            CompletableFuture<RobotsTxt> rules = robots.lookup(origin, downloads);
+            if (rules.isDone()) {
+                return rules.join();
+            }
+            waiting.computeIfAbsent(origin, key -> {
+                rules.whenComplete((ignored, error) -> completed.add(ROBOTS_READY));
+                return new ArrayList<>();
+            }).add(page);
+            return null;
+        }
+
+        /** Takes the parked pages whose rules have arrived. */
+        List<FrontierEntry> ready() {
+            List<FrontierEntry> ready = new ArrayList<>();
+            Iterator<Map.Entry<String, List<FrontierEntry>>> origins = waiting.entrySet().iterator();
+            while (origins.hasNext()) {
+                Map.Entry<String, List<FrontierEntry>> origin = origins.next();
+                if (robots.lookup(origin.getKey(), downloads).isDone()) {
+                    ready.addAll(origin.getValue());
+                    origins.remove();
+                }
+            }
+            return ready;
+        }
+
+        boolean isEmpty() {
+            return waiting.isEmpty();
+        }
+    }
+
+    private static final class Retry {
+        final long dueAt;
+        final FrontierEntry page;
+
+        Retry(long dueAt, FrontierEntry page) {
+            this.dueAt = dueAt;
+            this.page = page;
+        }
+    }
+
+    /** Everything a worker learned about one page, applied to the result on commit. */
+    private static class PageOutcome {
+        final FrontierEntry page;
+        boolean fetched;
+        boolean parsed;
+        int[] counts = new int[0];
+        String blockedReason;
+        CrawlResult.ErrorType error;
+        List<String> links = Collections.emptyList();
+        OptionalLong simhash = OptionalLong.empty();
+        /** Time to the response, or -1 when none arrived. */
+        long latencyMs = -1;
+        /** The host asked to slow down: 429, 503 or a timeout. */
+        boolean throttled;
+        long retryAfterMs = -1;
+        /** Sent back to the frontier under a new sequence number; committing it only frees its slot. */
+        boolean requeued;
+        boolean nearDuplicate;
+        /** Per-phase nanoseconds, only with metrics on. */
+        long[] timings;
+        long startNanos;
+
+        PageOutcome(FrontierEntry page) {
+            this.page = page;
+        }
+
+        int total() {
+            int total = 0;
+            for (int count : counts) total += count;
+            return total;
         }
     }
 }
@@ -0,0 +1,79 @@
+package com.webgrep.core;
+
+import org.jsoup.internal.StringUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes element text the way jsoup's {@code Element.text()} builds it: whitespace normalised per
+ * text node, a space between blocks, and the whole result trimmed. Trailing whitespace is held
+ * back until something visible follows, which is all the trim needs, so the text can go straight
+ * to a {@link Writer} instead of a buffer. Shared by the DOM walk and {@link HtmlScanner}.
+ */
+final class ElementTextWriter {
+    private final Writer out;
+    private final StringBuilder scratch = new StringBuilder();
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+    /** State of the untrimmed text, which is what jsoup's spacing decisions look at. */
+    private boolean started;
+    private char lastChar;
+    private boolean visible;
+
+    ElementTextWriter(Writer out) {
+        this.out = out;
+    }
+
+    /** Appends one text node; {@code preserve} is true inside {@code <pre>}-like elements and CDATA. */
+    void text(String text, boolean preserve) {
+        if (preserve) {
+            append(text);
+        } else {
+            scratch.setLength(0);
+            StringUtil.appendNormalisedWhitespace(scratch, text, started && lastChar == ' ');
+            append(scratch);
+        }
+    }
+
+    /** Separates a block from what precedes it, unless the text is empty or already ends in a space. */
+    void space() {
+        if (started && lastChar != ' ') {
+            append(" ");
+        }
+    }
+
+    /** {@code true} once anything visible has been written. */
+    boolean visible() {
+        return visible;
+    }
+
+    private void append(CharSequence text) {
+        int length = text.length();
+        if (length == 0) return;
+        started = true;
+        lastChar = text.charAt(length - 1);
+        try {
+            int from = 0;
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(i) > ' ') continue;
+                // Whitespace: emit what came before it, then hold it until something visible follows.
+                if (i > from) emit(text, from, i);
+                if (visible) pendingWhitespace.append(text.charAt(i));
+                from = i + 1;
+            }
+            if (length > from) emit(text, from, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void emit(CharSequence text, int from, int to) throws IOException {
+        if (pendingWhitespace.length() > 0) {
+            out.append(pendingWhitespace);
+            pendingWhitespace.setLength(0);
+        }
+        out.append(text, from, to);
+        visible = true;
+    }
+}
@@ -0,0 +1,34 @@
+package com.webgrep.core;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/** Keeps every URL string. Exact, but costs roughly 80 bytes of overhead per URL on top of the string itself. */
+public class ExactVisitedSet implements VisitedSet {
+    private static final int ENTRY_OVERHEAD = 80;
+
+    private final Set<String> urls = new HashSet<>();
+    private long bytes;
+
+    @Override
+    public boolean add(String url) {
+        if (!urls.add(url)) return false;
+        bytes += ENTRY_OVERHEAD + url.length();
+        return true;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public int size() {
+        return urls.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return bytes;
+    }
+}
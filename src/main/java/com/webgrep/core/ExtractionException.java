@@ -0,0 +1,12 @@
+package com.webgrep.core;
+
+/** A binary document could not be extracted in time or crashed its extractor; counted as a parse error. */
+public class ExtractionException extends Exception {
+    public ExtractionException(String message) {
+        super(message);
+    }
+
+    public ExtractionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,106 @@
+package com.webgrep.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of the child JVMs started by {@link ForkedBinaryExtractor}. Reads framed requests
+ * from stdin and answers each on stdout until stdin closes:
+ * <pre>
+ *   request:  int maxChars, string url, string contentType, string mode, int keywordCount,
+ *             string keyword..., int bodyLength, body
+ *   response: byte 0, int keywordCount, int count...   or   byte 1, string error
+ * </pre>
+ * Strings are an int byte length ({@code -1} for null) followed by UTF-8. A single {@code 0} byte
+ * is written once the worker is ready. Anything libraries
+ * print is redirected to stderr so it cannot corrupt the protocol.
+ */
+public final class ExtractionWorker {
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private ExtractionWorker() {}
+
+    public static void main(String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in, 64 * 1024));
+        ContentExtractor extractor = new ContentExtractor();
+        CompiledQuery query = null;
+        // Signals that the JVM and Tika are up, so start-up time is not charged to the first document.
+        out.writeByte(OK);
+        out.flush();
+
+        while (true) {
+            int maxChars;
+            try {
+                maxChars = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            String url = readString(in);
+            String contentType = readString(in);
+            String mode = readString(in);
+            List<String> keywords = new ArrayList<>();
+            for (int k = in.readInt(); k > 0; k--) {
+                keywords.add(readString(in));
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            // A crawl sends the same query every time; compile it once.
+            if (query == null || !query.mode().equals(mode) || !query.keywords().equals(keywords)) {
+                query = new CompiledQuery(keywords, mode);
+            }
+
+            int[] counts;
+            try {
+                MatchStream matches = new MatchStream(query);
+                extractor.writeTextFromBinary(body, url, contentType, maxChars, matches);
+                counts = matches.finish();
+            } catch (Throwable t) {
+                out.writeByte(FAILED);
+                writeString(out, String.valueOf(t));
+                out.flush();
+                if (t instanceof Error) {
+                    // The JVM may be in a bad state after an Error; let the parent start a fresh one.
+                    System.exit(3);
+                }
+                continue;
+            }
+            out.writeByte(OK);
+            out.writeInt(counts.length);
+            for (int count : counts) {
+                out.writeInt(count);
+            }
+            out.flush();
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Size and content-type limits shared by the {@link Fetcher} backends. Bodies are streamed into
+ * a per-thread scratch buffer that is reused across requests and never grows past the byte limit,
+ * so an oversized or endless response is abandoned as soon as it crosses {@code --max-bytes}.
+ */
+public class FetchLimits {
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER]);
+
+    private final long maxBytes;
+    private final List<String> acceptedTypes;
+
+    public FetchLimits(long maxBytes, List<String> acceptedTypes) {
+        this.maxBytes = maxBytes;
+        this.acceptedTypes = acceptedTypes;
+    }
+
+    public static FetchLimits from(CliOptions options) {
+        return new FetchLimits(options.getMaxBytes(), options.getContentTypes());
+    }
+
+    public boolean exceedsSize(String contentLengthHeader) {
+        if (contentLengthHeader == null) return false;
+        try {
+            return Long.parseLong(contentLengthHeader.trim()) > maxBytes;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether a response of this type should be downloaded. Entries match the media type exactly
+     * or, when written as {@code type/*}, by prefix. Responses without a type are always accepted
+     * so that content sniffing can still handle them.
+     */
+    public boolean acceptsType(String contentType) {
+        if (acceptedTypes.isEmpty() || contentType == null || contentType.isBlank()) return true;
+        String mediaType = contentType.toLowerCase(Locale.ROOT);
+        int semi = mediaType.indexOf(';');
+        if (semi != -1) mediaType = mediaType.substring(0, semi);
+        mediaType = mediaType.trim();
+        for (String accepted : acceptedTypes) {
+            if (accepted.endsWith("/*")) {
+                if (mediaType.startsWith(accepted.substring(0, accepted.length() - 1))) return true;
+            } else if (mediaType.equals(accepted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the stream to the end, or returns {@code null} as soon as more than the byte limit has
+     * arrived. The stream is always closed, which aborts the transfer in the latter case.
+     */
+    public byte[] readBody(InputStream in) throws IOException {
+        int limit = (int) Math.min(maxBytes, MAX_ARRAY - 1);
+        try (InputStream stream = in) {
+            byte[] buffer = SCRATCH.get();
+            int length = 0;
+            while (true) {
+                if (length == buffer.length) {
+                    if (length > limit) {
+                        return null;
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, limit + 1L));
+                    SCRATCH.set(buffer);
+                }
+                int read = stream.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+                if (length > limit) {
+                    return null;
+                }
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+}
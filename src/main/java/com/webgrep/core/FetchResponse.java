@@ -0,0 +1,108 @@
+package com.webgrep.core;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of a {@link Fetcher} call: final URL after redirects, status, headers and body.
+ * The body is {@code null} when the download was skipped; {@link #skipReason()} says why.
+ */
+public class FetchResponse {
+    public enum SkipReason {
+        TOO_LARGE,
+        UNWANTED_TYPE
+    }
+
+    private final String url;
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final SkipReason skipReason;
+    private long headersNanos = -1;
+
+    public FetchResponse(String url, int statusCode, Map<String, List<String>> headers, byte[] body) {
+        this(url, statusCode, headers, body, null);
+    }
+
+    public static FetchResponse skipped(String url, int statusCode, Map<String, List<String>> headers, SkipReason reason) {
+        return new FetchResponse(url, statusCode, headers, null, reason);
+    }
+
+    private FetchResponse(String url, int statusCode, Map<String, List<String>> headers, byte[] body, SkipReason skipReason) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            this.headers.putAll(headers);
+        }
+        this.body = body;
+        this.skipReason = skipReason;
+    }
+
+    public String url() { return url; }
+    public int statusCode() { return statusCode; }
+    public byte[] body() { return body; }
+    public SkipReason skipReason() { return skipReason; }
+
+    /** Time from sending the request to receiving the response headers, or -1 if the backend does not know. */
+    public long headersNanos() { return headersNanos; }
+
+    FetchResponse headersNanos(long nanos) {
+        this.headersNanos = nanos;
+        return this;
+    }
+
+    public boolean isSuccess() {
+        return statusCode >= 200 && statusCode < 400;
+    }
+
+    public String header(String name) {
+        List<String> values = headers.getOrDefault(name, Collections.emptyList());
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /** The Retry-After header as a delay in milliseconds, either form (seconds or HTTP date), or -1 without a usable one. */
+    public long retryAfterMillis() {
+        String value = header("Retry-After");
+        if (value == null || value.isBlank()) return -1;
+        value = value.strip();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not delay-seconds; try the HTTP-date form.
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public String contentType() {
+        return header("Content-Type");
+    }
+
+    /** Charset declared in the Content-Type header, or {@code null} to let the parser detect it. */
+    public String charset() {
+        String contentType = contentType();
+        if (contentType == null) return null;
+        int idx = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (idx == -1) return null;
+        String charset = contentType.substring(idx + 8).trim();
+        int end = charset.indexOf(';');
+        if (end != -1) charset = charset.substring(0, end).trim();
+        charset = charset.replace("\"", "").replace("'", "");
+        try {
+            return java.nio.charset.Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.webgrep.core;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Retrieves a single URL. Implementations are shared by all fetch threads and must be thread-safe.
+ * HTTP error statuses are reported through {@link FetchResponse#statusCode()}, not as exceptions.
+ */
+public interface Fetcher extends AutoCloseable {
+
+    FetchResponse fetch(String url) throws IOException, InterruptedException;
+
+    /**
+     * Fetches with additional request headers, such as the validators of a conditional request.
+     * Backends that cannot send extra headers ignore them and perform a plain fetch.
+     */
+    default FetchResponse fetch(String url, Map<String, String> headers) throws IOException, InterruptedException {
+        return fetch(url);
+    }
+
+    @Override
+    default void close() {}
+}
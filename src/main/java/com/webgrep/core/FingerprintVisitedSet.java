@@ -0,0 +1,37 @@
+package com.webgrep.core;
+
+import com.webgrep.utils.Hashing;
+import com.webgrep.utils.LongHashSet;
+
+/**
+ * Keeps a 64-bit fingerprint per URL in a primitive open-addressing set (about 16 bytes per URL).
+ * Two distinct URLs collide with probability around n^2 / 2^65, i.e. roughly once in 10^7 crawls of
+ * a million pages.
+ */
+public class FingerprintVisitedSet implements VisitedSet {
+    private final LongHashSet fingerprints;
+
+    public FingerprintVisitedSet(int expected) {
+        this.fingerprints = new LongHashSet(Math.min(expected, 1 << 10));
+    }
+
+    @Override
+    public boolean add(String url) {
+        return fingerprints.add(Hashing.hash64(url));
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return fingerprints.contains(Hashing.hash64(url));
+    }
+
+    @Override
+    public int size() {
+        return fingerprints.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return fingerprints.memoryBytes();
+    }
+}
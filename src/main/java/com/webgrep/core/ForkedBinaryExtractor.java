@@ -0,0 +1,156 @@
+package com.webgrep.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs Tika in a small pool of child JVMs ({@link ExtractionWorker}) fed over stdin/stdout. Each
+ * child matches the text itself and sends back only the counts. A
+ * document that exceeds the deadline gets its worker killed; a worker that crashes or runs out of
+ * memory takes only its current document with it. Either way the slot is refilled with a fresh
+ * process on the next request, and the crawler's own heap never sees the parser's garbage.
+ */
+public class ForkedBinaryExtractor implements BinaryExtractor {
+    /** Heap of each child JVM; a document that needs more is treated as a parse error. */
+    private static final String WORKER_HEAP = "-Xmx1g";
+
+    private static final class Worker {
+        final Process process;
+        final DataOutputStream in;
+        final DataInputStream out;
+        volatile boolean killed;
+
+        Worker(Process process) {
+            this.process = process;
+            this.in = process == null ? null : new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 64 * 1024));
+            this.out = process == null ? null : new DataInputStream(new BufferedInputStream(process.getInputStream(), 64 * 1024));
+        }
+    }
+
+    /** Placeholder for a slot whose process has to be (re)started; queues do not take {@code null}. */
+    private static final Worker NONE = new Worker(null);
+
+    private final long timeoutMs;
+    private final int maxChars;
+    private final BlockingQueue<Worker> idle;
+    private final List<Worker> all = new ArrayList<>();
+    private final ScheduledExecutorService watchdog;
+    private volatile boolean closed;
+
+    public ForkedBinaryExtractor(int workers, long timeoutMs, int maxChars) {
+        this.timeoutMs = timeoutMs;
+        this.maxChars = maxChars;
+        this.idle = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++) {
+            idle.add(NONE);
+        }
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webgrep-extract-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int[] match(byte[] body, String url, String contentType, CompiledQuery query) throws ExtractionException, InterruptedException {
+        Worker worker = idle.take();
+        try {
+            if (worker == NONE || !worker.process.isAlive()) {
+                worker = start();
+            }
+        } catch (IOException e) {
+            idle.add(NONE);
+            throw new ExtractionException("Cannot start extraction worker", e);
+        }
+
+        Worker current = worker;
+        ScheduledFuture<?> deadline = timeoutMs > 0 ? watchdog.schedule(() -> {
+            current.killed = true;
+            current.process.destroyForcibly();
+        }, timeoutMs, TimeUnit.MILLISECONDS) : null;
+        boolean healthy = false;
+        try {
+            current.in.writeInt(maxChars);
+            ExtractionWorker.writeString(current.in, url);
+            ExtractionWorker.writeString(current.in, contentType);
+            ExtractionWorker.writeString(current.in, query.mode());
+            current.in.writeInt(query.keywords().size());
+            for (String keyword : query.keywords()) {
+                ExtractionWorker.writeString(current.in, keyword);
+            }
+            current.in.writeInt(body.length);
+            current.in.write(body);
+            current.in.flush();
+
+            if (current.out.readByte() != ExtractionWorker.OK) {
+                String error = ExtractionWorker.readString(current.out);
+                healthy = true;
+                throw new ExtractionException("Extraction failed: " + url + " (" + error + ")");
+            }
+            int[] counts = new int[current.out.readInt()];
+            for (int k = 0; k < counts.length; k++) {
+                counts[k] = current.out.readInt();
+            }
+            healthy = true;
+            return counts;
+        } catch (IOException e) {
+            throw new ExtractionException(current.killed
+                    ? "Extraction timed out after " + timeoutMs + " ms: " + url
+                    : "Extraction worker crashed: " + url, e);
+        } finally {
+            if (deadline != null) deadline.cancel(false);
+            if (!healthy || current.killed) {
+                current.process.destroyForcibly();
+                idle.add(NONE);
+            } else {
+                idle.add(current);
+            }
+        }
+    }
+
+    private Worker start() throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, WORKER_HEAP, "-XX:+UseSerialGC",
+                "-cp", System.getProperty("java.class.path"), ExtractionWorker.class.getName())
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        Worker worker = new Worker(builder.start());
+        try {
+            if (worker.out.readByte() != ExtractionWorker.OK) throw new IOException("Extraction worker failed to start");
+        } catch (IOException e) {
+            worker.process.destroyForcibly();
+            throw e;
+        }
+        synchronized (all) {
+            if (closed) {
+                worker.process.destroyForcibly();
+                throw new IOException("Extractor closed");
+            }
+            all.removeIf(w -> !w.process.isAlive());
+            all.add(worker);
+        }
+        return worker;
+    }
+
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+        synchronized (all) {
+            closed = true;
+            for (Worker worker : all) {
+                worker.process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.webgrep.core;
+
+/**
+ * A URL handed out by the frontier. {@code seq} is its position in discovery order, which is
+ * the order in which finished pages are committed.
+ */
+public final class FrontierEntry {
+    public final long seq;
+    public final String url;
+    public final String host;
+    public final int depth;
+
+    public FrontierEntry(long seq, String url, String host, int depth) {
+        this.seq = seq;
+        this.url = url;
+        this.host = host;
+        this.depth = depth;
+    }
+}
@@ -0,0 +1,112 @@
+package com.webgrep.core;
+
+/**
+ * Bounded edit-distance test against one folded keyword, using Myers' bit-parallel algorithm
+ * (Hyyrö's formulation for global distance). One 64-bit word holds a whole column of the
+ * dynamic-programming matrix, so comparing a word costs one step per char of the word, with
+ * no allocation, and stops as soon as the distance can no longer come back under the limit.
+ * Keywords longer than 64 chars fall back to a two-row banded DP.
+ */
+public final class FuzzyMatcher {
+    private static final int ALPHABET = 36;
+
+    private final String keyword;
+    private final int threshold;
+    private final long[] peq;
+    private final long lastBit;
+    private final long allBits;
+
+    /** @param keyword a keyword already reduced to {@code [a-z0-9]} by {@code TextFolding} */
+    public FuzzyMatcher(String keyword) {
+        this.keyword = keyword;
+        this.threshold = keyword.length() <= 4 ? 1 : 2;
+        int m = keyword.length();
+        if (m > 0 && m <= 64) {
+            peq = new long[ALPHABET];
+            for (int i = 0; i < m; i++) {
+                int symbol = symbol(keyword.charAt(i));
+                if (symbol >= 0) peq[symbol] |= 1L << i;
+            }
+            lastBit = 1L << (m - 1);
+            allBits = m == 64 ? -1L : (1L << m) - 1;
+        } else {
+            peq = null;
+            lastBit = 0;
+            allBits = 0;
+        }
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /** Whether the word is within the keyword's edit-distance threshold. */
+    public boolean matches(CharSequence word) {
+        return distance(word, threshold) <= threshold;
+    }
+
+    /**
+     * Levenshtein distance between the word and the keyword, or any value greater than
+     * {@code limit} once it is certain to exceed it.
+     */
+    public int distance(CharSequence word, int limit) {
+        int m = keyword.length();
+        int n = word.length();
+        if (Math.abs(n - m) > limit) return limit + 1;
+        if (m == 0) return n;
+        if (peq == null) return bandedDistance(word, limit);
+
+        long pv = allBits;
+        long mv = 0;
+        int score = m;
+        for (int j = 0; j < n; j++) {
+            int symbol = symbol(word.charAt(j));
+            long eq = symbol >= 0 ? peq[symbol] : 0;
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & lastBit) != 0) {
+                score++;
+            } else if ((mh & lastBit) != 0) {
+                score--;
+            }
+            // Each remaining char can lower the final distance by at most one.
+            if (score - (n - j - 1) > limit) return limit + 1;
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        return score;
+    }
+
+    private int bandedDistance(CharSequence word, int limit) {
+        int m = keyword.length();
+        int n = word.length();
+        int[] prev = new int[n + 1];
+        int[] curr = new int[n + 1];
+        for (int j = 0; j <= n; j++) prev[j] = j;
+        for (int i = 1; i <= m; i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            char c = keyword.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = c == word.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(prev[j] + 1, curr[j - 1] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] swap = prev;
+            prev = curr;
+            curr = swap;
+        }
+        return prev[n];
+    }
+
+    private static int symbol(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= '0' && c <= '9') return 26 + (c - '0');
+        return -1;
+    }
+}
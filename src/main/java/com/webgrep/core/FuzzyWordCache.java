@@ -0,0 +1,71 @@
+package com.webgrep.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache from a folded word to its fuzzy verdict for every keyword of a query, shared by
+ * all worker threads for the whole crawl. Navigation, footers and other boilerplate repeat the
+ * same words on every page, so after the first few pages most words are answered from here.
+ * <p>
+ * The cache is split into independently locked LRU segments to keep contention low.
+ */
+public final class FuzzyWordCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FuzzyWordCache(int maxWords) {
+        int perSegment = Math.max(1, maxWords / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /** Returns the cached verdict bitmask (bit k = keyword k matches), or {@code null} on a miss. */
+    public long[] get(String word) {
+        Segment segment = segmentFor(word);
+        long[] verdict;
+        synchronized (segment) {
+            verdict = segment.get(word);
+        }
+        if (verdict != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return verdict;
+    }
+
+    public void put(String word, long[] verdict) {
+        Segment segment = segmentFor(word);
+        synchronized (segment) {
+            segment.put(word, verdict);
+        }
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+
+    private Segment segmentFor(String word) {
+        int h = word.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment extends LinkedHashMap<String, long[]> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(Math.min(capacity, 1024), 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.webgrep.core;
+
+import com.webgrep.reporting.CrawlResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Crawl frontier that keeps one FIFO queue per host and hands out work round-robin
+ * across hosts. Each host has a minimum delay between request starts and a cap on
+ * concurrent requests; a host that is waiting on either never blocks the others.
+ * <p>
+ * Queued URLs are stored in per-host ring buffers of parallel arrays (no node or wrapper object
+ * per entry); a {@link FrontierEntry} is only created when a URL is handed out. When a
+ * {@link SpillQueue} is attached, queued URLs beyond the memory budget go to disk instead: once
+ * anything has spilled, every new URL is appended there too, and the in-memory head is refilled
+ * from disk in discovery order whenever it drains below half the budget.
+ * <p>
+ * With {@link #adaptive(int)} each host's connection limit and delay start at the configured
+ * values and follow AIMD on the feedback given to {@link #release(String, long, long, boolean)}:
+ * a healthy response whose latency is in line with the host's smoothed latency raises the limit
+ * by one per limit's worth of responses, up to the adaptive ceiling, and shortens the delay by a
+ * fixed step, never below the configured delay or a Crawl-delay; a congestion
+ * signal (429, 503, timeout) halves the limit and doubles the delay, at most once per round
+ * trip so a burst of rejections counts once. {@link #pause} holds a host back for Retry-After.
+ * <p>
+ * Not thread-safe: owned by the crawl thread. Times are in milliseconds from any
+ * monotonic clock.
+ */
+public class HostScheduler implements AutoCloseable {
+    /** Rough heap cost of one queued URL besides its chars: ring slots plus the String object. */
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final long DELAY_STEP_MS = 10;
+    private static final long BACKOFF_DELAY_MS = 50;
+    private static final long MAX_DELAY_MS = 60_000;
+    /** A response is "stable" unless it took more than this many times the smoothed latency (plus slack). */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_SLACK_MS = 5;
+    /** {@code smoothedLatency} of a host no response has been timed from yet. */
+    private static final double NO_SAMPLE = -1;
+
+    private enum State { IDLE, READY, DELAYED, SATURATED }
+
+    /** FIFO of (seq, url, depth) triples in growable ring buffers. */
+    private static class UrlRing {
+        private long[] seqs = new long[4];
+        private String[] urls = new String[4];
+        private int[] depths = new int[4];
+        private int head;
+        private int size;
+
+        void add(long seq, String url, int depth) {
+            if (size == urls.length) grow();
+            int tail = (head + size) & (urls.length - 1);
+            seqs[tail] = seq;
+            urls[tail] = url;
+            depths[tail] = depth;
+            size++;
+        }
+
+        FrontierEntry poll(String host) {
+            FrontierEntry entry = new FrontierEntry(seqs[head], urls[head], host, depths[head]);
+            urls[head] = null;
+            head = (head + 1) & (urls.length - 1);
+            size--;
+            return entry;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long memoryBytes() {
+            return 64L + urls.length * (8L + 4L + 4L);
+        }
+
+        private void grow() {
+            int capacity = urls.length * 2;
+            long[] newSeqs = new long[capacity];
+            String[] newUrls = new String[capacity];
+            int[] newDepths = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                int from = (head + i) & (urls.length - 1);
+                newSeqs[i] = seqs[from];
+                newUrls[i] = urls[from];
+                newDepths[i] = depths[from];
+            }
+            seqs = newSeqs;
+            urls = newUrls;
+            depths = newDepths;
+            head = 0;
+        }
+    }
+
+    private static class Host {
+        final String name;
+        final UrlRing entries = new UrlRing();
+        State state = State.IDLE;
+        int active;
+        long nextStart;
+        double limit;
+        long delay;
+        /** Floor for the delay: the configured delay, or a robots.txt Crawl-delay if longer. */
+        long minDelay;
+        double smoothedLatency = NO_SAMPLE;
+        long lastDecrease = Long.MIN_VALUE / 2;
+        long requests;
+        long firstStart = -1;
+        long lastEnd;
+        int throttled;
+
+        Host(String name, int limit, long delay) {
+            this.name = name;
+            this.limit = limit;
+            this.delay = delay;
+            this.minDelay = delay;
+        }
+    }
+
+    private final long delayMs;
+    private final int maxConnections;
+    /** Ceiling of the adaptive connection limit; 0 keeps every host at the fixed delay and limit. */
+    private int adaptiveMaxConnections;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final ArrayDeque<Host> ready = new ArrayDeque<>();
+    private final PriorityQueue<Host> delayed = new PriorityQueue<>((a, b) -> Long.compare(a.nextStart, b.nextStart));
+    private final long memoryBudget;
+    private final SpillQueue spill;
+    private long size;
+    private long queuedBytes;
+
+    public HostScheduler(long delayMs, int maxConnections) {
+        this(delayMs, maxConnections, Long.MAX_VALUE, null);
+    }
+
+    /** Keeps about {@code memoryBudget} bytes of queued URLs on the heap and sends the rest to {@code spill}. */
+    public HostScheduler(long delayMs, int maxConnections, long memoryBudget, SpillQueue spill) {
+        this.delayMs = delayMs;
+        this.maxConnections = maxConnections;
+        this.memoryBudget = memoryBudget;
+        this.spill = spill;
+    }
+
+    /** Adapts each host's delay and connection limit, up to {@code maxConnections}; see the class comment. */
+    public HostScheduler adaptive(int maxConnections) {
+        this.adaptiveMaxConnections = Math.max(maxConnections, this.maxConnections);
+        return this;
+    }
+
+    public void add(String host, long seq, String url, int depth, long now) {
+        size++;
+        if (spill != null && (!spill.isEmpty() || queuedBytes + cost(url) > memoryBudget)) {
+            spill.add(seq, host, url, depth);
+            return;
+        }
+        enqueue(host, seq, url, depth, now);
+    }
+
+    private void enqueue(String host, long seq, String url, int depth, long now) {
+        Host h = hosts.computeIfAbsent(host, name -> new Host(name, maxConnections, delayMs));
+        h.entries.add(seq, url, depth);
+        queuedBytes += cost(url);
+        if (h.state == State.IDLE) {
+            schedule(h, now);
+        }
+    }
+
+    private void refill(long now) {
+        long target = memoryBudget - memoryBudget / 4;
+        while (queuedBytes < target && !spill.isEmpty()) {
+            FrontierEntry entry = spill.poll();
+            enqueue(entry.host, entry.seq, entry.url, entry.depth, now);
+        }
+    }
+
+    private static long cost(String url) {
+        return ENTRY_OVERHEAD + url.length();
+    }
+
+    /**
+     * Returns the next entry whose host may start a request now, or {@code null} if none can.
+     * The caller must report completion through {@link #release(String, long)}.
+     */
+    public FrontierEntry poll(long now) {
+        if (spill != null && !spill.isEmpty() && queuedBytes <= memoryBudget / 2) {
+            refill(now);
+        }
+        while (!delayed.isEmpty() && delayed.peek().nextStart <= now) {
+            Host h = delayed.poll();
+            h.state = State.READY;
+            ready.add(h);
+        }
+
+        Host h = ready.poll();
+        if (h == null) {
+            return null;
+        }
+        FrontierEntry entry = h.entries.poll(h.name);
+        size--;
+        queuedBytes -= cost(entry.url);
+        h.active++;
+        h.requests++;
+        if (h.firstStart < 0) h.firstStart = now;
+        h.nextStart = now + h.delay;
+        h.state = State.IDLE;
+        if (!h.entries.isEmpty()) {
+            schedule(h, now);
+        }
+        return entry;
+    }
+
+    public void release(String host, long now) {
+        Host h = hosts.get(host);
+        if (h == null) return;
+        release(h, now);
+    }
+
+    /**
+     * Completes a request with feedback: how long it took, or -1 when no response came back, and
+     * whether the host pushed back. Only adaptive schedulers act on it, but every scheduler counts
+     * the pushback in {@link #rates}.
+     */
+    public void release(String host, long now, long latencyMs, boolean congested) {
+        Host h = hosts.get(host);
+        if (h == null) return;
+        if (congested) h.throttled++;
+        if (adaptiveMaxConnections > 0) {
+            adapt(h, now, latencyMs, congested);
+        }
+        release(h, now);
+    }
+
+    private void release(Host h, long now) {
+        h.active--;
+        h.lastEnd = now;
+        if (h.state == State.SATURATED) {
+            schedule(h, now);
+        }
+    }
+
+    private void adapt(Host h, long now, long latencyMs, boolean congested) {
+        if (congested) {
+            // Requests already in flight when the host pushed back report it too: one decrease per round trip.
+            if (now - h.lastDecrease >= Math.max(0, h.smoothedLatency) + h.delay) {
+                h.limit = Math.max(1, h.limit / 2);
+                h.delay = Math.min(MAX_DELAY_MS, Math.max(h.delay * 2, BACKOFF_DELAY_MS));
+                h.lastDecrease = now;
+            }
+            return;
+        }
+        if (latencyMs < 0) {
+            // Refused, reset or never sent: says nothing about how fast the host answers.
+            return;
+        }
+        boolean first = h.smoothedLatency == NO_SAMPLE;
+        boolean stable = first || latencyMs <= h.smoothedLatency * LATENCY_TOLERANCE + LATENCY_SLACK_MS;
+        h.smoothedLatency = first ? latencyMs : h.smoothedLatency + (latencyMs - h.smoothedLatency) / 8;
+        if (stable) {
+            h.limit = Math.min(adaptiveMaxConnections, h.limit + 1 / h.limit);
+            h.delay = Math.max(h.minDelay, h.delay - DELAY_STEP_MS);
+        }
+    }
+
+    /**
+     * Keeps the delay between request starts on {@code host} at least {@code crawlDelayMs}, adaptive
+     * or not. May be called before the host's first URL is added, so the delay holds from its first request.
+     */
+    public void minimumDelay(String host, long crawlDelayMs) {
+        Host h = hosts.computeIfAbsent(host, name -> new Host(name, maxConnections, delayMs));
+        long floor = Math.max(delayMs, Math.min(MAX_DELAY_MS, crawlDelayMs));
+        if (h.minDelay == floor) return;
+        h.minDelay = floor;
+        h.delay = Math.max(h.delay, h.minDelay);
+    }
+
+    /** Starts no request to {@code host} before {@code until}, e.g. for a Retry-After header. */
+    public void pause(String host, long until) {
+        Host h = hosts.get(host);
+        if (h == null || until <= h.nextStart) return;
+        h.nextStart = until;
+        if (h.state == State.READY || h.state == State.DELAYED) {
+            ready.remove(h);
+            delayed.remove(h);
+            h.state = State.DELAYED;
+            delayed.add(h);
+        }
+    }
+
+    /** Earliest time at which {@link #poll(long)} may return an entry, or {@code Long.MAX_VALUE} if that depends on a release. */
+    public long nextReadyAt(long now) {
+        if (!ready.isEmpty()) return now;
+        Host h = delayed.peek();
+        return h != null ? h.nextStart : Long.MAX_VALUE;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /** URLs that went through the disk spill so far. */
+    public long spilledCount() {
+        return spill == null ? 0 : spill.totalAdded();
+    }
+
+    public int hostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * The {@code limit} busiest hosts with their effective rate: requests over the time from the
+     * first request start to the last completion, and where their delay and limit ended up.
+     */
+    public List<CrawlResult.HostRate> rates(int limit) {
+        List<Host> busiest = new ArrayList<>(hosts.values());
+        busiest.sort(Comparator.comparingLong((Host h) -> h.requests).reversed().thenComparing(h -> h.name));
+        List<CrawlResult.HostRate> rates = new ArrayList<>();
+        for (Host h : busiest.subList(0, Math.min(limit, busiest.size()))) {
+            if (h.requests == 0) break;
+            long span = h.lastEnd - h.firstStart;
+            rates.add(new CrawlResult.HostRate(h.name, h.requests, span <= 0 ? 0 : h.requests * 1000.0 / span,
+                    (int) h.limit, h.delay, h.throttled));
+        }
+        return rates;
+    }
+
+    @Override
+    public void close() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /** Approximate heap held by the queues, excluding the URL strings themselves. */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Host h : hosts.values()) {
+            bytes += 64 + h.entries.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private void schedule(Host h, long now) {
+        if (h.active >= (int) h.limit) {
+            h.state = State.SATURATED;
+        } else if (h.nextStart > now) {
+            h.state = State.DELAYED;
+            delayed.add(h);
+        } else {
+            h.state = State.READY;
+            ready.add(h);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.webgrep.core;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass, tokenizer-level alternative to building a jsoup DOM. One scan over the decoded
+ * page writes the same text {@link ContentExtractor#extractTextFromHtml} produces and collects
+ * the title, meta description/keywords, {@code <base href>} and anchor hrefs, without allocating a
+ * node per tag. Spacing follows jsoup's block rules via {@link Tag}.
+ * <p>
+ * It does not run the HTML5 tree-construction algorithm, so badly misnested markup can come out
+ * spaced differently than with jsoup; the words, and therefore the match counts, are the same.
+ * The title is written first as long as it precedes the visible text, as it does on practically
+ * every page; a title found later is appended after the meta content instead.
+ */
+public final class HtmlScanner {
+    private static final int MAX_OPEN_ELEMENTS = 256;
+    private static final Pattern META_CHARSET = Pattern.compile("(?i)<meta[^>]*charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)");
+
+    /** What the scan found besides the text. Hrefs are attribute values, entity-decoded but unresolved. */
+    public static final class Page {
+        String title;
+        String description;
+        String keywords;
+        String baseHref;
+        final List<String> anchorHrefs = new ArrayList<>();
+
+        public String title() { return title == null ? "" : title; }
+        public String baseHref() { return baseHref; }
+        public List<String> anchorHrefs() { return anchorHrefs; }
+    }
+
+    private final String html;
+    private final int length;
+    private final Writer out;
+    private final ElementTextWriter text;
+    private final Page page = new Page();
+    private final String[] open = new String[MAX_OPEN_ELEMENTS];
+    private final boolean[] openPreserves = new boolean[MAX_OPEN_ELEMENTS];
+    private int depth;
+    private int preserveDepth;
+    /** A block just closed: jsoup puts a space after it if text or an inline element follows. */
+    private boolean afterBlock;
+    private boolean titleWritten;
+    private boolean titleLate;
+    private int pos;
+
+    private HtmlScanner(String html, Writer out) {
+        this.html = html;
+        this.length = html.length();
+        this.out = out;
+        this.text = new ElementTextWriter(out);
+    }
+
+    /** Scans {@code html}, writing its text to {@code out}. */
+    public static Page scan(String html, Writer out) {
+        HtmlScanner scanner = new HtmlScanner(html, out);
+        try {
+            scanner.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return scanner.page;
+    }
+
+    /**
+     * Decodes a body with the declared charset, falling back to a byte-order mark, then a
+     * {@code <meta charset>} near the top, then UTF-8, which is what jsoup would pick.
+     */
+    public static String decode(byte[] body, String charset) {
+        if (charset != null && Charset.isSupported(charset)) {
+            return new String(body, Charset.forName(charset));
+        }
+        if (body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB && (body[2] & 0xFF) == 0xBF) {
+            return new String(body, 3, body.length - 3, StandardCharsets.UTF_8);
+        }
+        if (body.length >= 2 && (body[0] & 0xFF) == 0xFE && (body[1] & 0xFF) == 0xFF) {
+            return new String(body, 2, body.length - 2, StandardCharsets.UTF_16BE);
+        }
+        if (body.length >= 2 && (body[0] & 0xFF) == 0xFF && (body[1] & 0xFF) == 0xFE) {
+            return new String(body, 2, body.length - 2, StandardCharsets.UTF_16LE);
+        }
+        Matcher meta = META_CHARSET.matcher(new String(body, 0, Math.min(body.length, 1024), StandardCharsets.ISO_8859_1));
+        if (meta.find() && Charset.isSupported(meta.group(1))) {
+            return new String(body, Charset.forName(meta.group(1)));
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private void run() throws IOException {
+        while (pos < length) {
+            int lt = html.indexOf('<', pos);
+            if (lt < 0) {
+                text(unescape(html.substring(pos)), false);
+                break;
+            }
+            if (lt > pos) {
+                text(unescape(html.substring(pos, lt)), false);
+            }
+            pos = lt;
+            tag();
+        }
+        if (!titleWritten) {
+            writeTitle();
+        }
+        out.write(' ');
+        out.write(page.description == null ? "" : page.description);
+        out.write(' ');
+        out.write(page.keywords == null ? "" : page.keywords);
+        if (titleLate && page.title != null) {
+            out.write(' ');
+            out.write(page.title);
+        }
+    }
+
+    /** Handles the markup starting at {@code pos}, which points at a {@code '<'}. */
+    private void tag() throws IOException {
+        if (html.startsWith("<!--", pos)) {
+            int end = html.indexOf("-->", pos + 4);
+            pos = end < 0 ? length : end + 3;
+            return;
+        }
+        char next = pos + 1 < length ? html.charAt(pos + 1) : 0;
+        if (next == '!' || next == '?') {
+            skipPast('>');
+            return;
+        }
+        boolean end = next == '/';
+        int nameStart = pos + (end ? 2 : 1);
+        if (nameStart >= length || !isLetter(html.charAt(nameStart))) {
+            if (end) {
+                skipPast('>');
+            } else {
+                // A lone '<' is text.
+                text("<", false);
+                pos++;
+            }
+            return;
+        }
+        int i = nameStart;
+        while (i < length && !isTagNameEnd(html.charAt(i))) i++;
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        pos = i;
+        if (end) {
+            skipPast('>');
+            endTag(name);
+        } else {
+            startTag(name);
+        }
+    }
+
+    private void startTag(String name) throws IOException {
+        String href = null;
+        String metaName = null;
+        String content = null;
+        boolean selfClosing = false;
+        // Attributes: name, optionally '=' and a quoted or unquoted value.
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '>') {
+                pos++;
+                break;
+            }
+            if (c == '/') {
+                selfClosing = pos + 1 < length && html.charAt(pos + 1) == '>';
+                pos++;
+                continue;
+            }
+            if (isWhitespace(c)) {
+                pos++;
+                continue;
+            }
+            int attrStart = pos;
+            while (pos < length && !isWhitespace(html.charAt(pos)) && "/>=".indexOf(html.charAt(pos)) < 0) pos++;
+            if (pos == attrStart) pos++;
+            String attr = html.substring(attrStart, pos);
+            while (pos < length && isWhitespace(html.charAt(pos))) pos++;
+            String value = "";
+            if (pos < length && html.charAt(pos) == '=') {
+                pos++;
+                while (pos < length && isWhitespace(html.charAt(pos))) pos++;
+                value = attributeValue();
+            }
+            if (attr.equalsIgnoreCase("href") && href == null) href = value;
+            else if (attr.equalsIgnoreCase("name") && metaName == null) metaName = value;
+            else if (attr.equalsIgnoreCase("content") && content == null) content = value;
+        }
+
+        Tag tag = Tag.valueOf(name);
+        if (afterBlock && !tag.formatAsBlock()) {
+            text.space();
+        }
+        afterBlock = false;
+        if (tag.isBlock() || name.equals("br")) {
+            text.space();
+        }
+
+        switch (name) {
+            case "script":
+            case "style":
+                rawText(name);
+                return;
+            case "title": {
+                String title = unescape(rawText(name));
+                if (page.title == null) {
+                    page.title = StringUtil.normaliseWhitespace(title).trim();
+                    if (titleWritten) titleLate = true;
+                }
+                return;
+            }
+            case "textarea":
+                text(unescape(rawText(name)), true);
+                afterBlock = tag.isBlock();
+                return;
+            case "xmp":
+            case "iframe":
+            case "noembed":
+            case "noframes":
+                text(rawText(name), preserveDepth > 0 || tag.preserveWhitespace());
+                afterBlock = tag.isBlock();
+                return;
+            case "plaintext":
+                text(html.substring(pos), true);
+                pos = length;
+                return;
+            case "a":
+                if (href != null) page.anchorHrefs.add(unescape(href, true));
+                break;
+            case "base":
+                if (href != null && page.baseHref == null) page.baseHref = unescape(href, true);
+                break;
+            case "meta":
+                if (metaName != null && content != null) {
+                    String key = metaName.trim();
+                    if (key.equalsIgnoreCase("description") && page.description == null) {
+                        page.description = unescape(content, true);
+                    } else if (key.equalsIgnoreCase("keywords") && page.keywords == null) {
+                        page.keywords = unescape(content, true);
+                    }
+                }
+                break;
+            case "pre":
+            case "listing":
+                skipLeadingNewline();
+                break;
+            default:
+                break;
+        }
+
+        if (!tag.isEmpty() && !(selfClosing && !tag.isKnownTag())) {
+            push(name, tag.preserveWhitespace());
+        }
+    }
+
+    private void endTag(String name) {
+        afterBlock = false;
+        for (int i = Math.min(depth, MAX_OPEN_ELEMENTS) - 1; i >= 0; i--) {
+            if (open[i].equals(name)) {
+                while (depth > i) pop();
+                break;
+            }
+        }
+        if (Tag.valueOf(name).isBlock()) {
+            afterBlock = true;
+        }
+    }
+
+    private void push(String name, boolean preserves) {
+        if (depth < MAX_OPEN_ELEMENTS) {
+            open[depth] = name;
+            openPreserves[depth] = preserves;
+        }
+        depth++;
+        if (preserves) preserveDepth++;
+    }
+
+    private void pop() {
+        depth--;
+        if (depth < MAX_OPEN_ELEMENTS && openPreserves[depth]) preserveDepth--;
+    }
+
+    /** Writes one text node; entities must already be decoded. */
+    private void text(String content, boolean preserve) throws IOException {
+        if (content.isEmpty()) return;
+        if (afterBlock) {
+            text.space();
+            afterBlock = false;
+        }
+        if (!titleWritten && hasVisible(content)) {
+            writeTitle();
+        }
+        text.text(content, preserve || preserveDepth > 0);
+    }
+
+    private static String unescape(String text) {
+        return unescape(text, false);
+    }
+
+    /**
+     * Decodes the handful of entities that make up nearly all real-world escaping inline, and hands
+     * anything else to jsoup, whose per-call setup costs more than scanning the text itself.
+     */
+    private static String unescape(String text, boolean inAttribute) {
+        int amp = text.indexOf('&');
+        if (amp < 0) return text;
+        StringBuilder decoded = new StringBuilder(text.length());
+        int from = 0;
+        while (amp >= 0) {
+            int semicolon = text.indexOf(';', amp);
+            String replacement = semicolon > amp + 1 && semicolon - amp <= 8 ? simpleEntity(text, amp + 1, semicolon) : null;
+            if (replacement == null) {
+                return Parser.unescapeEntities(text, inAttribute);
+            }
+            decoded.append(text, from, amp).append(replacement);
+            from = semicolon + 1;
+            amp = text.indexOf('&', from);
+        }
+        return decoded.append(text, from, text.length()).toString();
+    }
+
+    private static String simpleEntity(String text, int start, int end) {
+        if (text.charAt(start) != '#') {
+            switch (text.substring(start, end)) {
+                case "amp": return "&";
+                case "lt": return "<";
+                case "gt": return ">";
+                case "quot": return "\"";
+                case "nbsp": return "\u00A0";
+                default: return null;
+            }
+        }
+        boolean hex = start + 1 < end && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X');
+        int digits = start + (hex ? 2 : 1);
+        if (digits >= end) return null;
+        int codePoint = 0;
+        for (int i = digits; i < end; i++) {
+            int digit = Character.digit(text.charAt(i), hex ? 16 : 10);
+            if (digit < 0) return null;
+            codePoint = codePoint * (hex ? 16 : 10) + digit;
+        }
+        // Control characters, the windows-1252 remapped range and surrogates are left to jsoup.
+        boolean plain = codePoint == '\t' || codePoint == '\n' || (codePoint >= 0x20 && codePoint < 0x7F)
+                || (codePoint >= 0xA0 && codePoint < 0xD800) || (codePoint >= 0xE000 && codePoint <= 0xFFFD);
+        return plain ? String.valueOf((char) codePoint) : null;
+    }
+
+    private void writeTitle() throws IOException {
+        out.write(page.title());
+        out.write(' ');
+        titleWritten = true;
+    }
+
+    /** Returns the content of a raw-text element and moves past its end tag. */
+    private String rawText(String name) {
+        int from = pos;
+        int i = from;
+        while (true) {
+            int lt = html.indexOf("</", i);
+            if (lt < 0) {
+                pos = length;
+                return html.substring(from);
+            }
+            if (html.regionMatches(true, lt + 2, name, 0, name.length())
+                    && (lt + 2 + name.length() >= length || isTagNameEnd(html.charAt(lt + 2 + name.length())))) {
+                pos = lt;
+                skipPast('>');
+                return html.substring(from, lt);
+            }
+            i = lt + 2;
+        }
+    }
+
+    private String attributeValue() {
+        if (pos >= length) return "";
+        char quote = html.charAt(pos);
+        if (quote == '"' || quote == '\'') {
+            int end = html.indexOf(quote, pos + 1);
+            if (end < 0) end = length;
+            String value = html.substring(pos + 1, end);
+            pos = Math.min(length, end + 1);
+            return value;
+        }
+        int start = pos;
+        while (pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') pos++;
+        return html.substring(start, pos);
+    }
+
+    /** Like jsoup, drops a newline directly after {@code <pre>} and {@code <listing>}. */
+    private void skipLeadingNewline() {
+        if (html.startsWith("\r\n", pos)) pos += 2;
+        else if (pos < length && (html.charAt(pos) == '\n' || html.charAt(pos) == '\r')) pos++;
+    }
+
+    private void skipPast(char c) {
+        int end = html.indexOf(c, pos);
+        pos = end < 0 ? length : end + 1;
+    }
+
+    private static boolean hasVisible(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') return true;
+        }
+        return false;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isTagNameEnd(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+}
@@ -0,0 +1,186 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+import com.webgrep.utils.UrlUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetcher backed by a single shared {@link HttpClient}: connections are pooled and kept alive
+ * across requests, HTTP/2 is negotiated over TLS where the server supports it (multiplexing
+ * concurrent requests to one host over one connection) while plain http stays on HTTP/1.1
+ * without an h2c upgrade, bodies are streamed and abandoned as soon as they cross the size
+ * limit, and {@code --insecure} uses an SSL context owned by this client instead of changing
+ * JVM-wide defaults. Redirects are followed except from https to http.
+ * <p>
+ * {@code --timeout-ms} bounds the wait for the response headers and, separately, the body read:
+ * a server that stalls mid-body has its stream closed and the fetch fails with a timeout.
+ * <p>
+ * Host names are resolved once per pooled connection rather than per request; the JDK 17 client
+ * has no resolver hook, so lookups themselves go through the JVM's {@code InetAddress} cache.
+ */
+public class HttpClientFetcher implements Fetcher {
+    static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7";
+    static final String ACCEPT_LANGUAGE = "en-US,en;q=0.9,bs;q=0.8,sr;q=0.7,hr;q=0.6";
+    static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/121.0.0.0 Safari/537.36";
+
+    private final FetchLimits limits;
+    private final HttpClient client;
+    private final HttpRequest.Builder template;
+    private final long timeoutMs;
+    /** Closes the body streams of fetches that overrun the timeout; null without a timeout. */
+    private final ScheduledExecutorService deadlines;
+
+    public HttpClientFetcher(CliOptions options) {
+        this.limits = FetchLimits.from(options);
+        this.timeoutMs = options.getTimeoutMs();
+        this.deadlines = timeoutMs > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webgrep-fetch-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (options.getTimeoutMs() > 0) {
+            builder.connectTimeout(Duration.ofMillis(options.getTimeoutMs()));
+        }
+        if (options.isInsecure()) {
+            builder.sslContext(trustAllContext());
+        }
+        this.client = builder.build();
+
+        // Headers are attached once here and copied per request.
+        this.template = HttpRequest.newBuilder()
+                .GET()
+                .header("Accept", ACCEPT)
+                .header("Accept-Language", ACCEPT_LANGUAGE)
+                .header("User-Agent", USER_AGENT);
+        if (options.getTimeoutMs() > 0) {
+            template.timeout(Duration.ofMillis(options.getTimeoutMs()));
+        }
+    }
+
+    @Override
+    public FetchResponse fetch(String url) throws IOException, InterruptedException {
+        return fetch(url, Map.of());
+    }
+
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> extraHeaders) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = template.copy().uri(UrlUtils.toUri(url));
+        if (url.startsWith("http:")) {
+            // HTTP/2 would be attempted as an h2c upgrade on every plain-text request.
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        extraHeaders.forEach(builder::header);
+        HttpRequest request = builder.build();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long headersNanos = System.nanoTime() - start;
+
+        String finalUrl = response.uri().toString();
+        Map<String, List<String>> headers = response.headers().map();
+        FetchResponse.SkipReason skip = null;
+        if (response.statusCode() < 200 || response.statusCode() >= 400) {
+            response.body().close();
+            return new FetchResponse(finalUrl, response.statusCode(), headers, new byte[0]).headersNanos(headersNanos);
+        } else if (limits.exceedsSize(response.headers().firstValue("Content-Length").orElse(null))) {
+            skip = FetchResponse.SkipReason.TOO_LARGE;
+        } else if (!limits.acceptsType(response.headers().firstValue("Content-Type").orElse(null))) {
+            skip = FetchResponse.SkipReason.UNWANTED_TYPE;
+        }
+        if (skip != null) {
+            // Closing the stream before reading cancels the exchange and releases the connection.
+            response.body().close();
+            return FetchResponse.skipped(finalUrl, response.statusCode(), headers, skip).headersNanos(headersNanos);
+        }
+
+        byte[] body = readBody(response.body(), url);
+        if (body == null) {
+            return FetchResponse.skipped(finalUrl, response.statusCode(), headers, FetchResponse.SkipReason.TOO_LARGE).headersNanos(headersNanos);
+        }
+        return new FetchResponse(finalUrl, response.statusCode(), headers, body).headersNanos(headersNanos);
+    }
+
+    /** Reads the body within the timeout; past it the stream is closed, which ends a blocked read. */
+    private byte[] readBody(InputStream in, String url) throws IOException {
+        if (deadlines == null) {
+            return limits.readBody(in);
+        }
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+            expired.set(true);
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        byte[] body;
+        try {
+            body = limits.readBody(in);
+        } catch (IOException e) {
+            if (expired.get()) throw timedOut(url);
+            throw e;
+        } finally {
+            deadline.cancel(false);
+        }
+        // A closed stream may simply report its end, so a truncated body is caught here.
+        if (expired.get()) throw timedOut(url);
+        return body;
+    }
+
+    private HttpTimeoutException timedOut(String url) {
+        return new HttpTimeoutException("Body of " + url + " not received within " + timeoutMs + " ms");
+    }
+
+    @Override
+    public void close() {
+        if (deadlines != null) {
+            deadlines.shutdownNow();
+        }
+    }
+
+    private static SSLContext trustAllContext() {
+        try {
+            // An X509ExtendedTrustManager that accepts everything also skips the endpoint
+            // (host name) check, which the client would otherwise perform on its own.
+            TrustManager[] trustAll = new TrustManager[]{
+                new X509ExtendedTrustManager() {
+                    public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+                    public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+                    public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+                    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {}
+                    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {}
+                    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {}
+                    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {}
+                }
+            };
+            SSLContext sc = SSLContext.getInstance("TLS");
+            sc.init(null, trustAll, new SecureRandom());
+            return sc;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to initialise insecure SSL context", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Legacy fetcher on top of {@code Jsoup.connect}/{@code HttpURLConnection}. Note that {@code --insecure}
+ * changes the JVM-wide HTTPS defaults with this backend.
+ */
+public class JsoupFetcher implements Fetcher {
+    private final CliOptions options;
+    private final FetchLimits limits;
+
+    public JsoupFetcher(CliOptions options) {
+        this.options = options;
+        this.limits = FetchLimits.from(options);
+        if (options.isInsecure()) {
+            setupSsl();
+        }
+    }
+
+    @Override
+    public FetchResponse fetch(String url) throws IOException {
+        return fetch(url, Map.of());
+    }
+
+    @Override
+    public FetchResponse fetch(String url, Map<String, String> extraHeaders) throws IOException {
+        Connection.Response response = Jsoup.connect(url)
+                .timeout(options.getTimeoutMs())
+                .followRedirects(true)
+                .ignoreContentType(true)
+                .ignoreHttpErrors(true)
+                .maxBodySize(0)
+                .header("Accept", HttpClientFetcher.ACCEPT)
+                .header("Accept-Language", HttpClientFetcher.ACCEPT_LANGUAGE)
+                .header("User-Agent", HttpClientFetcher.USER_AGENT)
+                .headers(extraHeaders)
+                .execute();
+
+        String finalUrl = response.url().toString();
+        Map<String, List<String>> headers = response.multiHeaders();
+        FetchResponse.SkipReason skip = null;
+        if (response.statusCode() < 200 || response.statusCode() >= 400) {
+            response.bodyStream().close();
+            return new FetchResponse(finalUrl, response.statusCode(), headers, new byte[0]);
+        } else if (limits.exceedsSize(response.header("Content-Length"))) {
+            skip = FetchResponse.SkipReason.TOO_LARGE;
+        } else if (!limits.acceptsType(response.contentType())) {
+            skip = FetchResponse.SkipReason.UNWANTED_TYPE;
+        }
+        if (skip != null) {
+            response.bodyStream().close();
+            return FetchResponse.skipped(finalUrl, response.statusCode(), headers, skip);
+        }
+
+        byte[] body = limits.readBody(response.bodyStream());
+        if (body == null) {
+            return FetchResponse.skipped(finalUrl, response.statusCode(), headers, FetchResponse.SkipReason.TOO_LARGE);
+        }
+        return new FetchResponse(finalUrl, response.statusCode(), headers, body);
+    }
+
+    private void setupSsl() {
+        try {
+            TrustManager[] trustAllCerts = new TrustManager[]{
+                new X509TrustManager() {
+                    public X509Certificate[] getAcceptedIssuers() { return null; }
+                    public void checkClientTrusted(X509Certificate[] certs, String authType) {}
+                    public void checkServerTrusted(X509Certificate[] certs, String authType) {}
+                }
+            };
+            SSLContext sc = SSLContext.getInstance("SSL");
+            sc.init(null, trustAllCerts, new SecureRandom());
+            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+            HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+        } catch (Exception ignored) {}
+    }
+}
@@ -1,111 +1,61 @@
 package com.webgrep.core;
 
-import java.text.Normalizer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import com.webgrep.utils.TextFolding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Counts keyword occurrences in page text. All keywords are compiled into a single
+ * Aho-Corasick automaton ({@link CompiledQuery}), so each page is scanned once no matter how
+ * many keywords there are. Counts are per keyword and non-overlapping, like repeated
+ * {@code Matcher.find()}. Documents too large to hold as one string can be fed in chunks
+ * through a {@link MatchStream}.
+ */
 public class MatchEngine {
 
     public int countMatches(String text, String keyword, String mode) {
-        if (text == null || text.isEmpty() || keyword == null || keyword.isEmpty()) {
+        if (keyword == null || keyword.isEmpty()) {
             return 0;
         }
-
-        if (mode.equals("exact")) {
-            int count = 0;
-            Pattern pattern = Pattern.compile(Pattern.quote(keyword));
-            Matcher matcher = pattern.matcher(text);
-            while (matcher.find()) {
-                count++;
-            }
-            return count;
-        } else if (mode.equals("fuzzy")) {
-            return countFuzzyMatches(text, keyword);
-        } else {
-            // Default: case-insensitive
-            int count = 0;
-            String processedText = text.replace('\u00A0', ' ');
-            Pattern pattern = Pattern.compile(Pattern.quote(keyword), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-            Matcher matcher = pattern.matcher(processedText);
-            while (matcher.find()) {
-                count++;
-            }
-
-            if (count == 0) {
-                String simpleKeyword = superSimplify(keyword);
-                String simpleText = superSimplify(text);
-                if (!simpleKeyword.isEmpty()) {
-                    int idx = 0;
-                    while ((idx = simpleText.indexOf(simpleKeyword, idx)) != -1) {
-                        count++;
-                        idx += simpleKeyword.length();
-                    }
-                }
-            }
-            return count;
-        }
+        return countMatches(text, List.of(keyword), mode)[0];
     }
 
-    private int countFuzzyMatches(String text, String keyword) {
-        String superSimpleKeyword = superSimplify(keyword);
-        String superSimpleText = superSimplify(text);
-
-        if (superSimpleKeyword.isEmpty()) return 0;
-
-        int count = 0;
-        int idx = 0;
-        while ((idx = superSimpleText.indexOf(superSimpleKeyword, idx)) != -1) {
-            count++;
-            idx += superSimpleKeyword.length();
-        }
-
-        if (count == 0) {
-            String normalizedKeyword = superSimpleKeyword;
-            String normalizedTextWithSpaces = simplifyWithSpaces(text);
-            String[] words = normalizedTextWithSpaces.split("\\s+");
+    public int[] countMatches(String text, List<String> keywords, String mode) {
+        return countMatches(text, new CompiledQuery(keywords, mode));
+    }
 
-            int threshold = normalizedKeyword.length() <= 4 ? 1 : 2;
-            for (String word : words) {
-                if (word.isEmpty()) continue;
-                if (levenshteinDistance(word, normalizedKeyword) <= threshold) {
-                    count++;
-                }
-            }
+    public int[] countMatches(CharSequence text, CompiledQuery query) {
+        MatchStream stream = stream(query);
+        if (text != null) {
+            stream.append(text);
         }
-        return count;
+        return stream.finish();
     }
 
-    public String superSimplify(String input) {
-        if (input == null) return "";
-        String normalized = Normalizer.normalize(input, Normalizer.Form.NFD);
-        normalized = normalized.replaceAll("\\p{M}", "");
-        return normalized.toLowerCase().replaceAll("[^a-z0-9]", "");
+    /** Counts matches in everything {@code reader} yields, without holding more than a buffer of it. */
+    public int[] countMatches(Reader reader, CompiledQuery query) throws IOException {
+        MatchStream stream = stream(query);
+        reader.transferTo(stream);
+        return stream.finish();
     }
 
-    private String simplifyWithSpaces(String input) {
-        if (input == null) return "";
-        String normalized = Normalizer.normalize(input, Normalizer.Form.NFD);
-        normalized = normalized.replaceAll("\\p{M}", "");
-        return normalized.toLowerCase().replaceAll("[^a-z0-9\\s]", " ");
+    /** Starts counting a document that will be written in chunks. */
+    public MatchStream stream(CompiledQuery query) {
+        return new MatchStream(query);
     }
 
-    private int levenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    dp[i][j] = Math.min(Math.min(
-                                    dp[i - 1][j] + 1,
-                                    dp[i][j - 1] + 1),
-                            dp[i - 1][j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1));
-                }
-            }
+    /** Same equivalence as {@code Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE}, with NBSP treated as a space. */
+    static char foldCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
         }
-        return dp[s1.length()][s2.length()];
+        if (c == '\u00A0') return ' ';
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    public String superSimplify(String input) {
+        return TextFolding.superSimplify(input);
     }
 }
@@ -0,0 +1,268 @@
+package com.webgrep.core;
+
+import com.webgrep.utils.AhoCorasick;
+import com.webgrep.utils.TextFolding;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Incremental form of {@link MatchEngine#countMatches(CharSequence, CompiledQuery)}: text is
+ * written in chunks of any size and counted as it arrives, so a document never has to exist as
+ * one string. Everything that spans a chunk boundary is carried in the automaton states and, in
+ * fuzzy mode, the current word (capped at the longest word that can still match), so memory per
+ * document is constant. Counts are identical to scanning the concatenated text in one go.
+ * <p>
+ * Not thread-safe: one stream per document.
+ */
+public final class MatchStream extends Writer {
+    private static final int EXACT = 0;
+    private static final int DEFAULT = 1;
+    private static final int FUZZY = 2;
+    private static final int CHUNK = 8192;
+
+    private final CompiledQuery query;
+    private final int mode;
+    /** Literal-automaton counts (exact and default mode). */
+    private final int[] counts;
+    /** Simplified-automaton counts (default and fuzzy mode). */
+    private final int[] simpleCounts;
+    /** Near-matching words (fuzzy mode), only used for keywords without a simplified match. */
+    private final int[] fuzzyCounts;
+    private final long[] nextFree;
+    private final long[] simpleNextFree;
+    private final StringBuilder word = new StringBuilder(32);
+    private int state;
+    private int simpleState;
+    private long pos;
+    private long simplePos;
+    private long written;
+    private char[] chunk;
+
+    public MatchStream(CompiledQuery query) {
+        this.query = query;
+        this.mode = query.mode().equals("exact") ? EXACT : query.mode().equals("fuzzy") ? FUZZY : DEFAULT;
+        int n = query.keywords().size();
+        this.counts = new int[n];
+        this.simpleCounts = new int[n];
+        this.fuzzyCounts = new int[n];
+        this.nextFree = new long[n];
+        this.simpleNextFree = new long[n];
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+        if (len <= 0) return;
+        written += len;
+        int end = off + len;
+        switch (mode) {
+            case EXACT: scanExact(buf, off, end); break;
+            case FUZZY: scanFuzzy(buf, off, end); break;
+            default: scanDefault(buf, off, end); break;
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        write(new char[] {(char) c}, 0, 1);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        // Writer's default copies the whole string; go through a reusable chunk instead.
+        char[] buf = chunk();
+        for (int end = off + len; off < end; off += CHUNK) {
+            int n = Math.min(CHUNK, end - off);
+            str.getChars(off, off + n, buf, 0);
+            write(buf, 0, n);
+        }
+    }
+
+    @Override
+    public MatchStream append(CharSequence csq) {
+        return csq == null ? append("null", 0, 4) : append(csq, 0, csq.length());
+    }
+
+    @Override
+    public MatchStream append(CharSequence csq, int start, int end) {
+        if (csq == null) return append("null", start, end);
+        if (csq instanceof String) {
+            write((String) csq, start, end - start);
+            return this;
+        }
+        char[] buf = chunk();
+        while (start < end) {
+            int n = Math.min(CHUNK, end - start);
+            for (int i = 0; i < n; i++) {
+                buf[i] = csq.charAt(start + i);
+            }
+            write(buf, 0, n);
+            start += n;
+        }
+        return this;
+    }
+
+    @Override
+    public MatchStream append(char c) {
+        write(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    /** Per-keyword counts of everything written so far; the stream must not be written to afterwards. */
+    public int[] finish() {
+        if (mode == FUZZY && written > 0) {
+            endWord();
+        }
+        int[] result = new int[counts.length];
+        for (int k = 0; k < result.length; k++) {
+            switch (mode) {
+                case EXACT:
+                    result[k] = counts[k];
+                    break;
+                case FUZZY:
+                    result[k] = simpleCounts[k] > 0 ? simpleCounts[k] : fuzzyCounts[k];
+                    break;
+                default:
+                    // Case-insensitive, falling back to the diacritic/punctuation-insensitive count
+                    // for keywords that were not found at all.
+                    result[k] = counts[k] > 0 ? counts[k] : simpleCounts[k];
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /** Discards everything written so far, e.g. when an extractor falls back to another parse. */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(simpleCounts, 0);
+        Arrays.fill(fuzzyCounts, 0);
+        Arrays.fill(nextFree, 0);
+        Arrays.fill(simpleNextFree, 0);
+        word.setLength(0);
+        state = AhoCorasick.ROOT;
+        simpleState = AhoCorasick.ROOT;
+        pos = 0;
+        simplePos = 0;
+        written = 0;
+    }
+
+    private char[] chunk() {
+        if (chunk == null) chunk = new char[CHUNK];
+        return chunk;
+    }
+
+    private void scanExact(char[] buf, int off, int end) {
+        AhoCorasick automaton = query.literal;
+        int s = state;
+        long p = pos;
+        for (int i = off; i < end; i++) {
+            s = automaton.next(s, buf[i]);
+            record(automaton, s, ++p, counts, nextFree);
+        }
+        state = s;
+        pos = p;
+    }
+
+    private void scanDefault(char[] buf, int off, int end) {
+        AhoCorasick literal = query.literal;
+        AhoCorasick simplified = query.simplified;
+        int s = state;
+        int simple = simpleState;
+        long p = pos;
+        long simpleP = simplePos;
+        for (int i = off; i < end; i++) {
+            char c = buf[i];
+            s = literal.next(s, MatchEngine.foldCase(c));
+            record(literal, s, ++p, counts, nextFree);
+
+            char folded = TextFolding.fold(c);
+            if (folded != TextFolding.SEPARATOR && folded != TextFolding.DROPPED) {
+                simple = simplified.next(simple, folded);
+                record(simplified, simple, ++simpleP, simpleCounts, simpleNextFree);
+            }
+        }
+        state = s;
+        simpleState = simple;
+        pos = p;
+        simplePos = simpleP;
+    }
+
+    private void scanFuzzy(char[] buf, int off, int end) {
+        AhoCorasick simplified = query.simplified;
+        // One past the longest word that can match: longer words only need to be known as too long.
+        int wordCap = query.maxFuzzyLength + 1;
+        for (int i = off; i < end; i++) {
+            char folded = TextFolding.fold(buf[i]);
+            if (folded == TextFolding.DROPPED) continue;
+            if (folded == TextFolding.SEPARATOR) {
+                endWord();
+                continue;
+            }
+            simpleState = simplified.next(simpleState, folded);
+            record(simplified, simpleState, ++simplePos, simpleCounts, simpleNextFree);
+            if (word.length() < wordCap) word.append(folded);
+        }
+    }
+
+    private void endWord() {
+        int length = word.length();
+        if (length >= query.minFuzzyLength && length <= query.maxFuzzyLength && fuzzyPending()) {
+            long[] verdict = fuzzyVerdict(word, query);
+            for (int k = 0; k < fuzzyCounts.length; k++) {
+                if (simpleCounts[k] == 0 && (verdict[k >>> 6] & (1L << k)) != 0) {
+                    fuzzyCounts[k]++;
+                }
+            }
+        }
+        word.setLength(0);
+    }
+
+    /** Whether some keyword still lacks a simplified match and so may be decided by its fuzzy count. */
+    private boolean fuzzyPending() {
+        for (int k = 0; k < simpleCounts.length; k++) {
+            if (simpleCounts[k] == 0 && !query.simplifiedKeywords[k].isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /** Bitmask of the keywords the word is a near-match for, answered from the shared cache when possible. */
+    private static long[] fuzzyVerdict(CharSequence word, CompiledQuery query) {
+        FuzzyWordCache cache = query.wordCache;
+        String key = null;
+        if (cache != null) {
+            key = word.toString();
+            long[] cached = cache.get(key);
+            if (cached != null) return cached;
+        }
+
+        FuzzyMatcher[] matchers = query.fuzzyMatchers;
+        long[] verdict = new long[(matchers.length + 63) >>> 6];
+        for (int k = 0; k < matchers.length; k++) {
+            if (!query.simplifiedKeywords[k].isEmpty() && matchers[k].matches(word)) {
+                verdict[k >>> 6] |= 1L << k;
+            }
+        }
+        if (cache != null) {
+            cache.put(key, verdict);
+        }
+        return verdict;
+    }
+
+    /** Counts the patterns ending at {@code end}, skipping any that overlap that pattern's previous match. */
+    private static void record(AhoCorasick automaton, int state, long end, int[] counts, long[] nextFree) {
+        int[] matches = automaton.matches(state);
+        for (int pattern : matches) {
+            if (end - automaton.patternLength(pattern) >= nextFree[pattern]) {
+                counts[pattern]++;
+                nextFree[pattern] = end;
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.webgrep.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded on-disk store of response bodies and their validators. Bodies are content-addressed
+ * (file name = SHA-256 of the bytes), so pages with identical content share one file. The URL
+ * index is kept in memory in LRU order and evicted once the bodies exceed the size limit. Every
+ * change to it is appended to a log as it happens; the log is folded into the index file on open,
+ * on {@link #close()} and whenever it outgrows the index, so an unclean exit loses at most a torn
+ * last record. Body files no longer referenced by the index (and half-written files) are removed
+ * on open, so a crash never leaks disk space for more than one run.
+ * <p>
+ * Thread-safe. A body is written outside the lock, but a hash being written is pinned so that a
+ * concurrent eviction cannot delete its file.
+ */
+public class ResponseCache implements AutoCloseable {
+    private static final int MAGIC = 0x57474331; // "WGC1"
+    private static final String INDEX = "index.bin";
+    private static final String LOG = "index.log";
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    /** The log is folded into the index once it has this many records, or twice as many as the index has entries. */
+    private static final int MIN_COMPACT_RECORDS = 4096;
+    /** Keeps every string within what {@link DataOutputStream#writeUTF} can store. */
+    private static final int MAX_STRING_LENGTH = 16 * 1024;
+
+    /** What is remembered about one URL. */
+    public static final class Entry {
+        public final String finalUrl;
+        public final String contentType;
+        public final String etag;
+        public final String lastModified;
+        final String hash;
+        final long size;
+
+        Entry(String finalUrl, String contentType, String etag, String lastModified, String hash, long size) {
+            this.finalUrl = finalUrl;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        Entry withValidators(String etag, String lastModified) {
+            return new Entry(finalUrl, contentType, etag != null ? etag : this.etag,
+                    lastModified != null ? lastModified : this.lastModified, hash, size);
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(1024, 0.75f, true);
+    /** Body hash -> number of index entries pointing at it. */
+    private final Map<String, Integer> references = new HashMap<>();
+    /** Body hash -> number of {@link #put} calls writing it right now; such files are never deleted. */
+    private final Map<String, Integer> writing = new HashMap<>();
+    private long storedBytes;
+    private DataOutputStream log;
+    private int logRecords;
+
+    public ResponseCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dir.resolve("bodies"));
+            loadIndex();
+            replayLog();
+            compact();
+            removeUnreferencedBodies();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open response cache in " + dir, e);
+        }
+    }
+
+    public synchronized Entry get(String url) {
+        return index.get(url);
+    }
+
+    /** Reads the cached body, or returns {@code null} if the file has gone missing. */
+    public byte[] body(Entry entry) throws IOException {
+        try {
+            return Files.readAllBytes(bodyPath(entry.hash));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Stores a fresh response. Does nothing for responses without validators, which could never be revalidated. */
+    public void put(String url, String finalUrl, String contentType, String etag, String lastModified, byte[] body) throws IOException {
+        if (etag == null && lastModified == null || body.length > maxBytes
+                || tooLong(url) || tooLong(finalUrl) || tooLong(contentType) || tooLong(etag) || tooLong(lastModified)) {
+            return;
+        }
+        String hash = sha256(body);
+        Path path = bodyPath(hash);
+        synchronized (this) {
+            writing.merge(hash, 1, Integer::sum);
+        }
+        try {
+            if (!Files.exists(path)) {
+                Files.createDirectories(path.getParent());
+                Path tmp = Files.createTempFile(dir, "body", ".tmp");
+                Files.write(tmp, body);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                unpin(hash);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            unpin(hash);
+            Entry entry = new Entry(finalUrl, contentType, etag, lastModified, hash, body.length);
+            Entry previous = index.put(url, entry);
+            reference(hash, body.length);
+            appendPut(url, entry);
+            List<String> unreferenced = new ArrayList<>();
+            if (previous != null) release(previous, unreferenced);
+            evict(unreferenced);
+            deleteBodies(unreferenced);
+            compactIfLogLong();
+        }
+    }
+
+    /** Records validators returned with a 304 and marks the entry as recently used. */
+    public synchronized void revalidated(String url, String etag, String lastModified) {
+        Entry entry = index.get(url);
+        if (entry != null && (etag != null || lastModified != null)
+                && !tooLong(etag) && !tooLong(lastModified)) {
+            Entry updated = entry.withValidators(etag, lastModified);
+            index.put(url, updated);
+            appendPut(url, updated);
+            compactIfLogLong();
+        }
+    }
+
+    public synchronized void remove(String url) {
+        Entry entry = index.remove(url);
+        if (entry == null) return;
+        appendRemove(url);
+        List<String> unreferenced = new ArrayList<>();
+        release(entry, unreferenced);
+        deleteBodies(unreferenced);
+        compactIfLogLong();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            compact();
+            log.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write response cache index in " + dir, e);
+        }
+    }
+
+    /** Writes the whole index to its file and starts an empty log. */
+    private void compact() throws IOException {
+        if (log != null) log.close();
+        writeIndex();
+        log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(LOG),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+        logRecords = 0;
+    }
+
+    private void writeIndex() throws IOException {
+        Path tmp = Files.createTempFile(dir, "index", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(index.size());
+            // Least recently used first, so loading restores the same order.
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                writeEntry(out, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, dir.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void appendPut(String url, Entry entry) {
+        try {
+            log.writeByte(PUT);
+            writeEntry(log, url, entry);
+            appended();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write response cache log in " + dir, e);
+        }
+    }
+
+    private void appendRemove(String url) {
+        try {
+            log.writeByte(REMOVE);
+            writeString(log, url);
+            appended();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write response cache log in " + dir, e);
+        }
+    }
+
+    /** Pushes the record to the file, so killing the process loses nothing the cache has acknowledged. */
+    private void appended() throws IOException {
+        log.flush();
+        logRecords++;
+    }
+
+    private void compactIfLogLong() {
+        if (logRecords < Math.max(MIN_COMPACT_RECORDS, 2 * index.size())) return;
+        try {
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write response cache index in " + dir, e);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path file = dir.resolve(INDEX);
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = readString(in);
+                Entry entry = readEntry(in);
+                index.put(url, entry);
+                reference(entry.hash, entry.size);
+            }
+        } catch (IOException e) {
+            // A damaged index only costs refetches: start over.
+            index.clear();
+            references.clear();
+            storedBytes = 0;
+        }
+    }
+
+    /** Applies the changes logged since the index was last written. A torn last record is dropped. */
+    private void replayLog() throws IOException {
+        Path file = dir.resolve(LOG);
+        if (!Files.exists(file)) return;
+        List<String> unreferenced = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int type = in.read();
+                if (type == PUT) {
+                    String url = readString(in);
+                    Entry entry = readEntry(in);
+                    reference(entry.hash, entry.size);
+                    Entry previous = index.put(url, entry);
+                    if (previous != null) release(previous, unreferenced);
+                } else if (type == REMOVE) {
+                    Entry previous = index.remove(readString(in));
+                    if (previous != null) release(previous, unreferenced);
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Killed halfway through a record: everything before it stands.
+        }
+    }
+
+    private void removeUnreferencedBodies() throws IOException {
+        Set<String> live = new HashSet<>(references.keySet());
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".tmp")).forEach(path -> path.toFile().delete());
+        }
+        try (Stream<Path> files = Files.walk(dir.resolve("bodies"))) {
+            files.filter(Files::isRegularFile)
+                    .filter(path -> !live.contains(path.getFileName().toString()))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void reference(String hash, long size) {
+        if (references.merge(hash, 1, Integer::sum) == 1) {
+            storedBytes += size;
+        }
+    }
+
+    private void release(Entry entry, List<String> unreferenced) {
+        Integer count = references.get(entry.hash);
+        if (count == null) return;
+        if (count == 1) {
+            references.remove(entry.hash);
+            storedBytes -= entry.size;
+            unreferenced.add(entry.hash);
+        } else {
+            references.put(entry.hash, count - 1);
+        }
+    }
+
+    private void evict(List<String> unreferenced) {
+        Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+        while (storedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> e = eldest.next();
+            eldest.remove();
+            appendRemove(e.getKey());
+            release(e.getValue(), unreferenced);
+        }
+    }
+
+    /** Deletes body files that lost their last reference, unless a {@link #put} is storing the same bytes again. */
+    private void deleteBodies(List<String> hashes) {
+        for (String hash : hashes) {
+            if (!references.containsKey(hash) && !writing.containsKey(hash)) {
+                bodyPath(hash).toFile().delete();
+            }
+        }
+    }
+
+    private void unpin(String hash) {
+        writing.computeIfPresent(hash, (h, count) -> count == 1 ? null : count - 1);
+    }
+
+    private Path bodyPath(String hash) {
+        return dir.resolve("bodies").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > MAX_STRING_LENGTH;
+    }
+
+    private static void writeEntry(DataOutputStream out, String url, Entry entry) throws IOException {
+        writeString(out, url);
+        writeString(out, entry.finalUrl);
+        writeString(out, entry.contentType);
+        writeString(out, entry.etag);
+        writeString(out, entry.lastModified);
+        writeString(out, entry.hash);
+        out.writeLong(entry.size);
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        return new Entry(readString(in), readString(in), readString(in), readString(in), readString(in), in.readLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,100 @@
+package com.webgrep.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches robots.txt once per origin (scheme, host and port) and keeps the compiled rules for the
+ * rest of the crawl. The first thread to need an origin downloads its file, or hands the download
+ * to an executor with {@link #lookup}; threads that need the same origin meanwhile wait for that
+ * download instead of starting their own.
+ * <p>
+ * A 4xx answer means no restrictions and a 5xx or 429 means no access, as RFC 9309 prescribes. A
+ * download that fails outright allows everything; fetching the page itself then reports the
+ * real problem.
+ */
+class RobotsCache {
+    /** Product token matched against {@code User-agent} lines. */
+    static final String AGENT = "WebGrep";
+
+    private final Fetcher fetcher;
+    private final Map<String, CompletableFuture<RobotsTxt>> byOrigin = new ConcurrentHashMap<>();
+
+    RobotsCache(Fetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    RobotsTxt rules(String url) throws InterruptedException {
+        String origin = origin(url);
+        CompletableFuture<RobotsTxt> created = new CompletableFuture<>();
+        CompletableFuture<RobotsTxt> existing = byOrigin.putIfAbsent(origin, created);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                return RobotsTxt.allowAll();
+            }
+        }
+        RobotsTxt rules = RobotsTxt.allowAll();
+        try {
+            rules = download(origin);
+        } finally {
+            created.complete(rules);
+        }
+        return rules;
+    }
+
+    /** The rules for {@code url}'s origin, downloading them on {@code executor} if no one has started yet. */
+    CompletableFuture<RobotsTxt> lookup(String url, Executor executor) {
+        String origin = origin(url);
+        CompletableFuture<RobotsTxt> created = new CompletableFuture<>();
+        CompletableFuture<RobotsTxt> existing = byOrigin.putIfAbsent(origin, created);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(() -> {
+            RobotsTxt rules = RobotsTxt.allowAll();
+            try {
+                rules = download(origin);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                created.complete(rules);
+            }
+        });
+        return created;
+    }
+
+    private RobotsTxt download(String origin) throws InterruptedException {
+        FetchResponse response;
+        try {
+            response = fetcher.fetch(origin + "/robots.txt");
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            return RobotsTxt.allowAll();
+        }
+        int status = response.statusCode();
+        if (status == 429 || status >= 500) return RobotsTxt.disallowAll();
+        if (!response.isSuccess() || response.body() == null) return RobotsTxt.allowAll();
+        return RobotsTxt.parse(new String(response.body(), StandardCharsets.UTF_8), AGENT);
+    }
+
+    /** {@code https://host:port} of a normalized URL. */
+    static String origin(String url) {
+        int authority = url.indexOf("://");
+        int slash = authority < 0 ? -1 : url.indexOf('/', authority + 3);
+        return slash < 0 ? url : url.substring(0, slash);
+    }
+
+    /** The path and query of a normalized URL, which robots rules are matched against. */
+    static String pathAndQuery(String url) {
+        String path = url.substring(origin(url).length());
+        int hash = path.indexOf('#');
+        return hash < 0 ? path : path.substring(0, hash);
+    }
+}
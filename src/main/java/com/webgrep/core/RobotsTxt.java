@@ -0,0 +1,288 @@
+package com.webgrep.core;
+
+import com.webgrep.utils.UrlUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of one robots.txt for one user agent (RFC 9309), compiled for matching every URL of a
+ * host. The groups naming the agent are used, or the {@code *} groups when none does. The longest
+ * matching pattern decides, and {@code allow} wins a tie. Plain prefixes go into a character trie
+ * walked once along the path. Patterns with {@code *} or a trailing {@code $} are kept apart,
+ * longest first, and are only tried when they could beat the prefix found in the trie.
+ * <p>
+ * Immutable and safe to share between fetch threads.
+ */
+public final class RobotsTxt {
+    private static final RobotsTxt ALLOW_ALL = new RobotsTxt(new Node(), Collections.emptyList(), -1, Collections.emptyList());
+    private static final RobotsTxt DISALLOW_ALL = compile(List.of(new Rule("/", false)), -1, Collections.emptyList());
+
+    private static final class Rule {
+        final String pattern;
+        final boolean allow;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+    }
+
+    /** Trie node; children are kept sorted by character for binary search. */
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        /** 0 when no pattern ends here, 1 for disallow, 2 for allow (allow wins a duplicate). */
+        byte verdict;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node add(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+            i = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newKeys[i] = c;
+            newChildren[i] = new Node();
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+
+    private final Node prefixes;
+    private final List<Rule> wildcards;
+    private final long crawlDelayMs;
+    private final List<String> sitemaps;
+
+    private RobotsTxt(Node prefixes, List<Rule> wildcards, long crawlDelayMs, List<String> sitemaps) {
+        this.prefixes = prefixes;
+        this.wildcards = wildcards;
+        this.crawlDelayMs = crawlDelayMs;
+        this.sitemaps = sitemaps;
+    }
+
+    /** For a host without a robots.txt, or one that answered with a 4xx. */
+    public static RobotsTxt allowAll() {
+        return ALLOW_ALL;
+    }
+
+    /** For a host whose robots.txt could not be read because of a server error: RFC 9309 says assume the worst. */
+    public static RobotsTxt disallowAll() {
+        return DISALLOW_ALL;
+    }
+
+    /** Parses a robots.txt for the agent whose product token is {@code agent}, e.g. {@code WebGrep}. */
+    public static RobotsTxt parse(String text, String agent) {
+        List<Rule> specific = new ArrayList<>();
+        List<Rule> generic = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        double specificDelay = -1;
+        double genericDelay = -1;
+        boolean foundSpecific = false;
+        boolean groupSpecific = false;
+        boolean groupGeneric = false;
+        boolean inAgentLines = false;
+
+        for (String rawLine : text.split("\r\n|\r|\n")) {
+            int hash = rawLine.indexOf('#');
+            String line = (hash < 0 ? rawLine : rawLine.substring(0, hash)).strip();
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            String key = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).strip();
+
+            switch (key) {
+                case "user-agent":
+                    if (!inAgentLines) {
+                        // A user-agent line after rules starts a new group.
+                        groupSpecific = false;
+                        groupGeneric = false;
+                        inAgentLines = true;
+                    }
+                    if (value.equals("*")) {
+                        groupGeneric = true;
+                    } else if (productToken(value).equalsIgnoreCase(agent)) {
+                        groupSpecific = true;
+                        foundSpecific = true;
+                    }
+                    break;
+                case "allow":
+                case "disallow":
+                    inAgentLines = false;
+                    String pattern = normalizePattern(value);
+                    if (pattern.isEmpty()) break;
+                    Rule rule = new Rule(pattern, key.equals("allow"));
+                    if (groupSpecific) specific.add(rule);
+                    if (groupGeneric) generic.add(rule);
+                    break;
+                case "crawl-delay":
+                    inAgentLines = false;
+                    double seconds = parseSeconds(value);
+                    if (seconds >= 0 && groupSpecific) specificDelay = seconds;
+                    if (seconds >= 0 && groupGeneric) genericDelay = seconds;
+                    break;
+                case "sitemap":
+                    if (!value.isEmpty()) sitemaps.add(value);
+                    break;
+                default:
+                    inAgentLines = false;
+            }
+        }
+
+        double delay = foundSpecific ? specificDelay : genericDelay;
+        return compile(foundSpecific ? specific : generic, delay < 0 ? -1 : Math.round(delay * 1000),
+                Collections.unmodifiableList(sitemaps));
+    }
+
+    private static RobotsTxt compile(List<Rule> rules, long crawlDelayMs, List<String> sitemaps) {
+        Node root = new Node();
+        List<Rule> wildcards = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.pattern.indexOf('*') >= 0 || rule.pattern.endsWith("$")) {
+                wildcards.add(rule);
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < rule.pattern.length(); i++) {
+                node = node.add(rule.pattern.charAt(i));
+            }
+            node.verdict = (byte) Math.max(node.verdict, rule.allow ? 2 : 1);
+        }
+        wildcards.sort(Comparator.comparingInt((Rule rule) -> rule.pattern.length()).reversed()
+                .thenComparing(rule -> !rule.allow));
+        return new RobotsTxt(root, wildcards, crawlDelayMs, sitemaps);
+    }
+
+    /**
+     * Whether a URL may be fetched; {@code pathAndQuery} is that of a canonical URL (see
+     * {@link UrlUtils}) and starts at the path, e.g. {@code /a/b?x=1}.
+     */
+    public boolean isAllowed(String pathAndQuery) {
+        if (pathAndQuery.isEmpty()) pathAndQuery = "/";
+        pathAndQuery = encodeNonAscii(pathAndQuery);
+        if (pathAndQuery.equals("/robots.txt")) return true;
+        int bestLength = -1;
+        boolean bestAllow = true;
+        Node node = prefixes;
+        for (int i = 0; node != null; i++) {
+            if (node.verdict != 0) {
+                bestLength = i;
+                bestAllow = node.verdict == 2;
+            }
+            if (i == pathAndQuery.length()) break;
+            node = node.child(pathAndQuery.charAt(i));
+        }
+        for (Rule rule : wildcards) {
+            int length = rule.pattern.length();
+            if (length < bestLength || length == bestLength && (bestAllow || !rule.allow)) break;
+            if (matches(rule.pattern, pathAndQuery)) {
+                bestLength = length;
+                bestAllow = rule.allow;
+                break;
+            }
+        }
+        return bestAllow;
+    }
+
+    /** The Crawl-delay for the agent in milliseconds, or -1 when none is given. */
+    public long crawlDelayMs() {
+        return crawlDelayMs;
+    }
+
+    /** Sitemap URLs listed anywhere in the file. */
+    public List<String> sitemaps() {
+        return sitemaps;
+    }
+
+    /** Matches {@code pattern} against the start of {@code path}; {@code *} is any run of characters, a final {@code $} the end. */
+    static boolean matches(String pattern, String path) {
+        boolean anchored = pattern.endsWith("$");
+        int patternEnd = anchored ? pattern.length() - 1 : pattern.length();
+        int n = path.length();
+        int p = 0;
+        int s = 0;
+        int star = -1;
+        int mark = 0;
+        while (true) {
+            if (p < patternEnd && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = s;
+                continue;
+            }
+            if (p == patternEnd) {
+                if (!anchored || s == n) return true;
+            } else if (s < n && pattern.charAt(p) == path.charAt(s)) {
+                p++;
+                s++;
+                continue;
+            }
+            if (star < 0 || mark >= n) return false;
+            p = star + 1;
+            s = ++mark;
+        }
+    }
+
+    private static String productToken(String agent) {
+        int end = 0;
+        while (end < agent.length() && (Character.isLetterOrDigit(agent.charAt(end)) || agent.charAt(end) == '-' || agent.charAt(end) == '_')) {
+            end++;
+        }
+        return agent.substring(0, end);
+    }
+
+    /**
+     * Brings a pattern into the form of canonical URLs, so {@code /%7Euser} matches {@code /~user}:
+     * escapes are normalized by {@link UrlUtils#normalizePathAndQuery}, then non-ASCII characters
+     * are percent-encoded as UTF-8, as they are in the paths matched against it.
+     */
+    private static String normalizePattern(String value) {
+        if (value.isEmpty()) return value;
+        if (value.charAt(0) != '/' && value.charAt(0) != '*') value = "/" + value;
+        return encodeNonAscii(UrlUtils.normalizePathAndQuery(value));
+    }
+
+    /** Percent-encodes non-ASCII characters as UTF-8; canonical URLs may carry them either way. */
+    private static String encodeNonAscii(String value) {
+        int first = 0;
+        while (first < value.length() && value.charAt(first) <= 0x7F) first++;
+        if (first == value.length()) return value;
+        StringBuilder sb = new StringBuilder(value.length() + 16).append(value, 0, first);
+        for (int i = first; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c > 0x7F) {
+                int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                for (byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                            .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+                }
+                i = end - 1;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double parseSeconds(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return Double.isFinite(seconds) && seconds >= 0 ? seconds : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.webgrep.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of 64-bit SimHash fingerprints answering "is any stored fingerprint within {@code k} bits
+ * of this one?". The fingerprint is cut into {@code k + 1} blocks; two fingerprints that differ in
+ * at most {@code k} bits agree exactly on at least one block, so each query only compares against
+ * the fingerprints sharing a block value instead of scanning them all.
+ * <p>
+ * Not thread-safe: used by the crawl thread at commit time.
+ */
+public class SimHashIndex {
+    private final int maxDistance;
+    private final int[] shifts;
+    private final long[] masks;
+    private final Map<Long, long[]>[] tables;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public SimHashIndex(int maxDistance) {
+        this.maxDistance = maxDistance;
+        int blocks = maxDistance + 1;
+        this.shifts = new int[blocks];
+        this.masks = new long[blocks];
+        this.tables = new Map[blocks];
+        int start = 0;
+        for (int b = 0; b < blocks; b++) {
+            int end = 64 * (b + 1) / blocks;
+            shifts[b] = start;
+            masks[b] = end - start == 64 ? -1L : (1L << (end - start)) - 1;
+            tables[b] = new HashMap<>();
+            start = end;
+        }
+    }
+
+    /** Returns {@code true} if some stored fingerprint is within the distance of {@code fingerprint}. */
+    public boolean containsNear(long fingerprint) {
+        for (int b = 0; b < tables.length; b++) {
+            long[] bucket = tables[b].get(block(fingerprint, b));
+            if (bucket == null) continue;
+            int count = (int) bucket[0];
+            for (int i = 1; i <= count; i++) {
+                if (Long.bitCount(bucket[i] ^ fingerprint) <= maxDistance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void add(long fingerprint) {
+        for (int b = 0; b < tables.length; b++) {
+            // Bucket layout: [count, fingerprints...], grown by doubling.
+            tables[b].merge(block(fingerprint, b), new long[] {1, fingerprint}, (bucket, single) -> {
+                int count = (int) bucket[0];
+                if (count + 1 == bucket.length) {
+                    bucket = Arrays.copyOf(bucket, bucket.length * 2);
+                }
+                bucket[count + 1] = fingerprint;
+                bucket[0] = count + 1;
+                return bucket;
+            });
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long block(long fingerprint, int b) {
+        return (fingerprint >>> shifts[b]) & masks[b];
+    }
+}
@@ -0,0 +1,137 @@
+package com.webgrep.core;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the page URLs listed in sitemaps (sitemaps.org protocol), following sitemap indexes to
+ * the sitemaps they list. Each file is parsed with StAX as it is decompressed, gzip detected by
+ * its magic bytes, so a 50,000-URL sitemap never exists as a tree or a list in memory; URLs are
+ * handed to the consumer one at a time, and reading stops as soon as it declines one.
+ * <p>
+ * DTDs and external entities are disabled. A sitemap that cannot be fetched or parsed is
+ * skipped; the URLs read from it before the error are kept.
+ */
+class SitemapReader {
+    /** Indexes should not nest at all; a few levels are tolerated, loops and deeper chains are not. */
+    private static final int MAX_NESTING = 4;
+
+    private final Fetcher fetcher;
+    private final XMLInputFactory factory;
+
+    SitemapReader(Fetcher fetcher) {
+        this.fetcher = fetcher;
+        this.factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    private static final class Pending {
+        final String url;
+        final int level;
+
+        Pending(String url, int level) {
+            this.url = url;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Reads the sitemaps at {@code roots} and those their indexes list, breadth first, passing
+     * each page URL to {@code page} until it returns {@code false}. Returns the number of sitemap
+     * files read.
+     */
+    int read(Iterable<String> roots, Predicate<String> page) throws InterruptedException {
+        ArrayDeque<Pending> queue = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        for (String root : roots) {
+            if (seen.add(root)) queue.add(new Pending(root, 0));
+        }
+        int files = 0;
+        while (!queue.isEmpty()) {
+            Pending next = queue.poll();
+            byte[] body = download(next.url);
+            if (body == null) continue;
+            files++;
+            boolean more;
+            try (InputStream in = open(body)) {
+                more = parse(in, page, nested -> {
+                    if (next.level + 1 < MAX_NESTING && seen.add(nested)) queue.add(new Pending(nested, next.level + 1));
+                });
+            } catch (IOException | XMLStreamException e) {
+                continue;
+            }
+            if (!more) break;
+        }
+        return files;
+    }
+
+    private byte[] download(String url) throws InterruptedException {
+        try {
+            FetchResponse response = fetcher.fetch(url);
+            return response.isSuccess() ? response.body() : null;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static InputStream open(byte[] body) throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        if (body.length >= 2 && (body[0] & 0xFF) == 0x1F && (body[1] & 0xFF) == 0x8B) {
+            in = new BufferedInputStream(new GZIPInputStream(in, 8192), 8192);
+        }
+        return in;
+    }
+
+    /**
+     * Streams one file: {@code <url><loc>} entries go to {@code page}, {@code <sitemap><loc>}
+     * entries to {@code nested}. Returns {@code false} once {@code page} has declined a URL.
+     */
+    boolean parse(InputStream in, Predicate<String> page, Consumer<String> nested) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            String parent = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event != XMLStreamConstants.START_ELEMENT) continue;
+                String name = localName(reader.getLocalName());
+                if (name.equals("url") || name.equals("sitemap")) {
+                    parent = name;
+                } else if (name.equals("loc") && parent != null) {
+                    String loc = reader.getElementText().strip();
+                    if (loc.isEmpty()) continue;
+                    if (parent.equals("sitemap")) {
+                        nested.accept(loc);
+                    } else if (!page.test(loc)) {
+                        return false;
+                    }
+                    parent = null;
+                }
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Without namespace awareness a prefixed element keeps its prefix, e.g. {@code sm:loc}. */
+    private static String localName(String name) {
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+}
@@ -0,0 +1,166 @@
+package com.webgrep.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Disk-backed FIFO of frontier entries. Records are appended to memory-mapped segment files in a
+ * private directory under {@code parent} and read back in the order they were written; a segment
+ * is deleted as soon as it has been fully read. Only the mappings live off-heap, so the queue can
+ * hold far more URLs than the heap could.
+ * <p>
+ * The directory is created on the first {@link #add} and removed by {@link #close()}.
+ * Not thread-safe.
+ */
+public class SpillQueue implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePos;
+        int readPos;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path parent;
+    private final int segmentBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private Path dir;
+    private long nextSegment;
+    private long size;
+    private long totalAdded;
+
+    public SpillQueue(Path parent) {
+        this(parent, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public SpillQueue(Path parent, int segmentBytes) {
+        this.parent = parent;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** Record layout: seq (8), depth (4), host length (4), host, url length (4), url; strings in UTF-8. */
+    public void add(long seq, String host, String url, int depth) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 4 + 4 + hostBytes.length + 4 + urlBytes.length;
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePos + length > tail.buffer.capacity()) {
+            tail = newSegment(Math.max(segmentBytes, length));
+        }
+        MappedByteBuffer buffer = tail.buffer;
+        buffer.position(tail.writePos);
+        buffer.putLong(seq);
+        buffer.putInt(depth);
+        buffer.putInt(hostBytes.length);
+        buffer.put(hostBytes);
+        buffer.putInt(urlBytes.length);
+        buffer.put(urlBytes);
+        tail.writePos = buffer.position();
+        size++;
+        totalAdded++;
+    }
+
+    /** Removes and returns the oldest entry, or {@code null} if the queue is empty. */
+    public FrontierEntry poll() {
+        Segment head = segments.peekFirst();
+        if (head == null || size == 0) {
+            return null;
+        }
+        if (head.readPos == head.writePos) {
+            // Fully read and no longer written to: the next segment holds the oldest record.
+            segments.pollFirst();
+            delete(head.path);
+            head = segments.peekFirst();
+        }
+
+        MappedByteBuffer buffer = head.buffer;
+        buffer.position(head.readPos);
+        long seq = buffer.getLong();
+        int depth = buffer.getInt();
+        String host = readString(buffer);
+        String url = readString(buffer);
+        head.readPos = buffer.position();
+        size--;
+
+        if (head.readPos == head.writePos && segments.size() > 1) {
+            segments.pollFirst();
+            delete(head.path);
+        }
+        return new FrontierEntry(seq, url, host, depth);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /** Entries ever written to disk. */
+    public long totalAdded() {
+        return totalAdded;
+    }
+
+    @Override
+    public void close() {
+        Segment segment;
+        while ((segment = segments.pollFirst()) != null) {
+            delete(segment.path);
+        }
+        if (dir != null) {
+            delete(dir);
+            dir = null;
+        }
+        size = 0;
+    }
+
+    private Segment newSegment(int capacity) {
+        try {
+            if (dir == null) {
+                Files.createDirectories(parent);
+                dir = Files.createTempDirectory(parent, "webgrep-frontier-");
+            }
+            Path path = dir.resolve(String.format("segment-%06d.bin", nextSegment++));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed; untouched pages never hit the disk.
+                Segment segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+                segments.addLast(segment);
+                return segment;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill frontier to " + parent, e);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped on some platforms; fall back to cleanup at exit.
+            path.toFile().deleteOnExit();
+        }
+    }
+}
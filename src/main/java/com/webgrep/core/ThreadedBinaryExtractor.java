@@ -0,0 +1,91 @@
+package com.webgrep.core;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs Tika on a dedicated pool of worker threads. The caller waits at most the deadline; on
+ * timeout the worker is interrupted and, because many parsers ignore interrupts, a replacement
+ * thread is added so a hung document cannot shrink the pool. Replacements are capped at the
+ * pool size: beyond that, stuck workers have to finish before capacity comes back. Use
+ * {@link ForkedBinaryExtractor} when documents must be killable.
+ */
+public class ThreadedBinaryExtractor implements BinaryExtractor {
+    private final ContentExtractor extractor;
+    private final long timeoutMs;
+    private final int maxChars;
+    private final int workers;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger replacements = new AtomicInteger();
+
+    public ThreadedBinaryExtractor(ContentExtractor extractor, int workers, long timeoutMs, int maxChars) {
+        this.extractor = extractor;
+        this.workers = workers;
+        this.timeoutMs = timeoutMs;
+        this.maxChars = maxChars;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "webgrep-extract-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int[] match(byte[] body, String url, String contentType, CompiledQuery query) throws ExtractionException, InterruptedException {
+        AtomicLong startedAt = new AtomicLong();
+        Future<int[]> result = pool.submit(() -> {
+            startedAt.set(System.nanoTime());
+            MatchStream matches = new MatchStream(query);
+            extractor.writeTextFromBinary(body, url, contentType, maxChars, matches);
+            return matches.finish();
+        });
+        try {
+            if (timeoutMs <= 0) {
+                return result.get();
+            }
+            // The deadline runs from the moment a worker picks the document up, not from submission.
+            long waitMs = timeoutMs;
+            while (true) {
+                try {
+                    return result.get(waitMs, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    long started = startedAt.get();
+                    long elapsedMs = started == 0 ? 0 : (System.nanoTime() - started) / 1_000_000L;
+                    if (started != 0 && elapsedMs >= timeoutMs) {
+                        result.cancel(true);
+                        replaceStuckWorker();
+                        throw new ExtractionException("Extraction timed out after " + timeoutMs + " ms: " + url);
+                    }
+                    waitMs = Math.max(1, timeoutMs - elapsedMs);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new ExtractionException("Extraction failed: " + url, e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        }
+    }
+
+    private void replaceStuckWorker() {
+        if (replacements.incrementAndGet() <= workers) {
+            synchronized (pool) {
+                int size = pool.getMaximumPoolSize() + 1;
+                pool.setMaximumPoolSize(size);
+                pool.setCorePoolSize(size);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,27 @@
+package com.webgrep.core;
+
+import com.webgrep.config.CliOptions;
+
+/**
+ * Set of URLs the crawler has already discovered. Owned by the crawl thread.
+ */
+public interface VisitedSet {
+
+    /** Adds the URL and returns {@code true} if it had not been seen before. */
+    boolean add(String url);
+
+    boolean contains(String url);
+
+    int size();
+
+    /** Approximate heap used by the set itself. */
+    long memoryBytes();
+
+    static VisitedSet create(CliOptions options) {
+        return switch (options.getDedupe()) {
+            case "fingerprint" -> new FingerprintVisitedSet(options.getMaxPages());
+            case "bloom" -> new BloomVisitedSet(options.getMaxPages(), options.getBloomFpp());
+            default -> new ExactVisitedSet();
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.webgrep.reporting;
+
+/**
+ * Receives results while a crawl runs instead of after it. Pages are reported in the order they
+ * are committed, which is discovery order, and always from the crawl thread.
+ */
+public interface CrawlListener {
+    /** A page with at least one match; counts are per keyword, in keyword order. */
+    void matched(String url, int[] keywordCounts);
+
+    void blocked(String url, String reason);
+
+    /** Called every {@code --progress-interval-ms} while pages are committed; {@code queued} includes pages in flight. */
+    void progress(CrawlResult result, long queued);
+}
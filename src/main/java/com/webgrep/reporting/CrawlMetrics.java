@@ -0,0 +1,130 @@
+package com.webgrep.reporting;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where a crawl spends its time, per phase of page processing, plus bytes downloaded per content
+ * type and the slowest pages with their breakdown. Written concurrently by the fetch and CPU
+ * threads; only created with {@code --metrics} or {@code --metrics-port}, so a crawl without
+ * them pays nothing.
+ */
+public final class CrawlMetrics {
+    public enum Phase {
+        /** DNS, connect, TLS and server time until the response headers. */
+        CONNECT,
+        /** Reading the body; the whole fetch when the backend cannot tell headers from body. */
+        DOWNLOAD,
+        /** Building the DOM, or the single pass of {@code --html-parser fast} (less matching). */
+        PARSE,
+        /** Walking the DOM for visible text (less matching). */
+        TEXT,
+        /** Keyword matching over the page text. */
+        MATCH,
+        /** Link extraction and resolution. */
+        LINKS,
+        /** PDF/Office extraction, including matching its text. */
+        TIKA,
+        /** A page from the start of its fetch to the end of its processing. */
+        PAGE;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** A page among the slowest, with the nanoseconds of each {@link Phase} by ordinal. */
+    public static final class SlowPage {
+        public final String url;
+        private final long[] phaseNanos;
+
+        SlowPage(String url, long[] phaseNanos) {
+            this.url = url;
+            this.phaseNanos = phaseNanos;
+        }
+
+        public long nanos(Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final Map<String, LongAdder> bytesByType = new ConcurrentHashMap<>();
+    private final int slowestLimit;
+    private final PriorityQueue<SlowPage> slowest = new PriorityQueue<>(Comparator.comparingLong(page -> page.nanos(Phase.PAGE)));
+    /** Total time a page needs to enter {@link #slowest} once it is full; read without the lock. */
+    private volatile long slowestThreshold;
+
+    public CrawlMetrics(int slowestLimit) {
+        this.slowestLimit = slowestLimit;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Per-phase nanoseconds of one page, filled in while it is processed and passed to {@link #record}. */
+    public static long[] newPage() {
+        return new long[PHASES.length];
+    }
+
+    /** Records a finished page; phases it did not go through are 0. */
+    public void record(String url, long[] phaseNanos) {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (phaseNanos[i] > 0) histograms[i].record(phaseNanos[i]);
+        }
+        long total = phaseNanos[Phase.PAGE.ordinal()];
+        if (slowestLimit <= 0 || total <= slowestThreshold) return;
+        synchronized (slowest) {
+            slowest.add(new SlowPage(url, phaseNanos.clone()));
+            if (slowest.size() > slowestLimit) {
+                slowest.poll();
+                slowestThreshold = slowest.peek().nanos(Phase.PAGE);
+            }
+        }
+    }
+
+    public void addBytes(String contentType, long bytes) {
+        bytesByType.computeIfAbsent(mediaType(contentType), type -> new LongAdder()).add(bytes);
+    }
+
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /** Bytes downloaded per media type, largest first. */
+    public Map<String, Long> bytesByContentType() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        bytesByType.forEach((type, bytes) -> entries.add(Map.entry(type, bytes.sum())));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** The slowest pages so far, slowest first. */
+    public List<SlowPage> slowest() {
+        List<SlowPage> pages;
+        synchronized (slowest) {
+            pages = new ArrayList<>(slowest);
+        }
+        pages.sort(Comparator.comparingLong((SlowPage page) -> page.nanos(Phase.PAGE)).reversed());
+        return pages;
+    }
+
+    private static String mediaType(String contentType) {
+        if (contentType == null || contentType.isBlank()) return "unknown";
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).strip().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,6 +1,9 @@
 package com.webgrep.reporting;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class CrawlResult {
@@ -9,28 +12,125 @@ public class CrawlResult {
         BLOCKED,
         PARSE_ERROR,
         SKIPPED_SIZE,
-        SKIPPED_TYPE
+        SKIPPED_TYPE,
+        /** Disallowed by the host's robots.txt, so never fetched. */
+        SKIPPED_ROBOTS
+    }
+
+    /** A host's effective request rate over the crawl, and where adaptive rate control left it. */
+    public static final class HostRate {
+        public final String host;
+        public final long requests;
+        public final double requestsPerSecond;
+        public final int connections;
+        public final long delayMs;
+        /** Responses that asked to slow down: 429, 503 or a timeout. */
+        public final int throttled;
+
+        public HostRate(String host, long requests, double requestsPerSecond, int connections, long delayMs, int throttled) {
+            this.host = host;
+            this.requests = requests;
+            this.requestsPerSecond = requestsPerSecond;
+            this.connections = connections;
+            this.delayMs = delayMs;
+            this.throttled = throttled;
+        }
     }
 
     public final Map<String, Integer> results = new LinkedHashMap<>();
+    public final Map<String, int[]> keywordResults = new LinkedHashMap<>();
     public final Map<String, String> blockedUrls = new LinkedHashMap<>();
     public final Map<ErrorType, Integer> errorCounts = new LinkedHashMap<>();
+    /** Links dropped or kept per URL filter rule, for the rules that decided any. */
+    public final Map<String, Long> filterHits = new LinkedHashMap<>();
+    /** The busiest hosts, busiest first. */
+    public final List<HostRate> hostRates = new ArrayList<>();
     public int visitedCount = 0;
     public int parsedCount = 0;
+    public int discoveredCount = 0;
+    public long dedupeMemoryBytes = 0;
+    public long frontierSpilled = 0;
+    public int resumedPages = 0;
+    public long httpCacheHits = 0;
+    public long httpCacheRevalidations = 0;
+    public long httpCacheBytesSaved = 0;
+    public long contentDedupeHits = 0;
+    public int nearDuplicatePages = 0;
+    public int retries = 0;
+    public int sitemapUrls = 0;
+    public long fuzzyCacheHits = 0;
+    public long fuzzyCacheMisses = 0;
+    public int matchedCount = 0;
+    public long totalMatches = 0;
+    /** Per-phase timings, with {@code --metrics} or {@code --metrics-port}; null otherwise. */
+    public CrawlMetrics metrics;
+
+
+    private final boolean retainUrls;
+    private CrawlListener listener;
+    private int[] keywordTotals = new int[0];
 
     public CrawlResult() {
+        this(true);
+    }
+
+    /**
+     * With {@code retainUrls} false, matched and blocked URLs only go to the listener and the
+     * URL maps stay empty; the counts and totals are kept either way.
+     */
+    public CrawlResult(boolean retainUrls) {
+        this.retainUrls = retainUrls;
         for (ErrorType type : ErrorType.values()) {
             errorCounts.put(type, 0);
         }
     }
 
+    public void setListener(CrawlListener listener) {
+        this.listener = listener;
+    }
+
     public void addMatch(String url, int count) {
-        results.put(url, count);
+        addMatch(url, new int[] {count});
+    }
+
+    /** Records per-keyword counts (in keyword order) and their total for a URL. */
+    public void addMatch(String url, int[] keywordCounts) {
+        int total = 0;
+        for (int count : keywordCounts) total += count;
+        if (keywordTotals.length < keywordCounts.length) {
+            keywordTotals = Arrays.copyOf(keywordTotals, keywordCounts.length);
+        }
+        for (int k = 0; k < keywordCounts.length; k++) {
+            keywordTotals[k] += keywordCounts[k];
+        }
+        matchedCount++;
+        totalMatches += total;
+        if (retainUrls) {
+            results.put(url, total);
+            keywordResults.put(url, keywordCounts.clone());
+        }
+        if (listener != null) {
+            listener.matched(url, keywordCounts);
+        }
+    }
+
+    public double dedupeBytesPerUrl() {
+        return discoveredCount == 0 ? 0 : (double) dedupeMemoryBytes / discoveredCount;
+    }
+
+    /** Total matches per keyword across all URLs, in keyword order. */
+    public int[] keywordTotals(int keywordCount) {
+        return Arrays.copyOf(keywordTotals, keywordCount);
     }
 
     public void addBlocked(String url, String reason) {
-        blockedUrls.put(url, reason);
+        if (retainUrls) {
+            blockedUrls.put(url, reason);
+        }
         incrementError(ErrorType.BLOCKED);
+        if (listener != null) {
+            listener.blocked(url, reason);
+        }
     }
 
     public void incrementError(ErrorType type) {
@@ -0,0 +1,88 @@
+package com.webgrep.reporting;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves {@link CrawlMetrics} in the Prometheus text format on {@code http://127.0.0.1:<port>/metrics}
+ * while a crawl runs. Bound to loopback only; the numbers are for whoever runs the crawl.
+ */
+public final class MetricsServer implements AutoCloseable {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final HttpServer server;
+    private final CrawlMetrics metrics;
+
+    private MetricsServer(HttpServer server, CrawlMetrics metrics) {
+        this.server = server;
+        this.metrics = metrics;
+    }
+
+    public static MetricsServer start(int port, CrawlMetrics metrics) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        MetricsServer metricsServer = new MetricsServer(server, metrics);
+        server.createContext("/metrics", metricsServer::handle);
+        server.start();
+        return metricsServer;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = render(metrics).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    static String render(CrawlMetrics metrics) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP webgrep_phase_seconds Time spent per page in each processing phase.\n");
+        sb.append("# TYPE webgrep_phase_seconds summary\n");
+        for (CrawlMetrics.Phase phase : CrawlMetrics.Phase.values()) {
+            LatencyHistogram histogram = metrics.histogram(phase);
+            for (double q : QUANTILES) {
+                sb.append("webgrep_phase_seconds{phase=\"").append(phase.label()).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(seconds(histogram.percentileNanos(q))).append('\n');
+            }
+            sb.append("webgrep_phase_seconds_sum{phase=\"").append(phase.label()).append("\"} ")
+                    .append(seconds(histogram.sumNanos())).append('\n');
+            sb.append("webgrep_phase_seconds_count{phase=\"").append(phase.label()).append("\"} ")
+                    .append(histogram.count()).append('\n');
+        }
+        sb.append("# HELP webgrep_downloaded_bytes_total Response body bytes downloaded, by media type.\n");
+        sb.append("# TYPE webgrep_downloaded_bytes_total counter\n");
+        for (Map.Entry<String, Long> entry : metrics.bytesByContentType().entrySet()) {
+            sb.append("webgrep_downloaded_bytes_total{content_type=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.webgrep.reporting;
+
+import com.webgrep.config.CliOptions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * {@code --output ndjson}: one JSON object per line, written while the crawl runs. Lines are
+ * {@code match} and {@code blocked} per URL, {@code progress} every {@code --progress-interval-ms},
+ * and one {@code summary} at the end. Output is buffered and flushed with each progress line, or
+ * after every line when progress is off, so a reader sees results within one interval.
+ */
+public class NdjsonWriter implements CrawlListener {
+    private final Writer out;
+    private final List<String> keywords;
+    private final boolean perKeyword;
+    private final boolean flushEachLine;
+    private final boolean useSitemaps;
+    private final long startNanos = System.nanoTime();
+
+    public NdjsonWriter(OutputStream out, CliOptions options) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.keywords = options.getKeywords();
+        this.perKeyword = keywords.size() > 1;
+        this.flushEachLine = options.getProgressIntervalMs() == 0;
+        this.useSitemaps = options.isUseSitemaps();
+    }
+
+    @Override
+    public void matched(String url, int[] keywordCounts) {
+        int total = 0;
+        for (int count : keywordCounts) total += count;
+        StringBuilder line = new StringBuilder("{\"type\": \"match\", \"url\": \"").append(ReportWriter.escapeJson(url))
+                .append("\", \"count\": ").append(total);
+        if (perKeyword) {
+            line.append(", \"keywords\": ").append(ReportWriter.keywordObject(keywords, keywordCounts));
+        }
+        write(line.append('}'), flushEachLine);
+    }
+
+    @Override
+    public void blocked(String url, String reason) {
+        write(new StringBuilder("{\"type\": \"blocked\", \"url\": \"").append(ReportWriter.escapeJson(url))
+                .append("\", \"reason\": \"").append(ReportWriter.escapeJson(reason)).append("\"}"), flushEachLine);
+    }
+
+    @Override
+    public void progress(CrawlResult result, long queued) {
+        write(new StringBuilder("{\"type\": \"progress\", \"elapsed_ms\": ").append(elapsedMs())
+                .append(", \"pages_visited\": ").append(result.visitedCount)
+                .append(", \"pages_parsed\": ").append(result.parsedCount)
+                .append(", \"urls_discovered\": ").append(result.discoveredCount)
+                .append(", \"queued\": ").append(queued)
+                .append(", \"matched_urls\": ").append(result.matchedCount)
+                .append(", \"total_matches\": ").append(result.totalMatches).append('}'), true);
+    }
+
+    /** Writes the final line with the totals of the crawl and flushes. */
+    public void summary(CrawlResult result) {
+        StringBuilder line = new StringBuilder("{\"type\": \"summary\", \"elapsed_ms\": ").append(elapsedMs())
+                .append(", \"total_matches\": ").append(result.totalMatches)
+                .append(", \"matched_urls\": ").append(result.matchedCount)
+                .append(", \"pages_visited\": ").append(result.visitedCount)
+                .append(", \"pages_parsed\": ").append(result.parsedCount)
+                .append(", \"pages_blocked\": ").append(result.errorCounts.get(CrawlResult.ErrorType.BLOCKED))
+                .append(", \"urls_discovered\": ").append(result.discoveredCount)
+                .append(", \"frontier_spilled\": ").append(result.frontierSpilled)
+                .append(", \"pages_resumed\": ").append(result.resumedPages)
+                .append(", \"retries\": ").append(result.retries);
+        if (useSitemaps) {
+            line.append(", \"sitemap_urls\": ").append(result.sitemapUrls);
+        }
+        if (perKeyword) {
+            line.append(", \"keyword_matches\": ").append(ReportWriter.keywordObject(keywords, result.keywordTotals(keywords.size())));
+        }
+        line.append(", \"duplicate_bodies\": ").append(result.contentDedupeHits).append(", \"errors\": { ");
+        CrawlResult.ErrorType[] types = CrawlResult.ErrorType.values();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) line.append(", ");
+            line.append('"').append(types[i].name().toLowerCase()).append("\": ").append(result.errorCounts.get(types[i]));
+        }
+        write(line.append(" }}"), true);
+    }
+
+    private long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    private void write(CharSequence line, boolean flush) {
+        try {
+            out.append(line).append('\n');
+            if (flush) out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write results", e);
+        }
+    }
+}
@@ -3,30 +3,79 @@ package com.webgrep.reporting;
 import com.webgrep.config.CliOptions;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class ReportWriter {
 
-    public void printTextOutput(CrawlResult crawlResult) {
+    public void printTextOutput(CrawlResult crawlResult, CliOptions options) {
         Map<String, Integer> results = crawlResult.results;
         int totalCount = results.values().stream().mapToInt(Integer::intValue).sum();
+        List<String> keywords = options.getKeywords();
+        boolean perKeyword = keywords.size() > 1;
 
         System.out.println("--- WebGrep Results ---");
         System.out.println("Total matches found: " + totalCount);
+        if (perKeyword) {
+            int[] totals = crawlResult.keywordTotals(keywords.size());
+            for (int k = 0; k < keywords.size(); k++) {
+                System.out.println("  " + keywords.get(k) + ": " + totals[k]);
+            }
+        }
         System.out.println("Pages visited: " + crawlResult.visitedCount);
         System.out.println("Pages successfully parsed: " + crawlResult.parsedCount);
+        System.out.println("URLs discovered: " + crawlResult.discoveredCount + " ("
+                + String.format(Locale.ROOT, "%.1f", crawlResult.dedupeBytesPerUrl()) + " bytes/URL for dedupe)");
+        if (crawlResult.resumedPages > 0) {
+            System.out.println("Pages restored from checkpoint: " + crawlResult.resumedPages);
+        }
+        if (crawlResult.frontierSpilled > 0) {
+            System.out.println("Frontier URLs spilled to disk: " + crawlResult.frontierSpilled);
+        }
+        if (options.isUseSitemaps()) {
+            System.out.println("URLs queued from sitemaps: " + crawlResult.sitemapUrls);
+        }
 
         System.out.println("\nDetailed Stats:");
         for (CrawlResult.ErrorType type : CrawlResult.ErrorType.values()) {
             System.out.println("  " + type + ": " + crawlResult.errorCounts.get(type));
         }
+        System.out.println("  Duplicate bodies (parse/match skipped): " + crawlResult.contentDedupeHits);
+        if (options.getNearDupDistance() > 0) {
+            System.out.println("  Near-duplicate pages (links " + (options.getNearDupAction().equals("defer") ? "deferred" : "pruned")
+                    + "): " + crawlResult.nearDuplicatePages);
+        }
+        if (options.getCacheDir() != null) {
+            System.out.println("  HTTP cache: " + crawlResult.httpCacheHits + " served from disk, "
+                    + crawlResult.httpCacheRevalidations + " revalidated, " + crawlResult.httpCacheBytesSaved + " bytes saved");
+        }
+        if ("fuzzy".equals(options.getMode())) {
+            System.out.println("  Fuzzy word cache: " + crawlResult.fuzzyCacheHits + " hits, " + crawlResult.fuzzyCacheMisses
+                    + " misses (" + String.format(Locale.ROOT, "%.1f", 100 * hitRate(crawlResult)) + "% hit rate)");
+        }
+        if (!crawlResult.filterHits.isEmpty()) {
+            System.out.println("  URL filter rules:");
+            crawlResult.filterHits.forEach((rule, hits) -> System.out.println("    " + rule + ": " + hits));
+        }
+        System.out.println("  Retries after 429/503/timeout: " + crawlResult.retries);
+        if (!crawlResult.hostRates.isEmpty()) {
+            System.out.println("  Hosts (" + options.getRateControl() + " rate control):");
+            for (CrawlResult.HostRate rate : crawlResult.hostRates) {
+                System.out.println(String.format(Locale.ROOT, "    %s: %d requests, %.1f/s, %d connections, %d ms delay, %d throttled",
+                        rate.host, rate.requests, rate.requestsPerSecond, rate.connections, rate.delayMs, rate.throttled));
+            }
+        }
+        if (crawlResult.metrics != null) {
+            printMetrics(crawlResult.metrics);
+        }
 
         if (totalCount > 0) {
             System.out.println("\nFound in:");
             results.entrySet().stream()
                 .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
                         .thenComparing(Map.Entry.comparingByKey()))
-                .forEach(entry -> System.out.println(entry.getKey() + " (" + entry.getValue() + ")"));
+                .forEach(entry -> System.out.println(entry.getKey() + " (" + entry.getValue() + ")"
+                        + (perKeyword ? " " + keywordBreakdown(keywords, crawlResult.keywordResults.get(entry.getKey())) : "")));
         }
 
         if (!crawlResult.blockedUrls.isEmpty()) {
@@ -43,6 +92,16 @@ public class ReportWriter {
         json.append("  \"query\": {\n");
         json.append("    \"url\": \"").append(escapeJson(options.getUrl())).append("\",\n");
         json.append("    \"keyword\": \"").append(escapeJson(options.getKeyword())).append("\",\n");
+        List<String> keywords = options.getKeywords();
+        boolean perKeyword = keywords.size() > 1;
+        if (perKeyword) {
+            json.append("    \"keywords\": [");
+            for (int k = 0; k < keywords.size(); k++) {
+                if (k > 0) json.append(", ");
+                json.append("\"").append(escapeJson(keywords.get(k))).append("\"");
+            }
+            json.append("],\n");
+        }
         json.append("    \"depth\": ").append(options.getDepth()).append(",\n");
         json.append("    \"mode\": \"").append(escapeJson(options.getMode())).append("\"\n");
         json.append("  },\n");
@@ -51,6 +110,51 @@ public class ReportWriter {
         json.append("    \"pages_visited\": ").append(crawlResult.visitedCount).append(",\n");
         json.append("    \"pages_parsed\": ").append(crawlResult.parsedCount).append(",\n");
         json.append("    \"pages_blocked\": ").append(crawlResult.blockedUrls.size()).append(",\n");
+        json.append("    \"urls_discovered\": ").append(crawlResult.discoveredCount).append(",\n");
+        json.append("    \"dedupe_bytes_per_url\": ").append(String.format(Locale.ROOT, "%.1f", crawlResult.dedupeBytesPerUrl())).append(",\n");
+        json.append("    \"frontier_spilled\": ").append(crawlResult.frontierSpilled).append(",\n");
+        json.append("    \"pages_resumed\": ").append(crawlResult.resumedPages).append(",\n");
+        if (options.isUseSitemaps()) {
+            json.append("    \"sitemap_urls\": ").append(crawlResult.sitemapUrls).append(",\n");
+        }
+        if (perKeyword) {
+            json.append("    \"keyword_matches\": ").append(keywordObject(keywords, crawlResult.keywordTotals(keywords.size()))).append(",\n");
+        }
+        json.append("    \"duplicate_bodies\": ").append(crawlResult.contentDedupeHits).append(",\n");
+        if (options.getNearDupDistance() > 0) {
+            json.append("    \"near_duplicates\": ").append(crawlResult.nearDuplicatePages).append(",\n");
+        }
+        if (options.getCacheDir() != null) {
+            json.append("    \"http_cache\": { \"hits\": ").append(crawlResult.httpCacheHits)
+                    .append(", \"revalidations\": ").append(crawlResult.httpCacheRevalidations)
+                    .append(", \"bytes_saved\": ").append(crawlResult.httpCacheBytesSaved).append(" },\n");
+        }
+        if ("fuzzy".equals(options.getMode())) {
+            json.append("    \"fuzzy_cache\": { \"hits\": ").append(crawlResult.fuzzyCacheHits)
+                    .append(", \"misses\": ").append(crawlResult.fuzzyCacheMisses)
+                    .append(", \"hit_rate\": ").append(String.format(Locale.ROOT, "%.4f", hitRate(crawlResult))).append(" },\n");
+        }
+        if (!crawlResult.filterHits.isEmpty()) {
+            json.append("    \"filter_hits\": { ");
+            int r = 0;
+            for (Map.Entry<String, Long> entry : crawlResult.filterHits.entrySet()) {
+                if (r++ > 0) json.append(", ");
+                json.append("\"").append(escapeJson(entry.getKey())).append("\": ").append(entry.getValue());
+            }
+            json.append(" },\n");
+        }
+        json.append("    \"retries\": ").append(crawlResult.retries).append(",\n");
+        json.append("    \"hosts\": [");
+        for (int h = 0; h < crawlResult.hostRates.size(); h++) {
+            CrawlResult.HostRate rate = crawlResult.hostRates.get(h);
+            json.append(h > 0 ? ",\n      " : "\n      ").append("{ \"host\": \"").append(escapeJson(rate.host))
+                    .append("\", \"requests\": ").append(rate.requests)
+                    .append(", \"requests_per_sec\": ").append(String.format(Locale.ROOT, "%.2f", rate.requestsPerSecond))
+                    .append(", \"connections\": ").append(rate.connections)
+                    .append(", \"delay_ms\": ").append(rate.delayMs)
+                    .append(", \"throttled\": ").append(rate.throttled).append(" }");
+        }
+        json.append(crawlResult.hostRates.isEmpty() ? "],\n" : "\n    ],\n");
         json.append("    \"errors\": {\n");
         CrawlResult.ErrorType[] types = CrawlResult.ErrorType.values();
         for (int i = 0; i < types.length; i++) {
@@ -60,6 +164,9 @@ public class ReportWriter {
         }
         json.append("    }\n");
         json.append("  },\n");
+        if (crawlResult.metrics != null) {
+            appendMetrics(json, crawlResult.metrics);
+        }
         json.append("  \"results\": [\n");
 
         List<Map.Entry<String, Integer>> sortedResults = new ArrayList<>(crawlResult.results.entrySet());
@@ -67,7 +174,11 @@ public class ReportWriter {
 
         for (int i = 0; i < sortedResults.size(); i++) {
             Map.Entry<String, Integer> entry = sortedResults.get(i);
-            json.append("    { \"url\": \"").append(escapeJson(entry.getKey())).append("\", \"count\": ").append(entry.getValue()).append(" }");
+            json.append("    { \"url\": \"").append(escapeJson(entry.getKey())).append("\", \"count\": ").append(entry.getValue());
+            if (perKeyword) {
+                json.append(", \"keywords\": ").append(keywordObject(keywords, crawlResult.keywordResults.get(entry.getKey())));
+            }
+            json.append(" }");
             if (i < sortedResults.size() - 1) json.append(",");
             json.append("\n");
         }
@@ -85,7 +196,107 @@ public class ReportWriter {
         System.out.println(json.toString());
     }
 
-    private String escapeJson(String input) {
+    private void printMetrics(CrawlMetrics metrics) {
+        System.out.println("\nMetrics (ms):");
+        System.out.println(String.format(Locale.ROOT, "  %-10s %8s %9s %9s %9s %9s", "phase", "count", "mean", "p50", "p99", "max"));
+        for (CrawlMetrics.Phase phase : CrawlMetrics.Phase.values()) {
+            LatencyHistogram histogram = metrics.histogram(phase);
+            if (histogram.count() == 0) continue;
+            System.out.println(String.format(Locale.ROOT, "  %-10s %8d %9.2f %9.2f %9.2f %9.2f", phase.label(), histogram.count(),
+                    histogram.meanNanos() / 1e6, histogram.percentileNanos(0.5) / 1e6, histogram.percentileNanos(0.99) / 1e6,
+                    histogram.maxNanos() / 1e6));
+        }
+        Map<String, Long> bytes = metrics.bytesByContentType();
+        if (!bytes.isEmpty()) {
+            System.out.println("  Bytes downloaded:");
+            bytes.forEach((type, count) -> System.out.println("    " + type + ": " + count));
+        }
+        List<CrawlMetrics.SlowPage> slowest = metrics.slowest();
+        if (!slowest.isEmpty()) {
+            System.out.println("  Slowest pages:");
+            for (CrawlMetrics.SlowPage page : slowest) {
+                StringBuilder line = new StringBuilder("    ").append(millis(page.nanos(CrawlMetrics.Phase.PAGE))).append(" ms ")
+                        .append(page.url).append(" [");
+                String separator = "";
+                for (CrawlMetrics.Phase phase : CrawlMetrics.Phase.values()) {
+                    if (phase == CrawlMetrics.Phase.PAGE || page.nanos(phase) == 0) continue;
+                    line.append(separator).append(phase.label()).append(": ").append(millis(page.nanos(phase)));
+                    separator = ", ";
+                }
+                System.out.println(line.append("]"));
+            }
+        }
+    }
+
+    private void appendMetrics(StringBuilder json, CrawlMetrics metrics) {
+        json.append("  \"metrics\": {\n");
+        json.append("    \"phases\": {\n");
+        CrawlMetrics.Phase[] phases = CrawlMetrics.Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram histogram = metrics.histogram(phases[i]);
+            json.append("      \"").append(phases[i].label()).append("\": { \"count\": ").append(histogram.count())
+                    .append(", \"mean_ms\": ").append(String.format(Locale.ROOT, "%.3f", histogram.meanNanos() / 1e6))
+                    .append(", \"p50_ms\": ").append(millis(histogram.percentileNanos(0.5)))
+                    .append(", \"p90_ms\": ").append(millis(histogram.percentileNanos(0.9)))
+                    .append(", \"p99_ms\": ").append(millis(histogram.percentileNanos(0.99)))
+                    .append(", \"max_ms\": ").append(millis(histogram.maxNanos())).append(" }");
+            if (i < phases.length - 1) json.append(",");
+            json.append("\n");
+        }
+        json.append("    },\n");
+        json.append("    \"bytes_by_content_type\": { ");
+        int t = 0;
+        for (Map.Entry<String, Long> entry : metrics.bytesByContentType().entrySet()) {
+            if (t++ > 0) json.append(", ");
+            json.append("\"").append(escapeJson(entry.getKey())).append("\": ").append(entry.getValue());
+        }
+        json.append(" },\n");
+        json.append("    \"slowest\": [\n");
+        List<CrawlMetrics.SlowPage> slowest = metrics.slowest();
+        for (int i = 0; i < slowest.size(); i++) {
+            CrawlMetrics.SlowPage page = slowest.get(i);
+            json.append("      { \"url\": \"").append(escapeJson(page.url)).append("\"");
+            for (CrawlMetrics.Phase phase : phases) {
+                json.append(", \"").append(phase.label()).append("_ms\": ").append(millis(page.nanos(phase)));
+            }
+            json.append(" }");
+            if (i < slowest.size() - 1) json.append(",");
+            json.append("\n");
+        }
+        json.append("    ]\n");
+        json.append("  },\n");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private double hitRate(CrawlResult crawlResult) {
+        long lookups = crawlResult.fuzzyCacheHits + crawlResult.fuzzyCacheMisses;
+        return lookups == 0 ? 0 : (double) crawlResult.fuzzyCacheHits / lookups;
+    }
+
+    private String keywordBreakdown(List<String> keywords, int[] counts) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = 0; counts != null && k < keywords.size() && k < counts.length; k++) {
+            if (counts[k] == 0) continue;
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(keywords.get(k)).append(": ").append(counts[k]);
+        }
+        return sb.append("]").toString();
+    }
+
+    static String keywordObject(List<String> keywords, int[] counts) {
+        StringBuilder sb = new StringBuilder("{ ");
+        for (int k = 0; k < keywords.size(); k++) {
+            if (k > 0) sb.append(", ");
+            int count = counts != null && k < counts.length ? counts[k] : 0;
+            sb.append("\"").append(escapeJson(keywords.get(k))).append("\": ").append(count);
+        }
+        return sb.append(" }").toString();
+    }
+
+    static String escapeJson(String input) {
         if (input == null) return "";
         return input.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
     }
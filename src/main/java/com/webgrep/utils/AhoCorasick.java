@@ -0,0 +1,176 @@
+package com.webgrep.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over a fixed set of literal patterns. Text is fed one char at a time
+ * through {@link #next(int, char)}, so a single left-to-right scan reports every occurrence of
+ * every pattern. States are numbered breadth first. The shallow states, where a scan spends most
+ * of its time, get ASCII transitions precomputed into a dense table; every state keeps its own
+ * edges in sorted arrays, and deeper states and non-ASCII chars follow those edges and the
+ * failure links. A large keyword list therefore costs memory in proportion to its trie, not 128
+ * ints per state.
+ * <p>
+ * Immutable once built and safe to share between threads; scan state is just the int returned
+ * by {@link #next(int, char)}.
+ */
+public class AhoCorasick {
+    public static final int ROOT = 0;
+    private static final int ASCII = 128;
+    /** States up to this depth get a dense row: the root, one char and two chars in. */
+    private static final int DENSE_DEPTH = 2;
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int[] patternLengths;
+    /** ASCII transitions of states {@code 0 .. denseStates - 1}, failure links already applied. */
+    private final int[] dense;
+    private final int denseStates;
+    /** Edges of state s are {@code edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1])}, sorted by char. */
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[][] outputs;
+
+    public AhoCorasick(List<String> patterns) {
+        patternLengths = new int[patterns.size()];
+
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        trie.add(new HashMap<>());
+        out.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            patternLengths[p] = pattern.length();
+            if (pattern.isEmpty()) continue;
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = trie.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(pattern.charAt(i), next);
+                    trie.add(new HashMap<>());
+                    out.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            out.get(state).add(p);
+        }
+
+        // Renumber breadth first, so shallow states come first and every failure target precedes its users.
+        int states = trie.size();
+        int[] order = new int[states];
+        int[] id = new int[states];
+        int[] depth = new int[states];
+        int shallow = 0;
+        int count = 0;
+        order[count++] = ROOT;
+        for (int i = 0; i < count; i++) {
+            int old = order[i];
+            id[old] = i;
+            if (depth[old] <= DENSE_DEPTH) shallow = i + 1;
+            char[] keys = sortedKeys(trie.get(old));
+            for (char c : keys) {
+                int child = trie.get(old).get(c);
+                depth[child] = depth[old] + 1;
+                order[count++] = child;
+            }
+        }
+        denseStates = shallow;
+
+        edgeStart = new int[states + 1];
+        edgeChars = new char[states - 1];
+        edgeTargets = new int[states - 1];
+        int edges = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edges;
+            Map<Character, Integer> children = trie.get(order[s]);
+            for (char c : sortedKeys(children)) {
+                edgeChars[edges] = c;
+                edgeTargets[edges] = id[children.get(c)];
+                edges++;
+            }
+        }
+        edgeStart[states] = edges;
+
+        fail = new int[states];
+        dense = new int[denseStates * ASCII];
+        outputs = new int[states][];
+        for (int s = 0; s < states; s++) {
+            List<Integer> merged = out.get(order[s]);
+            if (s != ROOT) {
+                for (int p : outputs[fail[s]]) merged.add(p);
+            }
+            outputs[s] = merged.isEmpty() ? NO_OUTPUT : merged.stream().mapToInt(Integer::intValue).toArray();
+
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                fail[edgeTargets[e]] = s == ROOT ? ROOT : next(fail[s], edgeChars[e]);
+            }
+            if (s < denseStates) {
+                for (int c = 0; c < ASCII; c++) {
+                    int child = child(s, (char) c);
+                    if (child >= 0) {
+                        dense[s * ASCII + c] = child;
+                    } else {
+                        dense[s * ASCII + c] = s == ROOT ? ROOT : dense[fail[s] * ASCII + c];
+                    }
+                }
+            }
+        }
+    }
+
+    private static char[] sortedKeys(Map<Character, Integer> children) {
+        char[] keys = new char[children.size()];
+        int i = 0;
+        for (char c : children.keySet()) keys[i++] = c;
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /** Advances the automaton by one char and returns the new state. */
+    public int next(int state, char c) {
+        while (true) {
+            if (c < ASCII && state < denseStates) {
+                return dense[state * ASCII + c];
+            }
+            int child = child(state, c);
+            if (child >= 0) return child;
+            if (state == ROOT) return ROOT;
+            state = fail[state];
+        }
+    }
+
+    /** The trie child of {@code state} on {@code c}, or -1. */
+    private int child(int state, char c) {
+        int i = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], c);
+        return i >= 0 ? edgeTargets[i] : -1;
+    }
+
+    /** Indices of the patterns that end at the char that led into {@code state}. */
+    public int[] matches(int state) {
+        return outputs[state];
+    }
+
+    public int patternLength(int pattern) {
+        return patternLengths[pattern];
+    }
+
+    public int patternCount() {
+        return patternLengths.length;
+    }
+
+    /** Approximate heap held by the automaton. */
+    public long memoryBytes() {
+        long bytes = 4L * (dense.length + edgeStart.length + edgeTargets.length + fail.length + patternLengths.length)
+                + 2L * edgeChars.length + 16L * outputs.length;
+        for (int[] output : outputs) {
+            if (output != NO_OUTPUT) bytes += 16 + 4L * output.length;
+        }
+        return bytes;
+    }
+}
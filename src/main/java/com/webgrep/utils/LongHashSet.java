@@ -0,0 +1,78 @@
+package com.webgrep.utils;
+
+/**
+ * Open-addressing hash set of primitive longs with linear probing. Stores one {@code long} per
+ * slot and nothing else, so a million entries take about 16 MB instead of the ~100 MB a
+ * {@code HashSet<Long>} would need. Not thread-safe.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, (long) (expected / MAX_LOAD)) - 1) << 1);
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Adds the value and returns {@code true} if it was not present yet. */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        if (++size > table.length * MAX_LOAD) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) return containsZero;
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return 16L + 8L * table.length;
+    }
+
+    private int slot(long value) {
+        return (int) Hashing.fmix64(value) & mask;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        mask = table.length - 1;
+        for (long value : old) {
+            if (value == EMPTY) continue;
+            int slot = slot(value);
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.webgrep.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.OptionalLong;
+
+/**
+ * 64-bit SimHash of page text. Words are folded with {@link TextFolding}, hashed, and every bit
+ * of the fingerprint is the sign of the summed votes of all words, so pages that share most of
+ * their words end up a small Hamming distance apart.
+ */
+public final class SimHash {
+    /** Below this many words a fingerprint says too little to call two pages near-identical. */
+    public static final int MIN_WORDS = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {}
+
+    /** Fingerprint of {@code text}, or empty if it has fewer than {@link #MIN_WORDS} words. */
+    public static OptionalLong of(CharSequence text) {
+        Accumulator accumulator = new Accumulator(null);
+        for (int i = 0, n = text.length(); i < n; i++) {
+            accumulator.accept(text.charAt(i));
+        }
+        return accumulator.fingerprint();
+    }
+
+    /**
+     * Fingerprints text written in chunks, passing it on unchanged to another writer (if any), so
+     * one pass over a page can both match and fingerprint it.
+     */
+    public static final class Accumulator extends Writer {
+        private final Writer out;
+        private final int[] votes = new int[64];
+        private int words;
+        private long h = FNV_OFFSET;
+        private int length;
+
+        public Accumulator(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                accept(buf[i]);
+            }
+            if (out != null) out.write(buf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) out.close();
+        }
+
+        void accept(char c) {
+            char folded = TextFolding.fold(c);
+            if (folded == TextFolding.DROPPED) return;
+            if (folded != TextFolding.SEPARATOR) {
+                h = (h ^ folded) * FNV_PRIME;
+                length++;
+                return;
+            }
+            endWord();
+        }
+
+        private void endWord() {
+            if (length > 0) {
+                long wordHash = Hashing.fmix64(h ^ length);
+                for (int bit = 0; bit < 64; bit++) {
+                    votes[bit] += (int) ((wordHash >>> bit) & 1) * 2 - 1;
+                }
+                words++;
+                h = FNV_OFFSET;
+                length = 0;
+            }
+        }
+
+        /** Fingerprint of everything written so far, or empty if it has fewer than {@link #MIN_WORDS} words. */
+        public OptionalLong fingerprint() {
+            endWord();
+            if (words < MIN_WORDS) {
+                return OptionalLong.empty();
+            }
+            long fingerprint = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (votes[bit] > 0) fingerprint |= 1L << bit;
+            }
+            return OptionalLong.of(fingerprint);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.webgrep.utils;
+
+import java.text.Normalizer;
+
+/**
+ * Char-level text folding used by the lenient match modes: removes diacritics, lowercases and
+ * reduces everything else to either a word separator or nothing. Equivalent to
+ * {@code NFD -> strip \p{M} -> toLowerCase -> [^a-z0-9]} on whole strings, but works one char
+ * at a time without regexes or intermediate copies. ASCII is answered from a static table;
+ * other chars are normalized once on first sight and remembered.
+ */
+public final class TextFolding {
+    /** Returned for whitespace, punctuation and any char that does not fold to {@code [a-z0-9]}. */
+    public static final char SEPARATOR = ' ';
+    /** Returned for chars that disappear entirely, such as combining marks. */
+    public static final char DROPPED = '\0';
+
+    private static final char UNKNOWN = '\uFFFF';
+    private static final char[] TABLE = new char[Character.MAX_VALUE + 1];
+
+    static {
+        java.util.Arrays.fill(TABLE, UNKNOWN);
+        for (char c = 0; c < 128; c++) {
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                TABLE[c] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                TABLE[c] = (char) (c + ('a' - 'A'));
+            } else {
+                TABLE[c] = SEPARATOR;
+            }
+        }
+    }
+
+    private TextFolding() {}
+
+    /** Folds one char to {@code [a-z0-9]}, {@link #SEPARATOR} or {@link #DROPPED}. */
+    public static char fold(char c) {
+        char folded = TABLE[c];
+        if (folded == UNKNOWN) {
+            folded = computeFold(c);
+            // Benign race: every thread computes the same value.
+            TABLE[c] = folded;
+        }
+        return folded;
+    }
+
+    /** Letters and digits only: the form used to compare text while ignoring spacing and punctuation. */
+    public static String superSimplify(CharSequence input) {
+        if (input == null) return "";
+        StringBuilder sb = null;
+        int n = input.length();
+        for (int i = 0; i < n; i++) {
+            char c = input.charAt(i);
+            char folded = fold(c);
+            boolean keep = folded != SEPARATOR && folded != DROPPED;
+            if (sb == null) {
+                if (keep && folded == c) continue;
+                // First char that changes: copy the unchanged prefix once and switch to building.
+                sb = new StringBuilder(n);
+                sb.append(input, 0, i);
+            }
+            if (keep) sb.append(folded);
+        }
+        return sb == null ? input.toString() : sb.toString();
+    }
+
+    private static char computeFold(char c) {
+        if (Character.isSurrogate(c)) {
+            return SEPARATOR;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        boolean sawOther = false;
+        char alnum = DROPPED;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char d = decomposed.charAt(i);
+            int type = Character.getType(d);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+            String lower = String.valueOf(d).toLowerCase();
+            for (int j = 0; j < lower.length(); j++) {
+                char l = lower.charAt(j);
+                if (l >= 'a' && l <= 'z' || l >= '0' && l <= '9') {
+                    alnum = l;
+                } else if (Character.getType(l) != Character.NON_SPACING_MARK) {
+                    sawOther = true;
+                }
+            }
+        }
+        if (alnum != DROPPED && !sawOther) return alnum;
+        if (alnum == DROPPED && !sawOther) return DROPPED;
+        return SEPARATOR;
+    }
+}
@@ -0,0 +1,318 @@
+package com.webgrep.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allow/deny rules deciding which links the crawler follows, read from a rules file such as the
+ * built-in {@code default-filter-rules.txt}:
+ * <pre>
+ *   # comment
+ *   allow ext pdf txt
+ *   deny  ext css js
+ *   deny  host ads.example.com     (the host or any subdomain)
+ *   deny  path /wp-admin/          (path prefix)
+ *   deny  contains doubleclick     (anywhere before the query)
+ *   defaults                       (the built-in rules)
+ * </pre>
+ * A URL is ignored when it matches a deny rule and no allow rule. Matching ignores case, the
+ * query and the fragment.
+ * <p>
+ * Extension and host rules are compiled into tries of the reversed keys, path rules into a trie
+ * and substring rules into one {@link AhoCorasick} automaton, so a URL costs a single forward
+ * scan plus two short backward walks regardless of the number of rules. Each URL is credited to
+ * the one rule that decided it; immutable apart from those counters and safe to share.
+ */
+public final class UrlFilter {
+    private static final String DEFAULT_RULES = "default-filter-rules.txt";
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    private final List<String> rules = new ArrayList<>();
+    private final List<Boolean> allowed = new ArrayList<>();
+    private final Trie extensions;
+    private final Trie hosts;
+    private final Trie paths;
+    private final AhoCorasick substrings;
+    private final int[] substringRules;
+    /** Allow rules rank before deny rules, then file order; lower wins. */
+    private final int[] priority;
+    private final LongAdder[] hits;
+
+    private UrlFilter(List<String> lines, String source) {
+        TrieBuilder extensions = new TrieBuilder();
+        TrieBuilder hosts = new TrieBuilder();
+        TrieBuilder paths = new TrieBuilder();
+        List<String> substrings = new ArrayList<>();
+        List<Integer> substringRules = new ArrayList<>();
+        parse(lines, source, extensions, hosts, paths, substrings, substringRules);
+
+        this.extensions = extensions.build();
+        this.hosts = hosts.build();
+        this.paths = paths.build();
+        this.substrings = new AhoCorasick(substrings);
+        this.substringRules = substringRules.stream().mapToInt(Integer::intValue).toArray();
+        this.priority = new int[rules.size()];
+        this.hits = new LongAdder[rules.size()];
+        for (int r = 0; r < priority.length; r++) {
+            priority[r] = allowed.get(r) ? r : rules.size() + r;
+            hits[r] = new LongAdder();
+        }
+    }
+
+    /** The built-in rules. */
+    public static UrlFilter defaults() {
+        return new UrlFilter(defaultLines(), DEFAULT_RULES);
+    }
+
+    /** Rules from {@code path}, or the built-in ones if it is {@code null}. */
+    public static UrlFilter load(String path) {
+        if (path == null) {
+            return defaults();
+        }
+        try {
+            return new UrlFilter(Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8), path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read filter rules file: " + path);
+        }
+    }
+
+    /** Rules given as the lines of a rules file. */
+    public static UrlFilter of(List<String> lines) {
+        return new UrlFilter(lines, "rules");
+    }
+
+    /** Whether the crawler should skip {@code url}, which is expected in canonical form. */
+    public boolean isIgnored(String url) {
+        int end = url.length();
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) end = fragment;
+        int query = url.indexOf('?');
+        if (query >= 0 && query < end) end = query;
+        int scheme = url.indexOf("://");
+        int hostStart = scheme < 0 ? 0 : scheme + 3;
+        int pathStart = hostStart;
+        int hostEnd = -1;
+        boolean ipv6 = hostStart < end && url.charAt(hostStart) == '[';
+        for (; pathStart < end; pathStart++) {
+            char c = url.charAt(pathStart);
+            if (c == '/') break;
+            if (c == ']') ipv6 = false;
+            if (c == ':' && !ipv6 && hostEnd < 0) hostEnd = pathStart;
+        }
+        if (hostEnd < 0) hostEnd = pathStart;
+
+        int best = NO_RULE;
+        // Substrings over everything before the query.
+        if (substringRules.length > 0) {
+            int state = AhoCorasick.ROOT;
+            for (int i = 0; i < end; i++) {
+                state = substrings.next(state, lower(url.charAt(i)));
+                int[] matched = substrings.matches(state);
+                for (int m = 0; m < matched.length; m++) {
+                    best = Math.min(best, priority[substringRules[matched[m]]]);
+                }
+            }
+        }
+        // Path prefixes: walk down from the root until the trie runs out.
+        int pathState = Trie.ROOT;
+        for (int i = pathStart; i < end && pathState != Trie.NONE; i++) {
+            pathState = paths.next(pathState, lower(url.charAt(i)));
+            if (pathState != Trie.NONE) best = best(best, paths.rules(pathState));
+        }
+        // Extensions: the reversed ".ext" against the end of the path.
+        int extState = Trie.ROOT;
+        for (int i = end - 1; i >= pathStart && extState != Trie.NONE; i--) {
+            extState = extensions.next(extState, lower(url.charAt(i)));
+            if (extState != Trie.NONE) best = best(best, extensions.rules(extState));
+        }
+        // Hosts: the reversed suffix, matching only at a label boundary.
+        int hostState = Trie.ROOT;
+        for (int i = hostEnd - 1; i >= hostStart && hostState != Trie.NONE; i--) {
+            hostState = hosts.next(hostState, lower(url.charAt(i)));
+            if (hostState != Trie.NONE && (i == hostStart || url.charAt(i - 1) == '.')) {
+                best = best(best, hosts.rules(hostState));
+            }
+        }
+
+        if (best == NO_RULE) {
+            return false;
+        }
+        int rule = best < rules.size() ? best : best - rules.size();
+        hits[rule].increment();
+        return !allowed.get(rule);
+    }
+
+    /** Number of URLs each rule decided, for the rules that decided any, in file order. */
+    public Map<String, Long> hits() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int r = 0; r < hits.length; r++) {
+            long count = hits[r].sum();
+            if (count > 0) result.put(rules.get(r), count);
+        }
+        return result;
+    }
+
+    private int best(int best, int[] matched) {
+        for (int rule : matched) {
+            best = Math.min(best, priority[rule]);
+        }
+        return best;
+    }
+
+    private static char lower(char c) {
+        if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        return Character.toLowerCase(c);
+    }
+
+    private void parse(List<String> lines, String source, TrieBuilder extensions, TrieBuilder hosts, TrieBuilder paths,
+                       List<String> substrings, List<Integer> substringRules) {
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            if (line.equals("defaults")) {
+                parse(defaultLines(), DEFAULT_RULES, extensions, hosts, paths, substrings, substringRules);
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3 || !(fields[0].equals("allow") || fields[0].equals("deny"))) {
+                throw new IllegalArgumentException(source + ":" + (n + 1) + ": expected '<allow|deny> <kind> <value>...': " + line);
+            }
+            for (int f = 2; f < fields.length; f++) {
+                String value = fields[f].toLowerCase(Locale.ROOT);
+                int rule = rules.size();
+                switch (fields[1]) {
+                    case "ext":
+                        extensions.add(reverse("." + stripLeading(value, '.')), rule);
+                        break;
+                    case "host":
+                        hosts.add(reverse(stripLeading(value, '.')), rule);
+                        break;
+                    case "path":
+                        paths.add(value.startsWith("/") ? value : "/" + value, rule);
+                        break;
+                    case "contains":
+                        substrings.add(value);
+                        substringRules.add(rule);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(source + ":" + (n + 1) + ": unknown rule kind '" + fields[1]
+                                + "' (expected ext, host, path or contains)");
+                }
+                rules.add(fields[0] + " " + fields[1] + " " + value);
+                allowed.add(fields[0].equals("allow"));
+            }
+        }
+    }
+
+    private static List<String> defaultLines() {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = UrlFilter.class.getResourceAsStream(DEFAULT_RULES)) {
+            if (in == null) throw new IllegalStateException("Missing resource " + DEFAULT_RULES);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            for (String line; (line = reader.readLine()) != null; ) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    private static String stripLeading(String value, char c) {
+        int i = 0;
+        while (i < value.length() && value.charAt(i) == c) i++;
+        return value.substring(i);
+    }
+
+    private static String reverse(String value) {
+        return new StringBuilder(value).reverse().toString();
+    }
+
+    private static final class TrieBuilder {
+        final List<Map<Character, Integer>> edges = new ArrayList<>();
+        final List<List<Integer>> rules = new ArrayList<>();
+
+        TrieBuilder() {
+            edges.add(new HashMap<>());
+            rules.add(new ArrayList<>());
+        }
+
+        void add(String key, int rule) {
+            int state = Trie.ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                Integer next = edges.get(state).get(key.charAt(i));
+                if (next == null) {
+                    next = edges.size();
+                    edges.get(state).put(key.charAt(i), next);
+                    edges.add(new HashMap<>());
+                    rules.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            rules.get(state).add(rule);
+        }
+
+        Trie build() {
+            return new Trie(edges, rules);
+        }
+    }
+
+    /** Plain trie with a dense table for ASCII edges, like {@link AhoCorasick} without failure links. */
+    private static final class Trie {
+        static final int ROOT = 0;
+        static final int NONE = -1;
+        private static final int ASCII = 128;
+        private static final int[] NO_RULES = new int[0];
+
+        private final int[] dense;
+        private final Map<Character, Integer>[] sparse;
+        private final int[][] rules;
+
+        @SuppressWarnings("unchecked")
+        Trie(List<Map<Character, Integer>> edges, List<List<Integer>> rules) {
+            int states = edges.size();
+            this.dense = new int[states * ASCII];
+            this.sparse = new Map[states];
+            this.rules = new int[states][];
+            Arrays.fill(dense, NONE);
+            for (int s = 0; s < states; s++) {
+                for (Map.Entry<Character, Integer> edge : edges.get(s).entrySet()) {
+                    char c = edge.getKey();
+                    if (c < ASCII) {
+                        dense[s * ASCII + c] = edge.getValue();
+                    } else {
+                        if (sparse[s] == null) sparse[s] = new HashMap<>();
+                        sparse[s].put(c, edge.getValue());
+                    }
+                }
+                List<Integer> ending = rules.get(s);
+                this.rules[s] = ending.isEmpty() ? NO_RULES : ending.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        /** The child of {@code state} on {@code c}, or {@link #NONE}. */
+        int next(int state, char c) {
+            if (c < ASCII) return dense[state * ASCII + c];
+            Integer child = sparse[state] == null ? null : sparse[state].get(c);
+            return child == null ? NONE : child;
+        }
+
+        int[] rules(int state) {
+            return rules[state];
+        }
+    }
+}
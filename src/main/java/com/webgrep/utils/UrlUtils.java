@@ -1,94 +1,410 @@
 package com.webgrep.utils;
 
-import java.text.Normalizer;
-import java.net.URL;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 
+/**
+ * URL canonicalization for the crawler. {@link #resolve} turns an href into the form every
+ * URL is stored and compared in: lower-case scheme and host, no user info, default port or
+ * fragment, a non-empty path with duplicate slashes and dot segments removed, and
+ * percent-escapes in upper case with unreserved characters decoded (RFC 3986, section 6.2.2).
+ * Relative references are resolved per RFC 3986, section 5.2. Only http and https URLs survive;
+ * anything else ({@code mailto:}, {@code javascript:}, ...) becomes the empty string.
+ * <p>
+ * Everything is done with index arithmetic on the input: no regex, no {@code java.net.URL}, and
+ * an input that is already canonical is returned as is.
+ */
 public class UrlUtils {
 
+    /**
+     * A canonical URL split into its parts, so a page's URL can be parsed once and used as the
+     * base for all of its links.
+     */
+    public static final class ParsedUrl {
+        private final String url;
+        private final int schemeEnd;
+        private final int hostStart;
+        private final int hostEnd;
+        private final int pathStart;
+        private final int queryStart;
+
+        private ParsedUrl(String url) {
+            this.url = url;
+            this.schemeEnd = url.indexOf(':');
+            this.hostStart = schemeEnd + 3;
+            this.pathStart = url.indexOf('/', hostStart);
+            int query = url.indexOf('?', pathStart);
+            this.queryStart = query < 0 ? url.length() : query;
+            this.hostEnd = hostEnd(url, hostStart, pathStart);
+        }
+
+        public String scheme() { return url.substring(0, schemeEnd); }
+        public String host() { return url.substring(hostStart, hostEnd); }
+        public String path() { return url.substring(pathStart, queryStart); }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+    private UrlUtils() {}
+
+    /** Parses and canonicalizes an absolute URL; {@code null} if it is not a usable http(s) URL. */
+    public static ParsedUrl parse(String url) {
+        String canonical = resolve(url, null);
+        return canonical.isEmpty() ? null : new ParsedUrl(canonical);
+    }
+
     public static String normalizeUrl(String urlString, String baseUrlString) {
-        if (urlString == null || urlString.isEmpty()) {
+        ParsedUrl base = baseUrlString == null || baseUrlString.isEmpty() ? null : parse(baseUrlString);
+        return resolve(urlString, base);
+    }
+
+    /**
+     * Canonical form of {@code urlString} resolved against {@code base} (may be null), or {@code ""} if it is not
+     * an http(s) URL. Without a base, a scheme-less input is taken to be {@code host/path}.
+     */
+    public static String resolve(String urlString, ParsedUrl base) {
+        if (urlString == null) {
+            return "";
+        }
+        int start = 0;
+        int end = urlString.length();
+        while (start < end && urlString.charAt(start) <= ' ') start++;
+        while (end > start && urlString.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
             return "";
         }
-        if (urlString.startsWith("//")) {
-            if (baseUrlString != null && baseUrlString.startsWith("https")) {
-                urlString = "https:" + urlString;
+
+        int colon = schemeEnd(urlString, start, end);
+        if (colon >= 0) {
+            boolean https = colon - start == 5 && urlString.regionMatches(true, start, "https", 0, 5);
+            boolean http = colon - start == 4 && urlString.regionMatches(true, start, "http", 0, 4);
+            if (!http && !https) {
+                return "";
+            }
+            String scheme = https ? "https" : "http";
+            if (urlString.startsWith("//", colon + 1)) {
+                if (start == 0 && end == urlString.length() && isCanonical(urlString)) {
+                    return urlString;
+                }
+                return canonical(scheme, urlString, colon + 3, end);
+            }
+            // "http:path" is relative to a base of the same scheme, as browsers treat it.
+            if (base == null || !base.scheme().equals(scheme)) {
+                return "";
+            }
+            return resolveRelative(base, urlString, colon + 1, end);
+        }
+        if (urlString.startsWith("//", start)) {
+            return canonical(base == null ? "http" : base.scheme(), urlString, start + 2, end);
+        }
+        if (base == null) {
+            return canonical("http", urlString, start, end);
+        }
+        return resolveRelative(base, urlString, start, end);
+    }
+
+    /** Host of a URL, lower-cased, or {@code ""} if there is none. Cheap on canonical URLs. */
+    public static String hostOf(String url) {
+        int authority = url.indexOf("://");
+        if (authority < 0) {
+            return "";
+        }
+        int hostStart = authority + 3;
+        int authorityEnd = authorityEnd(url, hostStart, url.length());
+        int at = url.lastIndexOf('@', authorityEnd - 1);
+        if (at >= hostStart) hostStart = at + 1;
+        String host = url.substring(hostStart, hostEnd(url, hostStart, authorityEnd));
+        return hasUpperCase(host, 0, host.length()) ? host.toLowerCase(Locale.ROOT) : host;
+    }
+
+    /** Index of the colon ending a scheme, or -1 if the input does not start with one. */
+    private static int schemeEnd(String s, int start, int end) {
+        if (start >= end || !isAlpha(s.charAt(start))) return -1;
+        for (int i = start + 1; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ':') return i;
+            if (!isAlpha(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') return -1;
+        }
+        return -1;
+    }
+
+    /** RFC 3986 section 5.2.2 for a reference without scheme and authority. */
+    private static String resolveRelative(ParsedUrl base, String ref, int start, int end) {
+        int fragment = indexOf(ref, '#', start, end);
+        if (fragment >= 0) end = fragment;
+        int query = indexOf(ref, '?', start, end);
+        int pathEnd = query >= 0 ? query : end;
+
+        StringBuilder sb = new StringBuilder(base.url.length() + (end - start));
+        sb.append(base.url, 0, base.pathStart);
+        if (pathEnd == start) {
+            sb.append(base.url, base.pathStart, base.queryStart);
+            if (query >= 0) {
+                appendNormalized(sb, ref, query, end, false);
             } else {
-                urlString = "http:" + urlString;
+                sb.append(base.url, base.queryStart, base.url.length());
             }
+            return sb.toString();
         }
-        if (!urlString.matches("^[a-zA-Z][a-zA-Z0-9+.-]*://.*")) {
-            if (baseUrlString != null && !baseUrlString.isEmpty()) {
-                try {
-                    URL base = new URL(baseUrlString);
-                    URL abs = new URL(base, urlString);
-                    urlString = abs.toString();
-                } catch (Exception e) {
-                    if (!urlString.startsWith("http")) {
-                        urlString = "http://" + urlString;
-                    }
-                }
-            } else if (!urlString.startsWith("http")) {
-                urlString = "http://" + urlString;
+        if (ref.charAt(start) == '/') {
+            appendPath(sb, ref, start, pathEnd, null);
+        } else {
+            // Merge: the base path up to its last slash, then the reference.
+            int lastSlash = base.url.lastIndexOf('/', base.queryStart - 1);
+            appendPath(sb, ref, start, pathEnd, base.url.substring(base.pathStart, lastSlash + 1));
+        }
+        if (query >= 0) {
+            appendNormalized(sb, ref, query, end, false);
+        }
+        return sb.toString();
+    }
+
+    /** Builds the canonical URL from {@code scheme} and the authority, path and query of {@code s}. */
+    private static String canonical(String scheme, String s, int authorityStart, int end) {
+        int fragment = indexOf(s, '#', authorityStart, end);
+        if (fragment >= 0) end = fragment;
+        int authorityEnd = authorityEnd(s, authorityStart, end);
+        int hostStart = authorityStart;
+        int at = s.lastIndexOf('@', authorityEnd - 1);
+        if (at >= authorityStart) hostStart = at + 1;
+        int hostEnd = hostEnd(s, hostStart, authorityEnd);
+        if (hostEnd == hostStart) {
+            return "";
+        }
+
+        int port = -1;
+        if (hostEnd < authorityEnd) {
+            // ":" followed by digits; an empty port means the default.
+            port = 0;
+            for (int i = hostEnd + 1; i < authorityEnd; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9' || port > 65535) return "";
+                port = port * 10 + (c - '0');
             }
+            if (port > 65535) return "";
+            if (hostEnd + 1 == authorityEnd) port = -1;
+            if (port == (scheme.equals("https") ? 443 : 80)) port = -1;
         }
-        try {
-            URL url = new URL(urlString);
-            String protocol = url.getProtocol().toLowerCase();
-            String host = url.getHost().toLowerCase();
-            if (host.isEmpty()) return "";
 
-            int port = url.getPort();
-            String path = url.getPath();
-            String query = url.getQuery();
+        StringBuilder sb = new StringBuilder(end - authorityStart + 16);
+        sb.append(scheme).append("://");
+        for (int i = hostStart; i < hostEnd; i++) {
+            sb.append(Character.toLowerCase(s.charAt(i)));
+        }
+        if (port != -1) {
+            sb.append(':').append(port);
+        }
+        int query = indexOf(s, '?', authorityEnd, end);
+        int pathEnd = query >= 0 ? query : end;
+        if (pathEnd == authorityEnd) {
+            sb.append('/');
+        } else {
+            appendPath(sb, s, authorityEnd, pathEnd, null);
+        }
+        if (query >= 0) {
+            appendNormalized(sb, s, query, end, false);
+        }
+        return sb.toString();
+    }
 
-            if (path.isEmpty()) {
-                path = "/";
+    /**
+     * Appends {@code prefix} (a directory ending in '/', or null) followed by the path in
+     * {@code s[start, end)}, with percent-escapes normalized, slash runs collapsed and dot segments
+     * removed.
+     */
+    private static void appendPath(StringBuilder sb, String s, int start, int end, String prefix) {
+        int pathStart = sb.length();
+        if (prefix != null) sb.append(prefix);
+        appendNormalized(sb, s, start, end, true);
+        removeDotSegments(sb, pathStart);
+    }
+
+    /**
+     * Normalizes a path and query the way {@link #resolve} does, without resolving dot segments:
+     * unreserved characters decoded, other escapes in upper case, slash runs in the path collapsed.
+     * For text that is matched against canonical URLs, such as robots.txt patterns.
+     */
+    public static String normalizePathAndQuery(String pathAndQuery) {
+        int query = pathAndQuery.indexOf('?');
+        int pathEnd = query < 0 ? pathAndQuery.length() : query;
+        StringBuilder sb = new StringBuilder(pathAndQuery.length());
+        appendNormalized(sb, pathAndQuery, 0, pathEnd, true);
+        appendNormalized(sb, pathAndQuery, pathEnd, pathAndQuery.length(), false);
+        return sb.toString();
+    }
+
+    /** Appends {@code s[start, end)} with percent-escapes normalized; in a path, slash runs collapse. */
+    private static void appendNormalized(StringBuilder sb, String s, int start, int end, boolean path) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < end && isHex(s.charAt(i + 1)) && isHex(s.charAt(i + 2))) {
+                char decoded = (char) (Character.digit(s.charAt(i + 1), 16) * 16 + Character.digit(s.charAt(i + 2), 16));
+                if (isUnreserved(decoded)) {
+                    sb.append(decoded);
+                } else {
+                    sb.append('%').append(Character.toUpperCase(s.charAt(i + 1))).append(Character.toUpperCase(s.charAt(i + 2)));
+                }
+                i += 2;
+            } else if (path && c == '/' && sb.length() > 0 && sb.charAt(sb.length() - 1) == '/') {
+                // Collapse "//" runs.
+            } else {
+                sb.append(c);
             }
-            path = path.replaceAll("/{2,}", "/");
+        }
+    }
 
-            StringBuilder sb = new StringBuilder();
-            sb.append(protocol).append("://").append(host);
-            if (port != -1 && port != url.getDefaultPort()) {
-                sb.append(":").append(port);
+    /** RFC 3986 section 5.2.4 on the path that starts at {@code from} in {@code sb}, in place. */
+    private static void removeDotSegments(StringBuilder sb, int from) {
+        int read = from;
+        int write = from;
+        int end = sb.length();
+        while (read < end) {
+            // Each iteration handles one "/segment".
+            int next = read + 1;
+            while (next < end && sb.charAt(next) != '/') next++;
+            int length = next - read - 1;
+            boolean last = next >= end;
+            if (length == 1 && sb.charAt(read + 1) == '.') {
+                if (last) sb.setCharAt(write++, '/');
+            } else if (length == 2 && sb.charAt(read + 1) == '.' && sb.charAt(read + 2) == '.') {
+                // Drop the previous segment, never going above the root.
+                int previous = write - 1;
+                while (previous > from && sb.charAt(previous) != '/') previous--;
+                write = Math.max(from, previous);
+                if (last) sb.setCharAt(write++, '/');
+            } else {
+                for (int i = read; i < next; i++) {
+                    sb.setCharAt(write++, sb.charAt(i));
+                }
             }
-            sb.append(path);
-            if (query != null) {
-                sb.append("?").append(query);
+            read = next;
+        }
+        if (write == from) {
+            sb.setLength(from);
+            sb.append('/');
+        } else {
+            sb.setLength(write);
+        }
+    }
+
+    /** Whether {@code url} is an absolute http(s) URL that {@link #canonical} would return unchanged. */
+    private static boolean isCanonical(String url) {
+        int hostStart;
+        if (url.startsWith("https://")) hostStart = 8;
+        else if (url.startsWith("http://")) hostStart = 7;
+        else return false;
+        int end = url.length();
+        if (indexOf(url, '#', hostStart, end) >= 0) return false;
+        int authorityEnd = authorityEnd(url, hostStart, end);
+        if (authorityEnd == end || url.charAt(authorityEnd) != '/') return false;
+        int hostEnd = hostEnd(url, hostStart, authorityEnd);
+        if (hostEnd == hostStart || indexOf(url, '@', hostStart, authorityEnd) >= 0 || hasUpperCase(url, hostStart, hostEnd)) {
+            return false;
+        }
+        if (hostEnd < authorityEnd) {
+            int digits = authorityEnd - hostEnd - 1;
+            if (digits == 0 || digits > 5 || url.charAt(hostEnd + 1) == '0') return false;
+            int port = 0;
+            for (int i = hostEnd + 1; i < authorityEnd; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9') return false;
+                port = port * 10 + (c - '0');
             }
-            return sb.toString();
-        } catch (Exception e) {
-            return urlString;
+            if (port > 65535 || port == (hostStart == 8 ? 443 : 80)) return false;
         }
+        boolean inPath = true;
+        for (int i = authorityEnd; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?') {
+                inPath = false;
+            } else if (c == '%') {
+                if (i + 2 < end && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))) {
+                    char decoded = (char) (Character.digit(url.charAt(i + 1), 16) * 16 + Character.digit(url.charAt(i + 2), 16));
+                    if (isUnreserved(decoded) || Character.isLowerCase(url.charAt(i + 1)) || Character.isLowerCase(url.charAt(i + 2))) {
+                        return false;
+                    }
+                }
+            } else if (inPath && c == '/' && i + 1 < end) {
+                char next = url.charAt(i + 1);
+                if (next == '/') return false;
+                if (next == '.') {
+                    // "/." or "/.." as a whole segment.
+                    int segmentEnd = i + 2;
+                    if (segmentEnd < end && url.charAt(segmentEnd) == '.') segmentEnd++;
+                    if (segmentEnd == end || url.charAt(segmentEnd) == '/' || url.charAt(segmentEnd) == '?') return false;
+                }
+            }
+        }
+        return true;
     }
 
-    public static boolean isIgnoredLink(String url) {
-        String lower = url.toLowerCase();
-        int hashIdx = lower.indexOf('#');
-        if (hashIdx != -1) {
-            lower = lower.substring(0, hashIdx);
+    private static int authorityEnd(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '/' || c == '?' || c == '#') return i;
         }
+        return end;
+    }
 
-        int queryIdx = lower.indexOf('?');
-        if (queryIdx != -1) {
-            lower = lower.substring(0, queryIdx);
+    /** End of the host in an authority (without user info): before the port, past an IPv6 literal. */
+    private static int hostEnd(String s, int hostStart, int authorityEnd) {
+        int from = hostStart;
+        if (from < authorityEnd && s.charAt(from) == '[') {
+            int close = indexOf(s, ']', from, authorityEnd);
+            if (close >= 0) from = close;
         }
+        int colon = indexOf(s, ':', from, authorityEnd);
+        return colon >= 0 ? colon : authorityEnd;
+    }
 
-        if (lower.endsWith(".pdf") || lower.endsWith(".doc") || lower.endsWith(".docx") || lower.endsWith(".txt")) {
-            return false;
+    private static int indexOf(String s, char c, int start, int end) {
+        int i = s.indexOf(c, start);
+        return i >= 0 && i < end ? i : -1;
+    }
+
+    private static boolean hasUpperCase(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c > 0x7F && Character.isUpperCase(c)) return true;
         }
+        return false;
+    }
 
-        return lower.endsWith(".css") || lower.endsWith(".js") || lower.endsWith(".png")
-                || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".gif")
-                || lower.endsWith(".svg") || lower.endsWith(".ico") || lower.endsWith(".woff")
-                || lower.endsWith(".woff2") || lower.endsWith(".ttf") || lower.endsWith(".otf")
-                || lower.endsWith(".mp3") || lower.endsWith(".mp4") || lower.endsWith(".wav")
-                || lower.endsWith(".avi") || lower.endsWith(".mov") || lower.endsWith(".wmv")
-                || lower.endsWith(".zip") || lower.endsWith(".rar") || lower.endsWith(".7z") || lower.endsWith(".tar.gz")
-                || lower.contains("googleads") || lower.contains("doubleclick")
-                || lower.contains("facebook.com/sharer") || lower.contains("twitter.com/intent/tweet")
-                || lower.contains("linkedin.com/share") || lower.contains("pinterest.com/pin")
-                || lower.contains("/tag/") || lower.contains("/tags/") || lower.contains("/author/")
-                || lower.contains("video.klix.ba") || lower.contains("static.klix.ba")
-                || lower.contains("sdk.privacy-center.org");
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isUnreserved(char c) {
+        return isAlpha(c) || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * Converts a crawled URL into a {@link URI}, percent-encoding characters that browsers
+     * tolerate but {@code java.net.URI} rejects (spaces, non-ASCII, {@code |} and the like).
+     */
+    public static URI toUri(String url) {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            StringBuilder sb = new StringBuilder(url.length() + 16);
+            for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+                int c = b & 0xFF;
+                if (c > 0x20 && c < 0x7F && "\"<>\\^`{|}".indexOf(c) == -1) {
+                    sb.append((char) c);
+                } else {
+                    sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                            .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+                }
+            }
+            return URI.create(sb.toString());
+        }
     }
 }
@@ -1,8 +1,27 @@
 package com.webgrep;
 
+import com.webgrep.config.CliOptions;
+import com.webgrep.core.ContentExtractor;
+import com.webgrep.core.CrawlJournal;
+import com.webgrep.core.Crawler;
+import com.webgrep.core.FrontierEntry;
+import com.webgrep.core.MatchEngine;
+import com.webgrep.reporting.CrawlMetrics;
+import com.webgrep.reporting.CrawlResult;
+import com.webgrep.reporting.NdjsonWriter;
 import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
 import static org.junit.Assert.*;
 
 public class AppIntegrationTest {
@@ -33,10 +52,257 @@ public class AppIntegrationTest {
     }
 
     @Test
-    public void testLocalCrawlConstraints() {
-        // This would ideally use a local mock server, but we can test the Crawler logic
-        // with a depth of 0 to avoid external networking if possible.
-        // Since we can't easily mock the network here without adding dependencies,
-        // we'll stick to unit tests for constraints in the CrawlerTest if we had one.
+    public void testLocalCrawlConstraints() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.fanOut = 3;
+            site.duplicateEvery = 10;
+            site.bigEvery = 20;
+            site.bigBytes = 256 * 1024;
+            site.slowEvery = 15;
+            site.slowMs = 50;
+            site.limitedEvery = 25;
+            site.binaries = true;
+            site.start();
+
+            CrawlResult full = crawl(site, "-d", "100");
+            assertEquals(site.reachableDocuments(), full.visitedCount);
+            assertEquals(site.limitedCount(), full.blockedUrls.size());
+            assertEquals(site.duplicateCount() - 1, full.contentDedupeHits);
+            assertTrue(full.results.get(site.url("/files/sample.pdf")) > 0);
+            assertTrue(full.results.get(site.url("/files/sample.docx")) > 0);
+            // Every URL is requested once, cycles notwithstanding; rate-limited ones once per attempt; plus robots.txt.
+            assertEquals(site.reachableDocuments() + site.limitedCount() * 3 + 1, site.requests.get());
+            assertEquals(site.limitedCount() * 2, full.retries);
+
+            CrawlResult shallow = crawl(site, "-d", "1");
+            // Page 0, its three children, the binaries; the links back to page 0 are not refetched.
+            assertEquals(6, shallow.visitedCount);
+
+            CrawlResult capped = crawl(site, "-d", "100", "-p", "10");
+            assertEquals(10, capped.visitedCount + capped.blockedUrls.size());
+        }
+    }
+
+    @Test
+    public void testCrawlThroughputBaseline() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 300;
+            site.fanOut = 6;
+            site.duplicateEvery = 30;
+            site.bigEvery = 100;
+            site.start();
+            CliOptions options = options(site, "-d", "100", "-c", "8", "--host-connections", "8");
+            CrawlHarness.Report report = CrawlHarness.run(options);
+
+            assertEquals(site.reachableDocuments(), report.pages);
+            // Recorded only on request: mvn test -Dwebgrep.baseline=target/crawl-baseline.json
+            String baseline = System.getProperty("webgrep.baseline");
+            if (baseline != null && !baseline.isEmpty()) {
+                Path out = Paths.get(baseline).toAbsolutePath();
+                Files.createDirectories(out.getParent());
+                Files.writeString(out, report.toJson() + "\n");
+            }
+        }
+    }
+
+    @Test
+    public void testCrawlMetrics() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 30;
+            site.slowEvery = 10;
+            site.slowMs = 100;
+            site.binaries = true;
+            site.start();
+
+            assertNull(crawl(site, "-d", "100").metrics);
+            CrawlMetrics metrics = crawl(site, "-d", "100", "--metrics").metrics;
+            assertEquals(site.reachableDocuments(), metrics.histogram(CrawlMetrics.Phase.PAGE).count());
+            assertEquals(site.reachableDocuments() - 2, metrics.histogram(CrawlMetrics.Phase.PARSE).count());
+            assertEquals(2, metrics.histogram(CrawlMetrics.Phase.TIKA).count());
+            assertTrue(metrics.bytesByContentType().get("application/pdf") > 0);
+            // The slow pages wait 100 ms before their headers go out, so they rank among the slowest.
+            int slowPages = 0;
+            for (CrawlMetrics.SlowPage page : metrics.slowest()) {
+                if (!page.url.contains("/slow/")) continue;
+                assertTrue(page.nanos(CrawlMetrics.Phase.CONNECT) >= 100_000_000L);
+                slowPages++;
+            }
+            assertEquals(3, slowPages);
+        }
+    }
+
+    @Test
+    public void testNdjsonStreamsResults() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.limitedEvery = 10;
+            site.start();
+            CrawlResult retained = crawl(site, "-d", "100", "--max-retries", "0");
+
+            CliOptions options = options(site, "-d", "100", "--max-retries", "0", "--output", "ndjson", "--progress-interval-ms", "0");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            NdjsonWriter ndjson = new NdjsonWriter(out, options);
+            CrawlResult streamed = new Crawler(options, new ContentExtractor(), new MatchEngine()).crawl(ndjson);
+            ndjson.summary(streamed);
+
+            assertTrue(streamed.results.isEmpty());
+            assertTrue(streamed.blockedUrls.isEmpty());
+            assertEquals(retained.totalMatches, streamed.totalMatches);
+            List<String> lines = out.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+            List<String> matched = new ArrayList<>();
+            int blocked = 0;
+            for (String line : lines.subList(0, lines.size() - 1)) {
+                if (line.startsWith("{\"type\": \"match\", \"url\": \"")) {
+                    matched.add(line.substring(line.indexOf("\"url\": \"") + 8, line.indexOf("\", \"count\"")));
+                } else if (line.startsWith("{\"type\": \"blocked\"")) {
+                    blocked++;
+                } else {
+                    fail(line);
+                }
+            }
+            // Discovery order follows completion order, so only the set of pages is the same from run to run.
+            assertEquals(retained.results.keySet(), new HashSet<>(matched));
+            assertEquals(matched.size(), new HashSet<>(matched).size());
+            assertEquals(site.limitedCount(), blocked);
+            String summary = lines.get(lines.size() - 1);
+            assertTrue(summary, summary.startsWith("{\"type\": \"summary\""));
+            assertTrue(summary, summary.contains("\"total_matches\": " + retained.totalMatches + ","));
+        }
+    }
+
+    @Test
+    public void testSlowPageDoesNotHoldUpDiscovery() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.slowPage = 1;
+            site.slowMs = 1500;
+            site.start();
+
+            CrawlResult result = crawl(site, "-d", "100");
+            assertEquals(site.pages, result.visitedCount);
+            // Pages 5-8 and 21-36 hang below page 1; the other 19 are found and fetched while it loads.
+            assertTrue(String.valueOf(site.requestsDuringSlowPage), site.requestsDuringSlowPage > 15);
+        }
+    }
+
+    @Test
+    public void testThrottledPagesAreRetried() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.flakyEvery = 8;
+            site.start();
+
+            CrawlResult result = crawl(site, "-d", "100");
+            assertEquals(site.reachableDocuments(), result.visitedCount);
+            assertEquals(site.flakyCount(), result.retries);
+            assertEquals(0, (int) result.errorCounts.get(CrawlResult.ErrorType.NETWORK_ERROR));
+            for (int n = 7; n < site.pages; n += 8) {
+                assertEquals(1, (int) result.results.get(site.url("/flaky/" + n)));
+            }
+            CrawlResult.HostRate rate = result.hostRates.get(0);
+            assertEquals(site.reachableDocuments() + site.flakyCount(), rate.requests);
+            assertEquals(site.flakyCount(), rate.throttled);
+            assertTrue(rate.requestsPerSecond > 0);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void testStalledBodyTimesOut() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 10;
+            site.stallEvery = 5;
+            site.start();
+
+            CrawlResult result = crawl(site, "-d", "100", "--timeout-ms", "500", "--max-retries", "0");
+            assertEquals(site.reachableDocuments(), result.visitedCount);
+            assertEquals(site.stallCount(), (int) result.errorCounts.get(CrawlResult.ErrorType.NETWORK_ERROR));
+        }
+    }
+
+    @Test
+    public void testRobotsAndSitemaps() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.sitemaps = true;
+            site.start();
+            // Pages 10-19 are children of pages 2-4 and have no children of their own within the site.
+            site.robotsTxt = "User-agent: *\nDisallow: /page/1\nAllow: /page/1$\nCrawl-delay: 0.02\n\n"
+                    + "User-agent: OtherBot\nDisallow: /\n\nSitemap: " + site.url("/sitemap.xml") + "\n";
+
+            CrawlResult polite = crawl(site, "-d", "100");
+            assertEquals(30, polite.visitedCount);
+            assertEquals(10, (int) polite.errorCounts.get(CrawlResult.ErrorType.SKIPPED_ROBOTS));
+            assertTrue(polite.hostRates.get(0).delayMs >= 20);
+            assertEquals(40, crawl(site, "-d", "100", "--ignore-robots").visitedCount);
+            // Disallowed pages do not use up the page budget.
+            assertEquals(30, crawl(site, "-d", "100", "-p", "30").visitedCount);
+
+            // Depth 1 reaches page 0 and its four children by links, every other page through the sitemaps.
+            assertEquals(5, crawl(site, "-d", "1", "--ignore-robots").visitedCount);
+            CrawlResult seeded = crawl(site, "-d", "1", "--ignore-robots", "--use-sitemaps");
+            assertEquals(39, seeded.sitemapUrls);
+            assertEquals(40, seeded.visitedCount);
+
+            // The Crawl-delay holds from the first request, even with many pages queued before any response.
+            site.robotsTxt = "User-agent: *\nCrawl-delay: 0.05\n";
+            long started = System.nanoTime();
+            assertEquals(8, crawl(site, "-d", "1", "--use-sitemaps", "-p", "8").visitedCount);
+            assertTrue((System.nanoTime() - started) / 1_000_000 >= 7 * 50);
+
+            // Without a Sitemap line, /sitemap.xml is tried; the page budget stops the reading early.
+            site.robotsTxt = null;
+            CrawlResult capped = crawl(site, "-d", "1", "--use-sitemaps", "-p", "12");
+            assertEquals(11, capped.sitemapUrls);
+            assertEquals(12, capped.visitedCount);
+        }
+    }
+
+    @Test
+    public void testResumeKeepsDeferredLinks() throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = 40;
+            site.start();
+            Path dir = Files.createTempDirectory("webgrep-test");
+            // Links parked by near-duplicate pages are in the journal.
+            CrawlResult full = crawl(site, "-d", "100", "--state-dir", dir.toString(), "--near-dup-distance", "3",
+                    "--near-dup-action", "defer");
+            assertTrue(full.nearDuplicatePages > 0);
+            int[] parked = new int[1];
+            CrawlJournal.open(dir, true, site.url("/page/0"), List.of(SyntheticSite.KEYWORD), "default", new CrawlJournal.Replay() {
+                @Override public void enqueued(FrontierEntry entry) { if (entry.seq < 0) parked[0]++; }
+                @Override public void committed(long seq, boolean fetched, boolean parsed, CrawlResult.ErrorType error,
+                                                String blockedReason, int[] counts, OptionalLong simhash) {}
+                @Override public void requeued(long oldSeq, FrontierEntry entry) {}
+            }).close();
+            assertTrue(parked[0] > 0);
+
+            // A crawl interrupted after committing page 0 as a near-duplicate, its one link parked.
+            try (CrawlJournal journal = CrawlJournal.open(dir, false, site.url("/page/0"), List.of(SyntheticSite.KEYWORD),
+                    "default", null)) {
+                journal.enqueued(new FrontierEntry(0, site.url("/page/0"), "127.0.0.1", 0));
+                journal.enqueued(new FrontierEntry(-1, site.url("/page/1"), "127.0.0.1", 1));
+                journal.committed(0, true, true, null, null, new int[] {1}, OptionalLong.empty());
+            }
+
+            CrawlResult resumed = crawl(site, "-d", "0", "--state-dir", dir.toString(), "--resume",
+                    "--near-dup-distance", "3", "--near-dup-action", "defer");
+            assertEquals(1, resumed.resumedPages);
+            assertEquals(2, resumed.visitedCount);
+            assertTrue(resumed.results.containsKey(site.url("/page/1")));
+        }
+    }
+
+    private static CrawlResult crawl(SyntheticSite site, String... args) {
+        return new Crawler(options(site, args), new ContentExtractor(), new MatchEngine()).crawl();
+    }
+
+    private static CliOptions options(SyntheticSite site, String... args) {
+        List<String> all = new ArrayList<>(List.of("-u", site.url("/page/0"), "-k", SyntheticSite.KEYWORD,
+                "--host-delay-ms", "0", "-c", "4", "--host-connections", "4"));
+        all.addAll(Arrays.asList(args));
+        CliOptions options = CliOptions.parse(all.toArray(new String[0]));
+        options.validate();
+        return options;
     }
 }
@@ -0,0 +1,200 @@
+package com.webgrep;
+
+import com.webgrep.config.CliOptions;
+import com.webgrep.core.ContentExtractor;
+import com.webgrep.core.Crawler;
+import com.webgrep.core.FetchResponse;
+import com.webgrep.core.Fetcher;
+import com.webgrep.core.HttpClientFetcher;
+import com.webgrep.core.MatchEngine;
+import com.webgrep.reporting.CrawlResult;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs {@link Crawler#crawl()} and measures it: pages per second, fetch latency percentiles,
+ * bytes allocated by all threads and peak heap. Latency is timed around the fetcher, so it covers
+ * the HTTP exchange but not parsing. Allocation and heap are sampled every few milliseconds;
+ * threads that start and finish between two samples are missed, which the crawler's long-lived
+ * pools do not do.
+ * <p>
+ * {@code main} crawls a {@link SyntheticSite} for manual runs:
+ * {@code java -cp target/test-classes:target/WebGrep-1.0-SNAPSHOT.jar com.webgrep.CrawlHarness [pages] [fanOut] [concurrency]}.
+ */
+final class CrawlHarness {
+
+    static final class Report {
+        CrawlResult result;
+        int pages;
+        double seconds;
+        double p50Ms;
+        double p99Ms;
+        long allocatedBytes;
+        long peakHeapBytes;
+
+        double pagesPerSecond() {
+            return seconds == 0 ? 0 : pages / seconds;
+        }
+
+        double allocationMbPerSecond() {
+            return seconds == 0 ? 0 : allocatedBytes / seconds / (1024 * 1024);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{ \"pages\": %d, \"seconds\": %.3f, \"pages_per_sec\": %.1f, \"p50_ms\": %.2f, "
+                    + "\"p99_ms\": %.2f, \"allocated_mb\": %.1f, \"alloc_mb_per_sec\": %.1f, \"peak_heap_mb\": %.1f }",
+                    pages, seconds, pagesPerSecond(), p50Ms, p99Ms, allocatedBytes / 1048576.0, allocationMbPerSecond(),
+                    peakHeapBytes / 1048576.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d pages in %.2f s (%.1f pages/s), fetch p50 %.1f ms, p99 %.1f ms, "
+                    + "%.1f MB/s allocated, peak heap %.1f MB", pages, seconds, pagesPerSecond(), p50Ms, p99Ms,
+                    allocationMbPerSecond(), peakHeapBytes / 1048576.0);
+        }
+    }
+
+    private CrawlHarness() {}
+
+    static Report run(CliOptions options) throws InterruptedException {
+        TimingFetcher fetcher = new TimingFetcher(new HttpClientFetcher(options));
+        Sampler sampler = new Sampler();
+        Report report = new Report();
+        try (fetcher) {
+            sampler.start();
+            long start = System.nanoTime();
+            report.result = new Crawler(options, new ContentExtractor(), new MatchEngine(), fetcher).crawl();
+            report.seconds = (System.nanoTime() - start) / 1e9;
+        } finally {
+            sampler.finish();
+        }
+        report.pages = report.result.visitedCount;
+        long[] latencies = fetcher.latencies();
+        report.p50Ms = percentile(latencies, 0.50) / 1e6;
+        report.p99Ms = percentile(latencies, 0.99) / 1e6;
+        report.allocatedBytes = sampler.allocatedBytes();
+        report.peakHeapBytes = sampler.peakHeap;
+        return report;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /** Times every fetch. */
+    private static final class TimingFetcher implements Fetcher {
+        private final Fetcher delegate;
+        private long[] latencies = new long[1024];
+        private int count;
+
+        TimingFetcher(Fetcher delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public FetchResponse fetch(String url) throws IOException, InterruptedException {
+            return fetch(url, Map.of());
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> headers) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            try {
+                return headers.isEmpty() ? delegate.fetch(url) : delegate.fetch(url, headers);
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        private synchronized void record(long nanos) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = nanos;
+        }
+
+        synchronized long[] latencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    /** Polls per-thread allocation counters and heap usage on a daemon thread. */
+    private static final class Sampler extends Thread {
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> baseline = new HashMap<>();
+        private final Map<Long, Long> latest = new HashMap<>();
+        private volatile boolean done;
+        volatile long peakHeap;
+
+        Sampler() {
+            super("crawl-harness-sampler");
+            setDaemon(true);
+            sample(baseline);
+        }
+
+        @Override
+        public void run() {
+            while (!done) {
+                sample(latest);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void finish() throws InterruptedException {
+            done = true;
+            join();
+            sample(latest);
+        }
+
+        long allocatedBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+                total += entry.getValue() - baseline.getOrDefault(entry.getKey(), 0L);
+            }
+            return total;
+        }
+
+        private synchronized void sample(Map<Long, Long> into) {
+            long[] ids = threads.getAllThreadIds();
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (allocated[i] >= 0) into.put(ids[i], allocated[i]);
+            }
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            if (heap > peakHeap) peakHeap = heap;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (SyntheticSite site = new SyntheticSite()) {
+            site.pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+            site.fanOut = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+            site.duplicateEvery = 50;
+            site.bigEvery = 200;
+            site.start();
+            String concurrency = args.length > 2 ? args[2] : "8";
+            CliOptions options = CliOptions.parse(new String[] {"-u", site.url("/page/0"), "-k", SyntheticSite.KEYWORD,
+                    "-d", "1000", "-p", String.valueOf(site.reachableDocuments() + 1), "-c", concurrency,
+                    "--host-connections", concurrency, "--host-delay-ms", "0"});
+            options.validate();
+            System.out.println(run(options));
+        }
+    }
+}
@@ -1,9 +1,49 @@
 package com.webgrep;
 
 import com.webgrep.config.CliOptions;
+import com.webgrep.core.BloomVisitedSet;
+import com.webgrep.core.CompiledQuery;
+import com.webgrep.core.ContentExtractor;
+import com.webgrep.core.CrawlJournal;
+import com.webgrep.core.ExtractionException;
+import com.webgrep.core.FetchLimits;
+import com.webgrep.core.FingerprintVisitedSet;
+import com.webgrep.core.FrontierEntry;
+import com.webgrep.core.HostScheduler;
+import com.webgrep.core.HtmlScanner;
+import com.webgrep.core.FuzzyMatcher;
 import com.webgrep.core.MatchEngine;
+import com.webgrep.core.MatchStream;
+import com.webgrep.core.ResponseCache;
+import com.webgrep.core.RobotsTxt;
+import com.webgrep.core.SimHashIndex;
+import com.webgrep.core.SpillQueue;
+import com.webgrep.core.ThreadedBinaryExtractor;
+import com.webgrep.core.VisitedSet;
+import com.webgrep.reporting.CrawlResult;
+import com.webgrep.reporting.LatencyHistogram;
+import com.webgrep.utils.AhoCorasick;
+import com.webgrep.utils.Hashing;
+import com.webgrep.utils.SimHash;
+import com.webgrep.utils.TextFolding;
+import com.webgrep.utils.UrlFilter;
 import com.webgrep.utils.UrlUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
 import static org.junit.Assert.*;
 
 public class MainTest {
@@ -16,6 +56,127 @@ public class MainTest {
         assertEquals("http://example.com/a/c", UrlUtils.normalizeUrl("/a/c", "http://example.com/a/b"));
     }
 
+    @Test
+    public void testCanonicalizeUrl() {
+        UrlUtils.ParsedUrl base = UrlUtils.parse("HTTP://User@Example.COM:80/a/b/c?x=1#top");
+        assertEquals("http://example.com/a/b/c?x=1", base.toString());
+        assertEquals("example.com", base.host());
+
+        assertEquals("http://example.com/a/d", UrlUtils.resolve("../d", base));
+        assertEquals("http://example.com/a/b/", UrlUtils.resolve(".", base));
+        assertEquals("http://example.com/g", UrlUtils.resolve("/./x/../../g", base));
+        assertEquals("http://example.com/a/b/c?y", UrlUtils.resolve("?y", base));
+        assertEquals("http://example.com/a/b/c?x=1", UrlUtils.resolve("#frag", base));
+        assertEquals("https://example.com:8443/%7Cx~y%2F", UrlUtils.resolve("https://EXAMPLE.com:8443//%7c%78%7E%79%2f", base));
+        assertEquals("https://example.com/", UrlUtils.resolve("https://example.com:443", base));
+        assertEquals("", UrlUtils.resolve("mailto:me@example.com", base));
+        assertEquals("", UrlUtils.resolve("javascript:void(0)", base));
+        assertEquals("", UrlUtils.resolve("http://example.com:99999/", base));
+
+        String canonical = "https://example.com/a/b?q=%20";
+        assertSame(canonical, UrlUtils.normalizeUrl(canonical, null));
+        assertEquals("[::1]", UrlUtils.hostOf("http://u:p@[::1]:8080/x"));
+        assertEquals("example.com", UrlUtils.hostOf("http://Example.com"));
+    }
+
+    @Test
+    public void testUrlFilterRules() {
+        UrlFilter defaults = UrlFilter.defaults();
+        assertTrue(defaults.isIgnored("https://example.com/static/site.CSS?v=3"));
+        assertTrue(defaults.isIgnored("https://example.com/files/archive.tar.gz"));
+        assertTrue(defaults.isIgnored("https://video.klix.ba/clip"));
+        assertTrue(defaults.isIgnored("https://example.com/blog/tag/news"));
+        assertFalse(defaults.isIgnored("https://example.com/report.pdf"));
+        assertFalse(defaults.isIgnored("https://example.com/app.json"));
+        assertFalse(defaults.isIgnored("https://notklix.ba/clip"));
+
+        UrlFilter filter = UrlFilter.of(List.of(
+                "# site rules",
+                "deny host example.org",
+                "deny path /private",
+                "allow path /private/press",
+                "deny contains sessionid",
+                "defaults"));
+        assertTrue(filter.isIgnored("https://cdn.example.org/page"));
+        assertFalse(filter.isIgnored("https://example.com/page?x=example.org"));
+        assertTrue(filter.isIgnored("https://example.com/private/docs"));
+        assertFalse(filter.isIgnored("https://example.com/private/press/2024"));
+        assertFalse(filter.isIgnored("https://example.com/about/private"));
+        assertTrue(filter.isIgnored("https://example.com/a;SessionId=1/page"));
+        assertTrue(filter.isIgnored("https://example.com/logo.png"));
+        assertEquals(Long.valueOf(1), filter.hits().get("deny host example.org"));
+        assertEquals(Long.valueOf(1), filter.hits().get("allow path /private/press"));
+        assertEquals(Long.valueOf(1), filter.hits().get("deny ext png"));
+
+        try {
+            UrlFilter.of(List.of("deny suffix .png"));
+            fail("unknown rule kind accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testRobotsTxtRules() {
+        RobotsTxt robots = RobotsTxt.parse(String.join("\n",
+                "# comment",
+                "User-agent: *",
+                "Disallow: /",
+                "",
+                "User-agent: SomeBot",
+                "User-agent: webgrep/2.0",
+                "Disallow: /private",
+                "Allow: /private/press",
+                "Disallow: /*.pdf$",
+                "Disallow: /search*q=",
+                "Allow: /",
+                "Crawl-delay: 1.5",
+                "",
+                "User-agent: webgrep",
+                "Disallow: /tmp/  # merged into the group above",
+                "Sitemap: https://example.com/sitemap.xml"), "WebGrep");
+        assertTrue(robots.isAllowed("/"));
+        assertFalse(robots.isAllowed("/private/docs"));
+        assertTrue(robots.isAllowed("/private/press/2024"));
+        assertFalse(robots.isAllowed("/files/report.pdf"));
+        assertTrue(robots.isAllowed("/files/report.pdf?download=1"));
+        assertFalse(robots.isAllowed("/search?lang=en&q=crawler"));
+        assertTrue(robots.isAllowed("/searching"));
+        assertFalse(robots.isAllowed("/tmp/x"));
+        assertTrue(robots.isAllowed("/robots.txt"));
+        assertEquals(1500, robots.crawlDelayMs());
+        assertEquals(List.of("https://example.com/sitemap.xml"), robots.sitemaps());
+
+        RobotsTxt generic = RobotsTxt.parse("User-agent: *\nDisallow: /caf\u00e9\nDisallow:\n", "WebGrep");
+        assertFalse(generic.isAllowed("/caf%C3%A9/menu"));
+        assertTrue(generic.isAllowed("/cafe"));
+        assertEquals(-1, generic.crawlDelayMs());
+        // Patterns are compared in canonical form: unreserved escapes decoded, others upper-cased, raw non-ASCII encoded.
+        RobotsTxt escaped = RobotsTxt.parse("User-agent: *\nDisallow: /%7euser/\nDisallow: /a%2fb\n", "WebGrep");
+        assertFalse(escaped.isAllowed(UrlUtils.parse("https://a.test/%7Euser/index.html").path()));
+        assertFalse(escaped.isAllowed("/~user/index.html"));
+        assertFalse(escaped.isAllowed("/a%2Fb"));
+        assertTrue(escaped.isAllowed("/a/b"));
+        assertFalse(generic.isAllowed("/caf\u00e9/menu"));
+        assertFalse(RobotsTxt.disallowAll().isAllowed("/index.html"));
+        assertTrue(RobotsTxt.allowAll().isAllowed("/index.html"));
+    }
+
+    @Test
+    public void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileNanos(0.99));
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.maxNanos());
+        assertEquals(500_500, histogram.meanNanos(), 0.001);
+        // Log-linear buckets: within an eighth of the true value.
+        assertEquals(500_000, histogram.percentileNanos(0.5), 500_000 / 8.0);
+        assertEquals(990_000, histogram.percentileNanos(0.99), 990_000 / 8.0);
+        assertEquals(1_000_000, histogram.percentileNanos(1.0));
+    }
+
     @Test
     public void testMatchEngine() {
         MatchEngine engine = new MatchEngine();
@@ -32,6 +193,104 @@ public class MainTest {
         assertEquals(1, engine.countMatches("Café", "cafe", "fuzzy"));
     }
 
+    @Test
+    public void testMultiKeywordMatching() {
+        MatchEngine engine = new MatchEngine();
+        String text = "Straße, STRASSE und strasse. Café au lait; aaaa";
+
+        assertArrayEquals(new int[]{2, 1, 2, 1}, engine.countMatches(text, List.of("strasse", "cafe", "aa", "lait"), "default"));
+        assertArrayEquals(new int[]{1, 0}, engine.countMatches(text, List.of("STRASSE", "cafe"), "exact"));
+        // Keywords missing from the literal text still go through the simplified fallback.
+        assertArrayEquals(new int[]{1, 2}, engine.countMatches(text, List.of("café au", "strasse"), "default"));
+        assertEquals(2, engine.countMatches("aaaa", "aa", "default"));
+    }
+
+    @Test
+    public void testAhoCorasickLargeKeywordList() {
+        Random random = new Random(7);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 4 + random.nextInt(9);
+            for (int j = 0; j < length; j++) sb.append((char) ('a' + random.nextInt(26)));
+            if (i % 50 == 0) sb.append('\u00e9');
+            patterns.add(sb.toString());
+        }
+        AhoCorasick automaton = new AhoCorasick(patterns);
+        // A dense 128-int row per state would need about 40 MB here.
+        assertTrue(automaton.memoryBytes() + " bytes", automaton.memoryBytes() < 8 * 1024 * 1024);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append(patterns.get(random.nextInt(patterns.size()))).append(random.nextBoolean() ? " " : "");
+        }
+        int[] found = new int[patterns.size()];
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = automaton.next(state, text.charAt(i));
+            for (int p : automaton.matches(state)) found[p]++;
+        }
+        for (int p = 0; p < patterns.size(); p++) {
+            int expected = 0;
+            for (int at = text.indexOf(patterns.get(p)); at >= 0; at = text.indexOf(patterns.get(p), at + 1)) expected++;
+            assertEquals(patterns.get(p), expected, found[p]);
+        }
+    }
+
+    @Test
+    public void testFuzzyMatcherAgreesWithLevenshtein() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            String keyword = randomWord(random, 1 + random.nextInt(round % 10 == 0 ? 80 : 12));
+            String word = random.nextBoolean() ? mutate(random, keyword) : randomWord(random, 1 + random.nextInt(14));
+            FuzzyMatcher matcher = new FuzzyMatcher(keyword);
+            int expected = levenshtein(word, keyword);
+            assertEquals(keyword + " / " + word, expected <= matcher.threshold(), matcher.matches(word));
+            assertEquals(keyword + " / " + word, expected, matcher.distance(word, Integer.MAX_VALUE - 1));
+        }
+        assertEquals(2, new MatchEngine().countMatches("Hallo there, helo!", "hello", "fuzzy"));
+    }
+
+    @Test
+    public void testFuzzyIgnoresEmptyWords() {
+        MatchEngine engine = new MatchEngine();
+        // Back-to-back separators end empty words, which are within a 1-letter keyword's threshold.
+        assertEquals(0, engine.countMatches("hello,  world . foo", "q", "fuzzy"));
+        assertArrayEquals(new int[]{0, 1}, engine.countMatches("hello,  world . foo", List.of("q", "world"), "fuzzy"));
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(4)));
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String word) {
+        StringBuilder sb = new StringBuilder(word);
+        for (int edits = random.nextInt(4); edits > 0 && sb.length() > 0; edits--) {
+            int pos = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0 -> sb.deleteCharAt(pos);
+                case 1 -> sb.insert(pos, (char) ('a' + random.nextInt(4)));
+                default -> sb.setCharAt(pos, (char) ('a' + random.nextInt(4)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int levenshtein(String s1, String s2) {
+        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
+        for (int i = 0; i <= s1.length(); i++) {
+            for (int j = 0; j <= s2.length(); j++) {
+                if (i == 0) dp[i][j] = j;
+                else if (j == 0) dp[i][j] = i;
+                else dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
+                        dp[i - 1][j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1));
+            }
+        }
+        return dp[s1.length()][s2.length()];
+    }
+
     @Test
     public void testSuperSimplify() {
         MatchEngine engine = new MatchEngine();
@@ -39,6 +298,20 @@ public class MainTest {
         assertEquals("helloworld123", engine.superSimplify("Hello-World_123!"));
     }
 
+    @Test
+    public void testTextFoldingMatchesNormalizerPipeline() {
+        StringBuilder sample = new StringBuilder("Ǆemal Ñoño İstanbul ÅNGSTRÖM Kelvin K ﬁ 𝐀 Ελληνικά");
+        for (char c = 0; c < 0x3000; c++) {
+            if (!Character.isSurrogate(c)) sample.append(c).append('x');
+        }
+        String text = sample.toString();
+        String reference = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "")
+                .toLowerCase().replaceAll("[^a-z0-9]", "");
+        assertEquals(reference, TextFolding.superSimplify(text));
+        String simple = "alreadysimple123";
+        assertSame(simple, TextFolding.superSimplify(simple));
+    }
+
     @Test
     public void testCliOptions() {
         String[] args = {"-u", "http://example.com", "-k", "test", "-d", "2", "-m", "exact"};
@@ -51,6 +324,16 @@ public class MainTest {
         assertEquals("exact", options.getMode());
     }
 
+    @Test
+    public void testCliOptionsMultipleKeywords() {
+        String[] args = {"-u", "http://example.com", "-k", "alpha", "--keyword", "beta", "-k", "alpha"};
+        CliOptions options = CliOptions.parse(args);
+        options.validate();
+
+        assertEquals(List.of("alpha", "beta"), options.getKeywords());
+        assertEquals("alpha", options.getKeyword());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testCliOptionsInvalidDepth() {
         String[] args = {"-u", "http://example.com", "-k", "test", "-d", "-1"};
@@ -64,4 +347,353 @@ public class MainTest {
         CliOptions options = CliOptions.parse(args);
         options.validate();
     }
+
+    @Test
+    public void testFetchLimitsStopsAtMaxBytes() throws Exception {
+        FetchLimits limits = new FetchLimits(100_000, List.of("text/html", "application/*"));
+
+        assertEquals(5, limits.readBody(new ByteArrayInputStream("hello".getBytes())).length);
+        assertEquals(100_000, limits.readBody(new ByteArrayInputStream(new byte[100_000])).length);
+
+        // An endless stream must be abandoned shortly after the limit instead of being buffered.
+        InputStream endless = new InputStream() {
+            long served;
+            @Override public int read() { served++; return 0; }
+            @Override public int read(byte[] b, int off, int len) { served += len; return len; }
+        };
+        assertNull(limits.readBody(endless));
+
+        assertTrue(limits.acceptsType("text/html; charset=UTF-8"));
+        assertTrue(limits.acceptsType("application/pdf"));
+        assertTrue(limits.acceptsType(null));
+        assertFalse(limits.acceptsType("image/png"));
+    }
+
+    @Test
+    public void testCompactVisitedSets() {
+        VisitedSet fingerprints = new FingerprintVisitedSet(16);
+        VisitedSet bloom = new BloomVisitedSet(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            String url = "https://example.com/page/" + i;
+            assertTrue(fingerprints.add(url));
+            assertFalse(fingerprints.add(url));
+            bloom.add(url);
+            assertTrue(bloom.contains(url));
+        }
+        assertEquals(10_000, fingerprints.size());
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (bloom.contains("https://example.com/other/" + i)) falsePositives++;
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 300);
+        assertTrue(bloom.memoryBytes() < 10_000 * 2);
+    }
+
+    @Test
+    public void testFrontierSpillsToDiskInOrder() throws Exception {
+        Path dir = Files.createTempDirectory("webgrep-test");
+        // Tiny budget and segments: almost everything spills and crosses many segment files.
+        try (HostScheduler frontier = new HostScheduler(0, 1, 1024, new SpillQueue(dir, 4096))) {
+            for (int i = 0; i < 5000; i++) {
+                frontier.add("h" + (i % 3), i, "https://h" + (i % 3) + "/page/" + i, i % 7, 0);
+            }
+            assertTrue(frontier.spilledCount() > 4900);
+
+            long[] lastSeq = {-1, -1, -1};
+            for (int i = 0; i < 5000; i++) {
+                FrontierEntry entry = frontier.poll(0);
+                assertNotNull(entry);
+                int host = (int) (entry.seq % 3);
+                assertEquals("https://h" + host + "/page/" + entry.seq, entry.url);
+                assertEquals(entry.seq % 7, entry.depth);
+                assertTrue(entry.seq > lastSeq[host]);
+                lastSeq[host] = entry.seq;
+                frontier.release(entry.host, 0);
+            }
+            assertTrue(frontier.isEmpty());
+        }
+        try (java.util.stream.Stream<Path> left = Files.list(dir)) {
+            assertEquals(0, left.count());
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testAdaptiveHostRate() {
+        HostScheduler frontier = new HostScheduler(100, 2).adaptive(4);
+        for (int i = 0; i < 200; i++) {
+            frontier.add("a", i, "https://a/" + i, 0, 0);
+        }
+        long now = 0;
+        // Healthy, steady responses: the limit climbs to the ceiling, the delay stays at the configured 100 ms.
+        for (int i = 0; i < 40; i++) {
+            now = frontier.nextReadyAt(now);
+            FrontierEntry entry = frontier.poll(now);
+            assertNotNull(entry);
+            frontier.release(entry.host, now + 20, 20, false);
+        }
+        CrawlResult.HostRate rate = frontier.rates(1).get(0);
+        assertEquals(100, rate.delayMs);
+        assertEquals(4, rate.connections);
+
+        // A burst of 429s from requests in flight together counts as one decrease.
+        List<FrontierEntry> inFlight = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            now = frontier.nextReadyAt(now);
+            inFlight.add(frontier.poll(now));
+        }
+        assertNull(frontier.poll(now + 1000));
+        for (FrontierEntry entry : inFlight) {
+            frontier.release(entry.host, now + 1, 20, true);
+        }
+        rate = frontier.rates(1).get(0);
+        assertEquals(2, rate.connections);
+        assertEquals(200, rate.delayMs);
+        assertEquals(4, rate.throttled);
+
+        // Failures without a response, e.g. a refused connection, neither speed the host up nor slow it down.
+        for (int i = 0; i < 20; i++) {
+            now = frontier.nextReadyAt(now);
+            FrontierEntry entry = frontier.poll(now);
+            frontier.release(entry.host, now, -1, false);
+        }
+        rate = frontier.rates(1).get(0);
+        assertEquals(2, rate.connections);
+        assertEquals(200, rate.delayMs);
+
+        // Recovery brings the delay back down to the configured value and no further.
+        for (int i = 0; i < 40; i++) {
+            now = frontier.nextReadyAt(now);
+            FrontierEntry entry = frontier.poll(now);
+            frontier.release(entry.host, now + 20, 20, false);
+        }
+        assertEquals(100, frontier.rates(1).get(0).delayMs);
+
+        // Retry-After holds the host back past its delay.
+        frontier.pause("a", now + 5000);
+        assertNull(frontier.poll(now + 4999));
+        assertNotNull(frontier.poll(now + 5000));
+    }
+
+    @Test
+    public void testCrawlJournalReplaysCompleteRecords() throws Exception {
+        Path dir = Files.createTempDirectory("webgrep-test");
+        List<String> keywords = List.of("alpha", "beta");
+        try (CrawlJournal journal = CrawlJournal.open(dir, false, "https://a.test/", keywords, "default", null)) {
+            journal.enqueued(new FrontierEntry(0, "https://a.test/", "a.test", 0));
+            journal.enqueued(new FrontierEntry(1, "https://a.test/x", "a.test", 1));
+            journal.committed(0, true, true, null, null, new int[] {2, 0}, OptionalLong.of(42));
+            journal.requeued(1, new FrontierEntry(2, "https://a.test/x", "a.test", 1));
+            journal.disallowed("https://a.test/private");
+            journal.enqueued(new FrontierEntry(3, "https://a.test/y", "a.test", 1));
+        }
+        // Simulate a crash in the middle of the last record.
+        Path file = dir.resolve(CrawlJournal.FILE_NAME);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+
+        List<String> enqueued = new java.util.ArrayList<>();
+        int[][] committed = new int[1][];
+        CrawlJournal.Replay replay = new CrawlJournal.Replay() {
+            @Override public void enqueued(FrontierEntry entry) { enqueued.add(entry.seq + " " + entry.url); }
+            @Override public void committed(long seq, boolean fetched, boolean parsed, CrawlResult.ErrorType error,
+                                            String blockedReason, int[] counts, OptionalLong simhash) {
+                committed[0] = counts;
+                assertEquals(42, simhash.getAsLong());
+            }
+            @Override public void requeued(long oldSeq, FrontierEntry entry) { enqueued.add(oldSeq + " -> " + entry.seq); }
+            @Override public void disallowed(String url) { enqueued.add("disallowed " + url); }
+        };
+        CrawlJournal.open(dir, true, "https://a.test/", keywords, "default", replay).close();
+        assertEquals(List.of("0 https://a.test/", "1 https://a.test/x", "1 -> 2", "disallowed https://a.test/private"), enqueued);
+        assertArrayEquals(new int[] {2, 0}, committed[0]);
+
+        try {
+            CrawlJournal.open(dir, true, "https://a.test/", List.of("gamma"), "default", replay);
+            fail("Resuming a different crawl must be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testResponseCacheEvictsLeastRecentlyUsed() throws Exception {
+        Path dir = Files.createTempDirectory("webgrep-test");
+        try (ResponseCache cache = new ResponseCache(dir, 250)) {
+            cache.put("https://a.test/1", "https://a.test/1", "text/html", "\"1\"", null, new byte[100]);
+            // Same bytes under another URL share one body file.
+            cache.put("https://a.test/2", "https://a.test/2", "text/html", "\"2\"", null, new byte[100]);
+            assertEquals(100, cache.storedBytes());
+            assertNotNull(cache.get("https://a.test/1"));
+
+            byte[] other = new byte[200];
+            other[0] = 1;
+            cache.put("https://a.test/3", "https://a.test/3", "text/html", null, "Mon, 01 Jan 2024 00:00:00 GMT", other);
+            assertNull(cache.get("https://a.test/2"));
+            assertNull(cache.get("https://a.test/1"));
+            assertArrayEquals(other, cache.body(cache.get("https://a.test/3")));
+
+            // Without validators a response can never be revalidated, so it is not stored.
+            cache.put("https://a.test/4", "https://a.test/4", "text/html", null, null, new byte[10]);
+            assertNull(cache.get("https://a.test/4"));
+        }
+        try (ResponseCache reopened = new ResponseCache(dir, 250)) {
+            assertEquals(1, reopened.size());
+            assertEquals(200, reopened.storedBytes());
+        }
+    }
+
+    @Test
+    public void testResponseCacheSurvivesUncleanExit() throws Exception {
+        Path dir = Files.createTempDirectory("webgrep-test");
+        byte[] page = "<p>cached</p>".getBytes(StandardCharsets.UTF_8);
+        // Never closed, as after kill -9.
+        ResponseCache crashed = new ResponseCache(dir, 1000);
+        crashed.put("https://a.test/1", "https://a.test/1", "text/html", "\"1\"", null, page);
+        crashed.put("https://a.test/2", "https://a.test/2", "text/html", "\"2\"", null, new byte[50]);
+        crashed.revalidated("https://a.test/1", "\"1b\"", null);
+        crashed.remove("https://a.test/2");
+        // A record torn by the kill is dropped.
+        Files.write(dir.resolve("index.log"), new byte[] {1, 1, 0}, StandardOpenOption.APPEND);
+
+        try (ResponseCache reopened = new ResponseCache(dir, 1000)) {
+            assertEquals(1, reopened.size());
+            ResponseCache.Entry entry = reopened.get("https://a.test/1");
+            assertEquals("\"1b\"", entry.etag);
+            assertArrayEquals(page, reopened.body(entry));
+            assertNull(reopened.get("https://a.test/2"));
+        }
+    }
+
+    @Test
+    public void testMurmur3MatchesReferenceVectors() {
+        // Reference values from the canonical MurmurHash3_x64_128 implementation, seed 0.
+        long[] fox = Hashing.murmur3_128("The quick brown fox jumps over the lazy dog".getBytes(), 0);
+        assertEquals(0xe34bbc7bbc071b6cL, fox[0]);
+        assertEquals(0x7a433ca9c49a9347L, fox[1]);
+        long[] empty = Hashing.murmur3_128(new byte[0], 0);
+        assertEquals(0L, empty[0]);
+        assertEquals(0L, empty[1]);
+    }
+
+    @Test
+    public void testSimHashIndexFindsNearFingerprints() {
+        Random random = new Random(7);
+        SimHashIndex index = new SimHashIndex(3);
+        long[] stored = new long[2000];
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = random.nextLong();
+            index.add(stored[i]);
+        }
+        for (int i = 0; i < 2000; i++) {
+            long probe = stored[random.nextInt(stored.length)];
+            int flips = random.nextInt(6);
+            for (int f = 0; f < flips; f++) probe ^= 1L << random.nextInt(64);
+            boolean expected = false;
+            for (long s : stored) expected |= Long.bitCount(s ^ probe) <= 3;
+            assertEquals(expected, index.containsNear(probe));
+        }
+
+        String page = "latest news from the city council budget vote parks schools roads and more updates every day";
+        long a = SimHash.of(page + " monday").getAsLong();
+        long b = SimHash.of(page + " tuesday").getAsLong();
+        assertTrue(Long.bitCount(a ^ b) <= 8);
+        assertFalse(SimHash.of("too short").isPresent());
+    }
+
+    @Test
+    public void testThreadedExtractorTimesOutAndKeepsServing() throws Exception {
+        ContentExtractor slow = new ContentExtractor() {
+            @Override
+            public void writeTextFromBinary(byte[] body, String url, String contentType, int maxChars, MatchStream out) {
+                if (url.endsWith("hang")) {
+                    long end = System.nanoTime() + 2_000_000_000L;
+                    while (System.nanoTime() < end) {
+                        // Busy-wait: like a stuck parser, ignores interrupts.
+                    }
+                }
+                out.append("text");
+            }
+        };
+        CompiledQuery query = new CompiledQuery(List.of("text"), "default");
+        try (ThreadedBinaryExtractor extractor = new ThreadedBinaryExtractor(slow, 1, 100, 1000)) {
+            try {
+                extractor.match(new byte[0], "http://x/hang", null, query);
+                fail("Expected a timeout");
+            } catch (ExtractionException expected) {
+                assertTrue(expected.getMessage().contains("timed out"));
+            }
+            long start = System.nanoTime();
+            assertArrayEquals(new int[] {1}, extractor.match(new byte[0], "http://x/ok", null, query));
+            assertTrue("replacement worker should not wait for the stuck one", System.nanoTime() - start < 1_000_000_000L);
+        }
+    }
+
+    @Test
+    public void testMatchStreamAgreesWithWholeText() {
+        MatchEngine engine = new MatchEngine();
+        String text = "Straße café-au-lait, CAFE cafè Hallo helo hello. aaaa Ünïcödé straat strasse!";
+        List<String> keywords = List.of("strasse", "cafe", "aa", "hello", "café au", "unicode");
+        Random random = new Random(3);
+        for (String mode : List.of("default", "exact", "fuzzy")) {
+            CompiledQuery query = new CompiledQuery(keywords, mode);
+            int[] expected = engine.countMatches(text, query);
+            for (int round = 0; round < 20; round++) {
+                MatchStream stream = engine.stream(query);
+                for (int i = 0; i < text.length(); ) {
+                    int end = Math.min(text.length(), i + 1 + random.nextInt(6));
+                    stream.write(text.toCharArray(), i, end - i);
+                    i = end;
+                }
+                assertArrayEquals(mode, expected, stream.finish());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamedHtmlTextMatchesJsoupText() {
+        String html = "<html><head><title>T</title><meta name=description content='desc'></head><body>"
+                + "  <div>One</div>Two<p>Three <b>bold</b>\n\t  four</p><br>five<pre>  keep\n  this </pre>"
+                + "<ul><li>a</li><li>b</li></ul><span> six </span>  </body></html>";
+        Document doc = Jsoup.parse(html);
+        String expected = doc.title() + " " + doc.body().text() + " desc ";
+        assertEquals(expected, new ContentExtractor().extractTextFromHtml(doc));
+    }
+
+    @Test
+    public void testHtmlScannerMatchesJsoupPath() {
+        ContentExtractor extractor = new ContentExtractor();
+        String url = "http://example.com/docs/page.html";
+        List<String> pages = List.of(
+                "<html><head><title> A &amp; B </title><meta name=\"Description\" content=\"caf&eacute; desc\">"
+                        + "<meta name=keywords content='k1, k2'><style>p{x:y}</style></head><body>"
+                        + "<div>One</div>Two<p>Three <b>bold</b>\n\t four</p><br>five<!-- hidden -->six"
+                        + "<pre>\n  keep\n  this </pre><script>var hidden = '<p>';</script>"
+                        + "<ul><li><a href=\"a.html\">a</a></li><li><a href='/b?x=1&amp;y=2'>b</a></li></ul>"
+                        + "<span> seven </span> 1 &lt; 2 &nbsp;end</body></html>",
+                "<!doctype html><html><head><base href=\"http://other.org/x/\"><title>T</title></head>"
+                        + "<body><table><tr><td>c1</td><td>c2</td></tr></table><a href=\"rel\">r</a>"
+                        + "<a href=\"http://example.com/abs\">x</a><link href=\"style.css\"></body></html>",
+                "<p>no head at all <textarea>\n raw &amp; text </textarea> tail");
+        List<ContentExtractor.LinkScope> scopes = List.of(ContentExtractor.LinkScope.DIRECTORY,
+                ContentExtractor.LinkScope.PAGE, ContentExtractor.LinkScope.ABSOLUTE);
+        for (int i = 0; i < pages.size(); i++) {
+            String html = pages.get(i);
+            Document doc = Jsoup.parse(html, url);
+            StringWriter text = new StringWriter();
+            HtmlScanner.Page page = HtmlScanner.scan(html, text);
+            assertEquals(extractor.extractTextFromHtml(doc), text.toString());
+            assertEquals(doc.title(), page.title());
+            assertEquals(extractor.extractLinks(doc, html.getBytes(StandardCharsets.UTF_8), url),
+                    extractor.extractLinks(page, html, url, url));
+            ContentExtractor.PageLinks fromDom = extractor.extractLinksWithScope(doc, html.getBytes(StandardCharsets.UTF_8), url);
+            ContentExtractor.PageLinks fromScan = extractor.extractLinksWithScope(page, html, url, url);
+            assertEquals(fromDom.links, fromScan.links);
+            assertEquals(scopes.get(i), fromDom.scope);
+            assertEquals(fromDom.scope, fromScan.scope);
+            assertEquals(extractor.extractLinks(page, html, url, url), fromScan.links);
+        }
+    }
 }
@@ -0,0 +1,354 @@
+package com.webgrep;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Embedded HTTP server serving a generated site, for crawl tests and throughput runs without
+ * network access. Every page is derived from its number, so a configuration always serves the
+ * same site:
+ * <pre>
+ *   /page/N            links to pages N*fanOut+1 .. N*fanOut+fanOut, back to its parent and to
+ *                      page 0 (so the graph has cycles), and to the special endpoints below;
+ *                      page {@link #slowPage} is itself served after slowMs
+ *   /dup/N             the same bytes for every N
+ *   /big/N             a large body sent chunked
+ *   /slow/N            a page served after a delay
+ *   /limited/N         429 with Retry-After
+ *   /flaky/N           503 the first time it is requested, a page after that
+ *   /files/sample.pdf, /files/sample.docx   the benchmark fixtures, linked from page 0
+ *   /robots.txt        {@link #robotsTxt}, 404 when unset
+ *   /sitemap.xml       with {@link #sitemaps}, an index of /sitemaps/1.xml.gz (gzipped) and
+ *                      /sitemaps/2.xml, which list the first and second half of the pages
+ * </pre>
+ * Each generated page mentions {@link #KEYWORD} {@code N % 3 + 1} times.
+ */
+final class SyntheticSite implements AutoCloseable {
+    static final String KEYWORD = "crawler";
+    private static final Path FIXTURES = Paths.get("src", "jmh", "resources", "fixtures");
+    private static final String[] FILLER = ("the frontier holds every discovered link until a fetch thread takes it and "
+            + "the response body is decoded parsed and matched before its links are resolved and queued").split(" ");
+
+    int pages = 100;
+    int fanOut = 4;
+    /** Every n-th page links a /dup/ page; 0 disables. Likewise for the other endpoints. */
+    int duplicateEvery = 0;
+    int bigEvery = 0;
+    int bigBytes = 1 << 20;
+    int slowEvery = 0;
+    int slowMs = 200;
+    int slowPage = -1;
+    int limitedEvery = 0;
+    int flakyEvery = 0;
+    /** /stall/ pages send their headers and part of the body, then hang for stallMs. */
+    int stallEvery = 0;
+    int stallMs = 30_000;
+    boolean binaries = false;
+    String robotsTxt;
+    boolean sitemaps = false;
+
+    final AtomicInteger requests = new AtomicInteger();
+    /** Requests the server had received when it finished delaying {@link #slowPage}. */
+    volatile int requestsDuringSlowPage;
+    private final Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    SyntheticSite start() throws IOException {
+        // Without it, Nagle and delayed ACKs add ~40 ms to every keep-alive response.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /** Responses a full crawl of the site fetches successfully: pages, special endpoints and binaries. */
+    int reachableDocuments() {
+        int documents = pages + binaryCount();
+        for (int n = 0; n < pages; n++) {
+            if (every(n, duplicateEvery)) documents++;
+            if (every(n, bigEvery)) documents++;
+            if (every(n, slowEvery)) documents++;
+            if (every(n, flakyEvery)) documents++;
+        }
+        return documents;
+    }
+
+    int limitedCount() {
+        int count = 0;
+        for (int n = 0; n < pages; n++) {
+            if (every(n, limitedEvery)) count++;
+        }
+        return count;
+    }
+
+    int flakyCount() {
+        int count = 0;
+        for (int n = 0; n < pages; n++) {
+            if (every(n, flakyEvery)) count++;
+        }
+        return count;
+    }
+
+    int stallCount() {
+        int count = 0;
+        for (int n = 0; n < pages; n++) {
+            if (every(n, stallEvery)) count++;
+        }
+        return count;
+    }
+
+    int duplicateCount() {
+        int count = 0;
+        for (int n = 0; n < pages; n++) {
+            if (every(n, duplicateEvery)) count++;
+        }
+        return count;
+    }
+
+    private int binaryCount() {
+        return binaries ? 2 : 0;
+    }
+
+    private static boolean every(int n, int interval) {
+        return interval > 0 && n % interval == interval - 1;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            int slash = path.indexOf('/', 1);
+            String kind = slash < 0 ? path.substring(1) : path.substring(1, slash);
+            String rest = slash < 0 ? "" : path.substring(slash + 1);
+            switch (kind) {
+                case "page":
+                    int n = parse(rest);
+                    if (n < 0 || n >= pages) {
+                        send(exchange, 404, "text/plain", new byte[0]);
+                    } else {
+                        if (n == slowPage) {
+                            try {
+                                Thread.sleep(slowMs);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            requestsDuringSlowPage = requests.get();
+                        }
+                        send(exchange, 200, "text/html; charset=utf-8", page(n).getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                case "dup":
+                    send(exchange, 200, "text/html; charset=utf-8", duplicate().getBytes(StandardCharsets.UTF_8));
+                    break;
+                case "big":
+                    sendBig(exchange, rest);
+                    break;
+                case "slow":
+                    try {
+                        Thread.sleep(slowMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    send(exchange, 200, "text/html; charset=utf-8", html("Slow " + rest, paragraph(parse(rest), 1)).getBytes(StandardCharsets.UTF_8));
+                    break;
+                case "limited":
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    send(exchange, 429, "text/plain", "slow down".getBytes(StandardCharsets.UTF_8));
+                    break;
+                case "flaky":
+                    if (failedOnce.add(rest)) {
+                        send(exchange, 503, "text/plain", "try again".getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        send(exchange, 200, "text/html; charset=utf-8", html("Flaky " + rest, paragraph(parse(rest), 1)).getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                case "stall":
+                    sendStalled(exchange);
+                    break;
+                case "robots.txt":
+                    if (robotsTxt == null) {
+                        send(exchange, 404, "text/plain", new byte[0]);
+                    } else {
+                        send(exchange, 200, "text/plain", robotsTxt.getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                case "sitemap.xml":
+                    if (!sitemaps) {
+                        send(exchange, 404, "text/plain", new byte[0]);
+                    } else {
+                        send(exchange, 200, "application/xml", sitemapIndex().getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                case "sitemaps":
+                    if (!sitemaps || !rest.equals("1.xml.gz") && !rest.equals("2.xml")) {
+                        send(exchange, 404, "text/plain", new byte[0]);
+                    } else if (rest.equals("1.xml.gz")) {
+                        send(exchange, 200, "application/gzip", gzip(urlSet(0, pages / 2)));
+                    } else {
+                        send(exchange, 200, "application/xml", urlSet(pages / 2, pages).getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                case "files":
+                    Path file = FIXTURES.resolve(rest);
+                    if (!binaries || !rest.startsWith("sample.") || !Files.isRegularFile(file)) {
+                        send(exchange, 404, "text/plain", new byte[0]);
+                    } else {
+                        send(exchange, 200, rest.endsWith(".pdf") ? "application/pdf"
+                                : "application/vnd.openxmlformats-officedocument.wordprocessingml.document", Files.readAllBytes(file));
+                    }
+                    break;
+                default:
+                    send(exchange, 404, "text/plain", new byte[0]);
+            }
+        }
+    }
+
+    private String page(int n) {
+        StringBuilder body = new StringBuilder();
+        body.append("<h1>Page ").append(n).append("</h1>\n<ul>\n");
+        for (int i = 1; i <= fanOut; i++) {
+            int child = n * fanOut + i;
+            if (child < pages) link(body, "/page/" + child);
+        }
+        if (n > 0) link(body, "/page/" + (n - 1) / fanOut);
+        link(body, "/page/0");
+        if (every(n, duplicateEvery)) link(body, "/dup/" + n);
+        if (every(n, bigEvery)) link(body, "/big/" + n);
+        if (every(n, slowEvery)) link(body, "/slow/" + n);
+        if (every(n, limitedEvery)) link(body, "/limited/" + n);
+        if (every(n, flakyEvery)) link(body, "/flaky/" + n);
+        if (every(n, stallEvery)) link(body, "/stall/" + n);
+        if (n == 0 && binaries) {
+            link(body, "/files/sample.pdf");
+            link(body, "/files/sample.docx");
+        }
+        body.append("</ul>\n");
+        for (int p = 0; p < 6; p++) {
+            body.append(paragraph(n * 31 + p, p < n % 3 + 1 ? 1 : 0));
+        }
+        return html("Page " + n, body.toString());
+    }
+
+    private String sitemapIndex() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "<sitemap><loc>" + url("/sitemaps/1.xml.gz") + "</loc></sitemap>\n"
+                + "<sitemap><loc>" + url("/sitemaps/2.xml") + "</loc></sitemap>\n</sitemapindex>\n";
+    }
+
+    private String urlSet(int from, int to) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        for (int n = from; n < to; n++) {
+            xml.append("<url><loc>").append(url("/page/" + n)).append("</loc><priority>0.5</priority></url>\n");
+        }
+        return xml.append("</urlset>\n").toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String duplicate() {
+        return html("Mirror", paragraph(7, 1) + paragraph(8, 0));
+    }
+
+    private static void link(StringBuilder body, String href) {
+        body.append("<li><a href=\"").append(href).append("\">").append(href).append("</a></li>\n");
+    }
+
+    /** About 80 words of filler, with the keyword {@code keywords} times. */
+    private static String paragraph(int seed, int keywords) {
+        StringBuilder p = new StringBuilder("<p>");
+        for (int i = 0; i < 80; i++) {
+            p.append(FILLER[Math.floorMod(seed * 17 + i * 7, FILLER.length)]).append(' ');
+            if (i % 40 == 20 && keywords-- > 0) p.append(KEYWORD).append(' ');
+        }
+        return p.append("</p>\n").toString();
+    }
+
+    private static String html(String title, String body) {
+        return "<!DOCTYPE html>\n<html><head><title>" + title + "</title></head>\n<body>\n" + body + "</body></html>\n";
+    }
+
+    private void sendBig(HttpExchange exchange, String name) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        // Length 0 selects chunked transfer encoding.
+        exchange.sendResponseHeaders(200, 0);
+        byte[] chunk = paragraph(3, 0).getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(("<!DOCTYPE html>\n<html><head><title>Big " + name + "</title></head>\n<body>\n" + paragraph(4, 1)).getBytes(StandardCharsets.UTF_8));
+            for (int sent = 0; sent < bigBytes; sent += chunk.length) {
+                out.write(chunk);
+            }
+            out.write("</body></html>\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void sendStalled(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write("<!DOCTYPE html>\n<html><head><title>Stalled</title></head>\n<body>\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        try {
+            Thread.sleep(stallMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        out.write("</body></html>\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static int parse(String number) {
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+}